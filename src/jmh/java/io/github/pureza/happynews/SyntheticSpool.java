@@ -0,0 +1,195 @@
+package io.github.pureza.happynews;
+
+import io.github.pureza.happynews.config.Config;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A generated spool (articles, groups file and users home) in a temporary
+ * folder, for the benchmarks to run against
+ *
+ * The articles are spread over the newsgroups round-robin: article n (the n-th
+ * article of the spool, numbered from 1) is posted to group (n - 1) % groups.
+ * Every article has the usual header fields and a body with the given number
+ * of lines.
+ */
+public class SyntheticSpool implements AutoCloseable {
+
+    /** Host of the article ids */
+    public static final String HOST = "bench.example.org";
+
+    /** The temporary folder */
+    private final Path baseDir;
+
+    /** Number of newsgroups */
+    private final int groups;
+
+    /** Number of articles */
+    private final int articles;
+
+    /** Configuration pointing at the spool */
+    private final Config config;
+
+
+    private SyntheticSpool(Path baseDir, int groups, int articles) {
+        this.baseDir = baseDir;
+        this.groups = groups;
+        this.articles = articles;
+        this.config = config(Config.ServerMode.THREAD);
+    }
+
+
+    /**
+     * Generates a spool with the given number of newsgroups and articles,
+     * whose bodies have the given number of lines
+     */
+    public static SyntheticSpool generate(int groups, int articles, int bodyLines) throws IOException {
+        SyntheticSpool spool = new SyntheticSpool(Files.createTempDirectory("happynews_spool"), groups, articles);
+        Files.createDirectories(spool.config.usersHome());
+        Files.createDirectories(spool.config.articlesHome());
+
+        for (int n = 1; n <= articles; n++) {
+            String id = articleId(n);
+            Files.write(spool.config.articlesHome().resolve(id.substring(1, id.length() - 1)),
+                    spool.article(n, bodyLines).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(spool.config.groupsFile()))) {
+            for (int g = 0; g < groups; g++) {
+                List<String> ids = new ArrayList<>();
+                for (int n = g + 1; n <= articles; n += groups) {
+                    ids.add(articleId(n));
+                }
+                out.printf("%s\t%d\t%s\n", groupName(g), 0, String.join(",", ids));
+            }
+        }
+
+        return spool;
+    }
+
+
+    /**
+     * Returns the configuration pointing at the spool
+     */
+    public Config config() {
+        return config;
+    }
+
+
+    /**
+     * Returns a configuration pointing at the spool, for a server handling
+     * its connections in the given mode
+     */
+    public Config config(Config.ServerMode mode) {
+        return new Config() {
+            @Override
+            public Path baseDir() {
+                return baseDir;
+            }
+
+            @Override
+            public Path usersHome() {
+                return baseDir.resolve("users");
+            }
+
+            @Override
+            public Path articlesHome() {
+                return baseDir.resolve("articles");
+            }
+
+            @Override
+            public Path groupsFile() {
+                return baseDir.resolve("groups.tsv");
+            }
+
+            @Override
+            public Path usersFile() {
+                return baseDir.resolve("users.tsv");
+            }
+
+            @Override
+            public ServerMode serverMode() {
+                return mode;
+            }
+
+            @Override
+            public boolean indexInBackground() {
+                // Measure FIND and FINDHEADER with their indexes
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the number of articles
+     */
+    public int articles() {
+        return articles;
+    }
+
+
+    /**
+     * Returns the number of newsgroups
+     */
+    public int groups() {
+        return groups;
+    }
+
+
+    /**
+     * Returns the id of the n-th article
+     */
+    public static String articleId(int n) {
+        return "<" + n + "@" + HOST + ">";
+    }
+
+
+    /**
+     * Returns the name of the g-th newsgroup (from 0)
+     */
+    public static String groupName(int g) {
+        return "happynews.bench." + g;
+    }
+
+
+    /**
+     * Returns the contents of the n-th article
+     */
+    public String article(int n, int bodyLines) {
+        StringBuilder article = new StringBuilder()
+                .append("From: <user").append(n % 100).append("@").append(HOST).append(">\n")
+                .append("Newsgroups: ").append(groupName((n - 1) % groups)).append("\n")
+                .append("Subject: Benchmark article number ").append(n).append("\n")
+                .append("Date: Sat, 18 Oct 2026 12:00:00 +0000\n")
+                .append("Message-ID: ").append(articleId(n)).append("\n")
+                .append("\n");
+        for (int i = 0; i < bodyLines; i++) {
+            article.append("Line ").append(i).append(" of the body of article ").append(n)
+                    .append(", with some text to search for\n");
+        }
+
+        return article.toString();
+    }
+
+
+    /**
+     * Deletes the spool
+     */
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.walk(baseDir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
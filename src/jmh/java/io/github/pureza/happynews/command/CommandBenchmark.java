@@ -0,0 +1,91 @@
+package io.github.pureza.happynews.command;
+
+import io.github.pureza.happynews.SyntheticSpool;
+import io.github.pureza.happynews.server.NNTPServer;
+import io.github.pureza.happynews.server.UnknownCommandException;
+import io.github.pureza.happynews.user.Reader;
+import io.github.pureza.happynews.user.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching and running commands against a server on a synthetic spool,
+ * without a network in between
+ *
+ * "parse" only looks up the command and creates it, as ClientHandler does for
+ * every line it reads, while "xover" also runs XOVER over the given range of
+ * the first newsgroup, writing to a stream that discards the output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    /**
+     * The command line parsed by "parse", kept apart so that "xover" doesn't
+     * run once per line
+     */
+    @State(Scope.Benchmark)
+    public static class Line {
+        @Param({"ARTICLE <1@bench.example.org>", "GROUP happynews.bench.0", "XOVER 1-100", "LIST"})
+        private String line;
+    }
+
+
+    /** Articles of the range read by "xover" */
+    @Param({"100"})
+    private int range;
+
+    /** The spool */
+    private SyntheticSpool spool;
+
+    /** The server */
+    private NNTPServer server;
+
+    /** The client */
+    private User client;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        spool = SyntheticSpool.generate(10, 10000, 20);
+        server = new NNTPServer(0, spool.config());
+        client = new Reader("bench", "bench");
+        client.setClientStreams(new ByteArrayInputStream(new byte[0]), new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        client.setCurrentGroup(server.getGroup(SyntheticSpool.groupName(0)));
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        spool.close();
+    }
+
+
+    @Benchmark
+    public Command parse(Line line) throws UnknownCommandException {
+        return Command.parse(client, line.line, server);
+    }
+
+
+    @Benchmark
+    public void xover() throws Exception {
+        Command.parse(client, "XOVER 1-" + range, server).process();
+    }
+}
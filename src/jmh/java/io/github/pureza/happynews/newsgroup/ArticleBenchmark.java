@@ -0,0 +1,68 @@
+package io.github.pureza.happynews.newsgroup;
+
+import io.github.pureza.happynews.SyntheticSpool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the body of a random article of a synthetic spool, as BODY and
+ * ARTICLE do, with and without the article cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArticleBenchmark {
+
+    /** Number of articles in the spool */
+    @Param({"10000"})
+    private int articles;
+
+    /** Number of lines of each body */
+    @Param({"20", "1000"})
+    private int bodyLines;
+
+    /** Size of the article cache, in bytes (0 disables it) */
+    @Param({"0", "67108864"})
+    private long cacheSize;
+
+    /** The spool */
+    private SyntheticSpool spool;
+
+    /** The articles, indexed by number */
+    private Article[] spooled;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        spool = SyntheticSpool.generate(10, articles, bodyLines);
+        ArticleCache cache = cacheSize > 0 ? new ArticleCache(cacheSize) : null;
+        spooled = new Article[articles + 1];
+        for (int n = 1; n <= articles; n++) {
+            spooled[n] = new Article(SyntheticSpool.articleId(n), spool.config().articlesHome(), cache);
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        spool.close();
+    }
+
+
+    @Benchmark
+    public String getBody() {
+        return spooled[ThreadLocalRandom.current().nextInt(articles) + 1].getBody();
+    }
+
+
+    @Benchmark
+    public ArticleHeader getHeader() {
+        return spooled[ThreadLocalRandom.current().nextInt(articles) + 1].getHeader();
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.pureza.happynews.newsgroup;
+
+import io.github.pureza.happynews.SyntheticSpool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and formatting of article headers, as done by POST, IHAVE and every
+ * command that reads a header from an article file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArticleHeaderBenchmark {
+
+    /** The header, as it is in the article file */
+    private String text;
+
+    /** The parsed header */
+    private ArticleHeader header;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (SyntheticSpool spool = SyntheticSpool.generate(1, 0, 0)) {
+            String article = spool.article(1, 0);
+            text = article.substring(0, article.indexOf("\n\n"));
+        }
+        header = new ArticleHeader(text);
+    }
+
+
+    @Benchmark
+    public ArticleHeader parse() {
+        return new ArticleHeader(text);
+    }
+
+
+    @Benchmark
+    public String format() {
+        return header.toString();
+    }
+
+
+    @Benchmark
+    public String get() {
+        return header.get("Message-ID");
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.pureza.happynews.newsgroup;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Throughput of posting to a newsgroup while other threads read ranges of its
+ * articles, like FIND, FINDHEADER and NEWNEWS do
+ *
+ * "locked" is how Newsgroup used to keep its articles (an ArrayList behind a
+ * read-write lock, copied by every reader) and "append-only" is Newsgroup as
+ * it is now.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NewsgroupBenchmark {
+
+    /** The implementation being measured */
+    @Param({"locked", "append-only"})
+    private String list;
+
+    /** Number of articles in the newsgroup at the start of each iteration */
+    @Param({"100000"})
+    private int initialArticles;
+
+    /** Number of articles read by each range read */
+    @Param({"1000"})
+    private int range;
+
+    /** The articles of the newsgroup */
+    private Articles articles;
+
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= initialArticles; i++) {
+            ids.add("<" + i + "@host>");
+        }
+
+        articles = list.equals("locked") ? new LockedArticles(ids) : new AppendOnlyArticles(ids);
+    }
+
+
+    @Benchmark
+    @Group("postAndRead")
+    @GroupThreads(1)
+    public int post() {
+        return articles.add("<new@host>");
+    }
+
+
+    @Benchmark
+    @Group("postAndRead")
+    @GroupThreads(3)
+    public void readRange(Blackhole blackhole) {
+        List<String> snapshot = articles.articles();
+        int to = snapshot.size();
+        for (String id : snapshot.subList(Math.max(0, to - range), to)) {
+            blackhole.consume(id);
+        }
+    }
+
+
+    /**
+     * The operations being measured
+     */
+    private interface Articles {
+
+        int add(String id);
+
+        List<String> articles();
+    }
+
+
+    /**
+     * The articles of a Newsgroup
+     */
+    private static class AppendOnlyArticles implements Articles {
+
+        private final Newsgroup group;
+
+
+        AppendOnlyArticles(List<String> ids) {
+            group = new Newsgroup("group", new java.util.Date(), ids);
+        }
+
+
+        @Override
+        public int add(String id) {
+            return group.addArticle(id);
+        }
+
+
+        @Override
+        public List<String> articles() {
+            return group.articles();
+        }
+    }
+
+
+    /**
+     * The articles, as Newsgroup used to keep them
+     */
+    private static class LockedArticles implements Articles {
+
+        private final List<String> articles = new ArrayList<>();
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+        LockedArticles(List<String> ids) {
+            articles.addAll(ids);
+        }
+
+
+        @Override
+        public int add(String id) {
+            lock.writeLock().lock();
+            try {
+                articles.add(id);
+                return articles.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+
+        @Override
+        public List<String> articles() {
+            lock.readLock().lock();
+            try {
+                return Collections.unmodifiableList(new ArrayList<>(articles));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,854 @@
+package io.github.pureza.happynews.server;
+
+import ch.qos.logback.classic.Level;
+import io.github.pureza.happynews.SyntheticSpool;
+import io.github.pureza.happynews.config.Config;
+import io.github.pureza.happynews.user.User;
+import io.github.pureza.happynews.user.UserFactory;
+import io.github.pureza.happynews.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator and soak test for the whole server, over the network
+ *
+ * Starts a server on a synthetic spool, listening on an ephemeral loopback
+ * port, and connects the given number of readers and editors to it. Each
+ * client logs in with AUTHINFO and then sends commands in a loop, picked at
+ * random with the weights of the mix, pausing for a random think time
+ * (exponentially distributed, with the given mean) after each one. Readers
+ * aren't allowed to post, so they skip POST.
+ *
+ * The progress is logged at every report interval, and at the end a table
+ * with the throughput and the latency percentiles of each command is printed,
+ * along with the resources used by the server. The clients run in the same
+ * JVM as the server, so their CPU time is measured and subtracted from the
+ * process's. The exit status is 1 if any client failed.
+ *
+ * Run with:
+ *
+ *   mvn -Pbenchmark test-compile exec:exec -Dbench.main=io.github.pureza.happynews.server.LoadGenerator -Djmh.args="--readers 100 --duration 600"
+ */
+public class LoadGenerator {
+
+    /** A command sent by the clients */
+    enum Op {
+        AUTHINFO, GROUP, XOVER, ARTICLE, POST, FIND, NEWNEWS
+    }
+
+    /** Status codes of the responses followed by a dot-terminated body */
+    private static final String[] MULTI_LINE = { "215", "220", "221", "222", "224", "230", "231", "232" };
+
+    /** Time between the samples of the resources used, in milliseconds */
+    private static final long SAMPLE_INTERVAL = 1000;
+
+    /** Number of simulated readers */
+    private int readers = 20;
+
+    /** Number of simulated editors */
+    private int editors = 2;
+
+    /** How long the load runs, after the warm-up, in seconds */
+    private int duration = 60;
+
+    /** How long the load runs before being measured, in seconds */
+    private int warmup = 10;
+
+    /** Mean think time of the clients, in milliseconds. 0 means none */
+    private int think = 10;
+
+    /** Time between progress reports, in seconds */
+    private int report = 10;
+
+    /** Weight of each command in the mix */
+    private final Map<Op, Integer> mix = new EnumMap<>(Op.class);
+
+    /** Number of newsgroups of the spool */
+    private int groups = 10;
+
+    /** Number of articles of the spool */
+    private int articles = 10000;
+
+    /** Number of lines of the body of each article */
+    private int bodyLines = 20;
+
+    /** Number of articles read by each XOVER */
+    private int xoverRange = 50;
+
+    /** How the server handles the connections */
+    private Config.ServerMode mode = Config.ServerMode.THREAD;
+
+    /** Should the server log as usual? */
+    private boolean verbose;
+
+    /** Statistics of each command */
+    private final Map<Op, Stats> stats = new EnumMap<>(Op.class);
+
+    /** CPU time used by the clients that are done, in nanoseconds */
+    private final AtomicLong clientCpu = new AtomicLong();
+
+    /** Number of clients that failed (were disconnected, or couldn't log in) */
+    private final AtomicLong failedClients = new AtomicLong();
+
+    /** When the clients stop, as in System.nanoTime() */
+    private volatile long deadline;
+
+    /** The port where the server listens */
+    private int port;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+
+    LoadGenerator() {
+        mix.put(Op.GROUP, 10);
+        mix.put(Op.XOVER, 20);
+        mix.put(Op.ARTICLE, 50);
+        mix.put(Op.POST, 5);
+        mix.put(Op.FIND, 5);
+        mix.put(Op.NEWNEWS, 10);
+        for (Op op : Op.values()) {
+            stats.put(op, new Stats());
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parseOptions(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: LoadGenerator [--readers N] [--editors N] [--duration S] [--warmup S] [--think MS]\n"
+                    + "                     [--report S] [--mix GROUP=10,XOVER=20,ARTICLE=50,POST=5,FIND=5,NEWNEWS=10]\n"
+                    + "                     [--groups N] [--articles N] [--body-lines N] [--xover-range N]\n"
+                    + "                     [--mode thread|virtual|nio] [--verbose] [--help]");
+            System.exit(2);
+        }
+
+        System.exit(generator.run() ? 0 : 1);
+    }
+
+
+    /**
+     * Reads the command line options
+     *
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    void parseOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--help")) {
+                throw new IllegalArgumentException("Runs a load test against a server on a synthetic spool");
+            }
+
+            if (option.equals("--verbose")) {
+                verbose = true;
+                continue;
+            }
+
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--readers": readers = Integer.parseInt(value); break;
+                    case "--editors": editors = Integer.parseInt(value); break;
+                    case "--duration": duration = Integer.parseInt(value); break;
+                    case "--warmup": warmup = Integer.parseInt(value); break;
+                    case "--think": think = Integer.parseInt(value); break;
+                    case "--report": report = Math.max(1, Integer.parseInt(value)); break;
+                    case "--groups": groups = Integer.parseInt(value); break;
+                    case "--articles": articles = Integer.parseInt(value); break;
+                    case "--body-lines": bodyLines = Integer.parseInt(value); break;
+                    case "--xover-range": xoverRange = Math.max(1, Integer.parseInt(value)); break;
+                    case "--mode": mode = Config.ServerMode.valueOf(value.toUpperCase()); break;
+                    case "--mix": parseMix(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+            }
+        }
+
+        if (groups < 1 || articles < groups) {
+            throw new IllegalArgumentException("The spool needs at least one newsgroup and an article per newsgroup");
+        }
+    }
+
+
+    /**
+     * Reads the weights of the commands. Those not given aren't sent
+     */
+    private void parseMix(String value) {
+        mix.clear();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            Op op = Op.valueOf(parts[0].trim().toUpperCase());
+            if (op == Op.AUTHINFO || parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry " + entry);
+            }
+
+            mix.put(op, Integer.parseInt(parts[1].trim()));
+        }
+    }
+
+
+    /**
+     * Runs the load and prints the results
+     *
+     * Returns whether all clients ran until the end.
+     */
+    boolean run() throws Exception {
+        if (!verbose) {
+            // The server logs every command at INFO
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("io.github.pureza.happynews")).setLevel(Level.WARN);
+            ((ch.qos.logback.classic.Logger) logger).setLevel(Level.INFO);
+        }
+
+        logger.info("Generating a spool with {} articles in {} newsgroups", articles, groups);
+        try (SyntheticSpool spool = SyntheticSpool.generate(groups, articles, bodyLines);
+             ServerSocketChannel channel = ServerSocketChannel.open()) {
+            int clients = readers + editors;
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), clients);
+            port = channel.socket().getLocalPort();
+
+            long start = System.currentTimeMillis();
+            NNTPServer server = new NNTPServer(channel.socket(), spool.config(mode));
+            List<Client> all = new ArrayList<>();
+            for (int i = 0; i < readers; i++) {
+                all.add(new Client("reader" + i, User.Role.READER, server));
+            }
+            for (int i = 0; i < editors; i++) {
+                all.add(new Client("editor" + i, User.Role.EDITOR, server));
+            }
+
+            server.setDaemon(true);
+            server.start();
+            logger.info("Server started in {} ms, in {} mode, on port {}", System.currentTimeMillis() - start,
+                    mode.name().toLowerCase(), port);
+
+            try {
+                return runClients(all);
+            } finally {
+                server.shutdown();
+            }
+        }
+    }
+
+
+    /**
+     * Runs the clients until the deadline, reporting the progress, and prints
+     * the results
+     */
+    private boolean runClients(List<Client> clients) throws InterruptedException {
+        ResourceSampler resources = new ResourceSampler();
+        CountDownLatch done = new CountDownLatch(clients.size());
+        long startNanos = System.nanoTime();
+        deadline = startNanos + TimeUnit.SECONDS.toNanos(warmup + duration);
+        for (int i = 0; i < clients.size(); i++) {
+            Client client = clients.get(i);
+            client.thread = new Thread(() -> {
+                try {
+                    client.run();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            client.thread.setDaemon(true);
+            client.thread.start();
+        }
+
+        logger.info("{} readers and {} editors connected, warming up for {} s", readers, editors, warmup);
+        long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmup);
+        boolean measuring = warmup == 0;
+        if (measuring) {
+            resources.start();
+        }
+
+        long nextReport = measureFrom + TimeUnit.SECONDS.toNanos(report);
+        while (!done.await(SAMPLE_INTERVAL, TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+            if (!measuring && now >= measureFrom) {
+                // Forget about the warm-up, including the CPU time used by
+                // the clients so far, which is counted when they are done
+                for (Stats s : stats.values()) {
+                    s.reset();
+                }
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                for (Client client : clients) {
+                    clientCpu.addAndGet(-Math.max(0, threads.getThreadCpuTime(client.thread.getId())));
+                }
+                measuring = true;
+                resources.start();
+                logger.info("Measuring for {} s", duration);
+            } else if (measuring) {
+                resources.sample();
+                if (now >= nextReport) {
+                    reportProgress(now - measureFrom, TimeUnit.SECONDS.toNanos(report));
+                    nextReport += TimeUnit.SECONDS.toNanos(report);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - measureFrom;
+        for (Stats s : stats.values()) {
+            s.drain();
+        }
+
+        printResults(elapsed, resources);
+        return failedClients.get() == 0;
+    }
+
+
+    /**
+     * Logs the throughput and the latency since the last report
+     */
+    private void reportProgress(long elapsed, long interval) {
+        LatencyHistogram all = new LatencyHistogram();
+        long errors = 0;
+        for (Stats s : stats.values()) {
+            LatencyHistogram drained = s.drain();
+            all.add(drained);
+            errors += s.lastErrors;
+        }
+
+        logger.info("{} s: {} commands/s, p50 {} ms, p99 {} ms, max {} ms, {} errors, {} MB heap",
+                TimeUnit.NANOSECONDS.toSeconds(elapsed),
+                all.count() * TimeUnit.SECONDS.toNanos(1) / interval,
+                millis(all.percentile(0.50)), millis(all.percentile(0.99)), millis(all.max()), errors,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20);
+    }
+
+
+    /**
+     * Prints the throughput and latencies of each command, and the resources
+     * used by the server
+     */
+    private void printResults(long elapsed, ResourceSampler resources) {
+        double seconds = elapsed / 1e9;
+        StringBuilder out = new StringBuilder()
+                .append(String.format("%n%d readers, %d editors, think time %d ms, %s mode, %.0f s measured%n%n",
+                        readers, editors, think, mode.name().toLowerCase(), seconds))
+                .append(String.format("%-9s %9s %7s %9s %9s %8s %8s %8s %8s %8s %8s%n",
+                        "Command", "Count", "Errors", "Ops/s", "KB/s", "Mean ms", "p50", "p90", "p99", "p99.9", "Max"));
+
+        LatencyHistogram all = new LatencyHistogram();
+        long errors = 0;
+        long bytes = 0;
+        for (Map.Entry<Op, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            if (s.total.count() == 0 && s.totalErrors == 0) {
+                continue;
+            }
+
+            out.append(row(entry.getKey().name(), s.total, s.totalErrors, s.totalBytes, seconds));
+            all.add(s.total);
+            errors += s.totalErrors;
+            bytes += s.totalBytes;
+        }
+        out.append(row("All", all, errors, bytes, seconds));
+
+        long serverCpu = resources.processCpu() - clientCpu.get();
+        out.append(String.format("%nServer: %.1f s of CPU (%.0f%% of a core, %.1f us per command), "
+                        + "%d GCs taking %d ms, heap up to %d MB, ~%d threads, %d open files%n",
+                serverCpu / 1e9, serverCpu / 1e7 / seconds, all.count() > 0 ? serverCpu / 1e3 / all.count() : 0.0,
+                resources.gcCount(), resources.gcTime(), resources.maxHeap >> 20,
+                resources.maxThreads - readers - editors, resources.maxOpenFiles));
+        if (failedClients.get() > 0) {
+            out.append(String.format("%d clients failed%n", failedClients.get()));
+        }
+
+        System.out.println(out);
+    }
+
+
+    /**
+     * Formats a row of the results table
+     */
+    private String row(String name, LatencyHistogram histogram, long errors, long bytes, double seconds) {
+        return String.format("%-9s %9d %7d %9.1f %9.1f %8s %8s %8s %8s %8s %8s%n",
+                name, histogram.count(), errors, histogram.count() / seconds, bytes / 1024.0 / seconds,
+                millis(histogram.mean()), millis(histogram.percentile(0.50)), millis(histogram.percentile(0.90)),
+                millis(histogram.percentile(0.99)), millis(histogram.percentile(0.999)), millis(histogram.max()));
+    }
+
+
+    /**
+     * Converts nanoseconds to milliseconds, with two decimal places
+     */
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+
+    /**
+     * Statistics of a command
+     *
+     * The clients update the interval figures, which are added to the totals
+     * at every report.
+     */
+    private static class Stats {
+
+        /** Latency of the successful commands since the last report */
+        final LatencyHistogram interval = new LatencyHistogram();
+
+        /** Commands that failed since the last report */
+        final AtomicLong errors = new AtomicLong();
+
+        /** Bytes received since the last report */
+        final AtomicLong bytes = new AtomicLong();
+
+        /** Latency of all the successful commands */
+        LatencyHistogram total = new LatencyHistogram();
+
+        /** Commands that failed */
+        long totalErrors;
+
+        /** Commands that failed in the last interval */
+        long lastErrors;
+
+        /** Bytes received */
+        long totalBytes;
+
+
+        /**
+         * Adds the interval figures to the totals, and returns the interval
+         * histogram
+         */
+        LatencyHistogram drain() {
+            LatencyHistogram drained = interval.drain();
+            total.add(drained);
+            lastErrors = errors.getAndSet(0);
+            totalErrors += lastErrors;
+            totalBytes += bytes.getAndSet(0);
+            return drained;
+        }
+
+
+        /**
+         * Forgets everything recorded so far
+         */
+        void reset() {
+            drain();
+            total = new LatencyHistogram();
+            totalErrors = 0;
+            totalBytes = 0;
+        }
+    }
+
+
+    /**
+     * A simulated user, connected to the server
+     */
+    private class Client implements Runnable {
+
+        /** The user name, which is also the password */
+        private final String username;
+
+        /** Can the user post? */
+        private final boolean editor;
+
+        /** Cumulative weights of the commands sent, in the order of the ops */
+        private final int[] weights;
+
+        /** The commands sent, in the order of the weights */
+        private final Op[] ops;
+
+        /** Reads the responses */
+        private BufferedReader in;
+
+        /** Sends the commands */
+        private Writer out;
+
+        /** The current newsgroup */
+        private String group;
+
+        /** First article of the current newsgroup */
+        private int first;
+
+        /** Last article of the current newsgroup */
+        private int last;
+
+        /** Did the login succeed? */
+        private boolean loggedIn;
+
+        /** Bytes of the response being read */
+        private long received;
+
+        /** The thread running the client */
+        private Thread thread;
+
+
+        /**
+         * Creates a user with the given name and role on the server
+         */
+        Client(String username, User.Role role, NNTPServer server) throws Exception {
+            this.username = username;
+            this.editor = role != User.Role.READER;
+            if (!server.addUser(UserFactory.createUser(username, username, role, server.config()))) {
+                throw new IllegalStateException("Unable to create the user " + username);
+            }
+
+            List<Op> ops = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            int sum = 0;
+            for (Map.Entry<Op, Integer> entry : mix.entrySet()) {
+                if (entry.getValue() > 0 && (editor || entry.getKey() != Op.POST)) {
+                    sum += entry.getValue();
+                    ops.add(entry.getKey());
+                    weights.add(sum);
+                }
+            }
+
+            this.ops = ops.toArray(new Op[0]);
+            this.weights = weights.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.setSoTimeout(60000);
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+                measure(Op.AUTHINFO);
+                if (!loggedIn) {
+                    throw new IOException("Unable to log in as " + username);
+                }
+
+                execute(Op.GROUP);
+                while (System.nanoTime() < deadline && ops.length > 0) {
+                    measure(pick());
+                    thinkTime();
+                }
+
+                send("QUIT");
+            } catch (IOException | InterruptedException ex) {
+                failedClients.incrementAndGet();
+                logger.warn("{} failed: {}", username, ex.toString());
+            } finally {
+                if (threads.isCurrentThreadCpuTimeSupported()) {
+                    clientCpu.addAndGet(threads.getCurrentThreadCpuTime());
+                }
+            }
+        }
+
+
+        /**
+         * Sends the given command, recording its latency and the bytes
+         * received, or an error
+         */
+        private void measure(Op op) throws IOException {
+            Stats s = stats.get(op);
+            received = 0;
+            long start = System.nanoTime();
+            boolean ok = execute(op);
+            long latency = System.nanoTime() - start;
+            if (ok) {
+                s.interval.record(latency);
+            } else {
+                s.errors.incrementAndGet();
+            }
+            s.bytes.addAndGet(received);
+        }
+
+
+        /**
+         * Sends the given command and reads the response
+         *
+         * Returns whether the response was the expected one.
+         */
+        private boolean execute(Op op) throws IOException {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            switch (op) {
+                case AUTHINFO:
+                    expect("480");
+                    send("AUTHINFO USER " + username);
+                    expect("381");
+                    send("AUTHINFO PASS " + username);
+                    loggedIn = expect("281");
+                    return loggedIn;
+
+                case GROUP: {
+                    group = SyntheticSpool.groupName(random.nextInt(groups));
+                    send("GROUP " + group);
+                    String status = in.readLine();
+                    received(status);
+                    if (status == null || !status.startsWith("211")) {
+                        return false;
+                    }
+
+                    String[] fields = status.split(" ");
+                    first = Integer.parseInt(fields[2]);
+                    last = Integer.parseInt(fields[3]);
+                    return true;
+                }
+
+                case XOVER: {
+                    int start = first + random.nextInt(Math.max(1, last - first + 1));
+                    send("XOVER " + start + "-" + (start + xoverRange - 1));
+                    return expect("224");
+                }
+
+                case ARTICLE:
+                    send("ARTICLE " + (first + random.nextInt(Math.max(1, last - first + 1))));
+                    return expect("220");
+
+                case FIND:
+                    // Matches the article with the given number, if it's in
+                    // the current newsgroup (see SyntheticSpool.article())
+                    send("FIND " + group + " article\\s" + (1 + random.nextInt(articles)) + ",");
+                    return expect("232");
+
+                case NEWNEWS: {
+                    SimpleDateFormat format = new SimpleDateFormat("yyMMdd HHmmss");
+                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                    send("NEWNEWS " + group + " " + format.format(new Date(System.currentTimeMillis() - 60000)));
+                    return expect("230");
+                }
+
+                case POST:
+                    send("POST");
+                    if (!expect("340")) {
+                        return false;
+                    }
+                    send(post());
+                    return expect("240");
+
+                default:
+                    throw new IllegalArgumentException("Unexpected command " + op);
+            }
+        }
+
+
+        /**
+         * Returns a new article, terminated by a dot
+         */
+        private String post() {
+            StringBuilder article = new StringBuilder()
+                    .append("From: <").append(username).append("@").append(SyntheticSpool.HOST).append(">\r\n")
+                    .append("Subject: Load test from ").append(username).append("\r\n")
+                    .append("Newsgroups: ").append(group).append("\r\n")
+                    .append("\r\n");
+            for (int i = 0; i < bodyLines; i++) {
+                article.append("Line ").append(i).append(" of a load test article, posted by ").append(username).append("\r\n");
+            }
+
+            return article.append(".").toString();
+        }
+
+
+        /**
+         * Reads a response, skipping its body, and returns whether its status
+         * is the given one
+         */
+        private boolean expect(String status) throws IOException {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Connection closed by the server");
+            }
+            received(line);
+
+            if (isMultiLine(line)) {
+                String bodyLine;
+                while ((bodyLine = in.readLine()) != null && !bodyLine.equals(".")) {
+                    received(bodyLine);
+                }
+            }
+
+            return line.startsWith(status);
+        }
+
+
+        /**
+         * Counts the bytes of a line of the response
+         */
+        private void received(String line) {
+            if (line != null) {
+                received += line.length() + 2;
+            }
+        }
+
+
+        /**
+         * Sends a command
+         */
+        private void send(String command) throws IOException {
+            out.write(command);
+            out.write("\r\n");
+            out.flush();
+        }
+
+
+        /**
+         * Picks a command, at random, by its weight
+         */
+        private Op pick() {
+            int n = ThreadLocalRandom.current().nextInt(weights[weights.length - 1]);
+            for (int i = 0; i < weights.length; i++) {
+                if (n < weights[i]) {
+                    return ops[i];
+                }
+            }
+
+            return ops[ops.length - 1];
+        }
+
+
+        /**
+         * Waits for a random think time, with the configured mean
+         */
+        private void thinkTime() throws InterruptedException {
+            if (think > 0) {
+                double pause = -think * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+                Thread.sleep((long) Math.min(pause, think * 20.0));
+            }
+        }
+    }
+
+
+    /**
+     * Whether the response with the given status line is followed by a
+     * dot-terminated body
+     */
+    private static boolean isMultiLine(String status) {
+        for (String code : MULTI_LINE) {
+            if (status.startsWith(code)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Samples the resources used by the process while the load is measured
+     */
+    private static class ResourceSampler {
+
+        /** CPU time of the process when the measure started */
+        private long cpuAtStart;
+
+        /** Number of collections when the measure started */
+        private long gcCountAtStart;
+
+        /** Time spent collecting when the measure started */
+        private long gcTimeAtStart;
+
+        /** Largest heap used, in bytes */
+        long maxHeap;
+
+        /** Largest number of live threads */
+        int maxThreads;
+
+        /** Largest number of open files, or -1 if unknown */
+        long maxOpenFiles = -1;
+
+
+        /**
+         * Starts measuring
+         */
+        void start() {
+            cpuAtStart = cpu();
+            gcCountAtStart = gcCount();
+            gcTimeAtStart = gcTime();
+            sample();
+        }
+
+
+        /**
+         * Samples the heap, the threads and the open files
+         */
+        void sample() {
+            maxHeap = Math.max(maxHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+            maxThreads = Math.max(maxThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+                maxOpenFiles = Math.max(maxOpenFiles, ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount());
+            }
+        }
+
+
+        /**
+         * Returns the CPU time used by the process since the measure started,
+         * in nanoseconds
+         */
+        long processCpu() {
+            return cpu() - cpuAtStart;
+        }
+
+
+        /**
+         * Returns the number of collections since the measure started
+         */
+        long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+
+            return count - gcCountAtStart;
+        }
+
+
+        /**
+         * Returns the time spent collecting since the measure started, in
+         * milliseconds
+         */
+        long gcTime() {
+            long time = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                time += Math.max(0, gc.getCollectionTime());
+            }
+
+            return time - gcTimeAtStart;
+        }
+
+
+        /**
+         * Returns the CPU time used by the process, in nanoseconds, or 0 if
+         * unknown
+         */
+        private static long cpu() {
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            }
+
+            return 0;
+        }
+    }
+}
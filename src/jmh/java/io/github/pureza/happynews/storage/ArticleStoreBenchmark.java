@@ -0,0 +1,106 @@
+package io.github.pureza.happynews.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Compares storing each article in its own file with appending them to
+ * segments
+ *
+ * "open" is what the server does at startup (finding every article), "read"
+ * reads the body of a random article and "post" stores a new one.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArticleStoreBenchmark {
+
+    /** The store being measured */
+    @Param({"files", "segments"})
+    private String storage;
+
+    /** Number of articles stored before measuring */
+    @Param({"20000"})
+    private int articles;
+
+    /** Where the articles are stored */
+    private Path dir;
+
+    /** The store */
+    private ArticleStore store;
+
+    /** Number of the last article stored */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("happynews_benchmark");
+        store = open();
+        for (int i = 0; i < articles; i++) {
+            post();
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int startup() throws IOException {
+        try (ArticleStore store = open()) {
+            return store.ids().size();
+        }
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String read() {
+        int n = ThreadLocalRandom.current().nextInt(articles) + 1;
+        return store.article("<" + n + "@host>", null).getBody();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void post() throws IOException {
+        int n = sequence.incrementAndGet();
+        store.create("<" + n + "@host>", ("From: <user@host>\nSubject: Article " + n
+                + "\nNewsgroups: happynews.users\nMessage-ID: <" + n + "@host>\n\nThe body of article " + n + "\n").getBytes());
+    }
+
+
+    /**
+     * Opens the store being measured
+     */
+    private ArticleStore open() throws IOException {
+        if (storage.equals("segments")) {
+            return new SegmentArticleStore(dir.resolve("segments"));
+        }
+
+        Files.createDirectories(dir.resolve("articles"));
+        return new FileArticleStore(dir.resolve("articles"));
+    }
+}
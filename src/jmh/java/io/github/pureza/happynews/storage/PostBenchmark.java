@@ -0,0 +1,86 @@
+package io.github.pureza.happynews.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of durable posts from concurrent clients
+ *
+ * "file-fsync" writes each article to its own file and syncs it. "log" writes
+ * the file without syncing it and syncs the article log instead, as
+ * ArticleRepository does, so that concurrent posts share fsyncs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class PostBenchmark {
+
+    /** How posts are made durable */
+    @Param({"file-fsync", "log"})
+    private String durability;
+
+    /** Size of each article, in bytes */
+    @Param({"2048"})
+    private int articleSize;
+
+    /** Where the articles are written */
+    private Path dir;
+
+    /** The article log */
+    private ArticleLog log;
+
+    /** The contents of every article */
+    private byte[] article;
+
+    /** Number of the last article posted */
+    private final AtomicInteger sequence = new AtomicInteger();
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("happynews_benchmark");
+        log = new ArticleLog(dir.resolve("articles.log"));
+        article = new byte[articleSize];
+        Arrays.fill(article, (byte) 'x');
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+
+    @Benchmark
+    public void post() throws IOException {
+        String name = sequence.incrementAndGet() + "@host";
+        Path file = dir.resolve(name);
+        if (durability.equals("file-fsync")) {
+            try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+                out.write(article);
+                out.getFD().sync();
+            }
+        } else {
+            Files.write(file, article);
+            log.sync(log.append("<" + name + ">", article));
+        }
+    }
+}
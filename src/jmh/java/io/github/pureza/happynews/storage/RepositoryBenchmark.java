@@ -0,0 +1,78 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.SyntheticSpool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repository operations that don't involve articles: writing and reading
+ * the groups (at every checkpoint and startup), and checking passwords (at
+ * every login)
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** Number of articles in the newsgroups */
+    @Param({"100000"})
+    private int articles;
+
+    /** What the groups are loaded from: the groups file or its snapshot */
+    @Param({"tsv", "snapshot"})
+    private String source;
+
+    /** The spool, whose article files are never read */
+    private SyntheticSpool spool;
+
+    /** The groups */
+    private GroupRepository groups;
+
+    /** The users */
+    private UserRepository users;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        spool = SyntheticSpool.generate(100, articles, 0);
+        groups = new GroupRepository(spool.config());
+        if (source.equals("snapshot")) {
+            groups.writeGroups();
+        }
+        users = new UserRepository(spool.config());
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        spool.close();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean writeGroups() {
+        return groups.writeGroups();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int loadGroups() {
+        return groups.loadGroups().size();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean authenticate() {
+        // The default administrator, created with the repository
+        return users.authenticate("admin", "admin");
+    }
+}
@@ -48,7 +48,9 @@ public class App {
         }
 
         try {
-            (new NNTPServer(port, config)).start();
+            NNTPServer server = new NNTPServer(port, config);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "shutdown"));
+            server.start();
         } catch (Exception ex) {
             logger.error("An error occurred while initializing the server", ex);
         }
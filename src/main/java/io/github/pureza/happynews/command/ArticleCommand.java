@@ -107,10 +107,10 @@ public class ArticleCommand extends Command {
 
         out.printf("220 %d %s article retrieved - head and body follows\n", articleIndex, a.getId());
         out.println(a.getHeader());
-        String body = a.getBody();
-        if (body.length() > 0) {
+        if (a.hasBody()) {
             out.println();
-            out.println(a.getBody());
+            out.flush();
+            client.addBytesSent(a.writeBody(client.getOutputChannel()));
         }
         out.println(".");
     }
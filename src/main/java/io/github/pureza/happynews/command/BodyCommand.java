@@ -106,9 +106,10 @@ public class BodyCommand extends Command {
         }
 
         out.printf("222 %d %s article retrieved - body follows\n", articleIndex, a.getId());
-        String body = a.getBody();
-        if (body.length() > 0)
-            out.println(a.getBody());
+        if (a.hasBody()) {
+            out.flush();
+            client.addBytesSent(a.writeBody(client.getOutputChannel()));
+        }
         out.println(".");
     }
 }
@@ -7,7 +7,6 @@ import java.io.*;
 
 import io.github.pureza.happynews.server.UnknownCommandException;
 import io.github.pureza.happynews.server.NNTPServer;
-import io.github.pureza.happynews.util.Strings;
 
 
 /**
@@ -37,24 +36,17 @@ public abstract class Command {
      * @param args Command arguments
      */
     public Command(User client, String args, NNTPServer server) throws IOException {
-        in = new BufferedReader(
-                new InputStreamReader(
-                        new BufferedInputStream(
-                                client.getClientSocket().getInputStream())));
-
-        out = new PrintStream(client.getClientSocket().getOutputStream(), true);
-        this.client = client;
-        this.args = args.split(" ");
-        this.server = server;
-
-        // Make sure we instantiated the right command class
         if (args.isEmpty()) {
             throw new IllegalArgumentException("Command called with empty arguments");
         }
 
-        if (!((Strings.toSentenceCase(this.args[0]) + "Command").equals(this.getClass().getSimpleName()))) {
-            throw new IllegalArgumentException("Wrong command class instantiated! This is a bug!");
-        }
+        // Reuse the connection's reader and writer, so that we don't lose
+        // input buffered by a previous command
+        in = client.getReader();
+        out = client.getWriter();
+        this.client = client;
+        this.args = args.split(" ");
+        this.server = server;
     }
 
 
@@ -75,21 +67,23 @@ public abstract class Command {
     /**
      * Instantiates the Command instance corresponding to the command requested
      *
-     * Uses reflection.
+     * The command class is looked up in the CommandRegistry.
      *
      * @param client The user who called the command
      * @param args Command arguments
      * @return The command instance
      * @throws UnknownCommandException The command does not exist
      */
-    @SuppressWarnings("unchecked")
     public static Command parse(User client, String args, NNTPServer server)
             throws UnknownCommandException {
-        String cmdName = args.split(" ")[0];
-        cmdName = Strings.toSentenceCase(cmdName);
+        int space = args.indexOf(' ');
+        CommandFactory factory = CommandRegistry.get(space < 0 ? args : args.substring(0, space));
+        if (factory == null) {
+            throw new UnknownCommandException(args);
+        }
+
         try {
-            Class<Command> clss = (Class<Command>) Class.forName("io.github.pureza.happynews.command." + cmdName + "Command");
-            return (Command) clss.getConstructors()[0].newInstance(client, args, server);
+            return factory.create(client, args, server);
         } catch (Exception e) {
             throw new UnknownCommandException(args);
         }
@@ -0,0 +1,23 @@
+package io.github.pureza.happynews.command;
+
+import io.github.pureza.happynews.server.NNTPServer;
+import io.github.pureza.happynews.user.User;
+
+import java.io.IOException;
+
+/**
+ * Creates the Command instance that handles a line typed by the client
+ *
+ * Implemented by the command constructors.
+ */
+@FunctionalInterface
+public interface CommandFactory {
+
+    /**
+     * Creates the command
+     *
+     * @param client The user who called the command
+     * @param args Command arguments
+     */
+    Command create(User client, String args, NNTPServer server) throws IOException;
+}
@@ -0,0 +1,78 @@
+package io.github.pureza.happynews.command;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps each command verb to the factory of the class that handles it
+ *
+ * The table is built once, when the class is loaded, so that dispatching a
+ * command is a single map lookup.
+ */
+public class CommandRegistry {
+
+    /** Command factories, by upper case verb */
+    private static final Map<String, CommandFactory> commands;
+
+    static {
+        Map<String, CommandFactory> map = new HashMap<>();
+        map.put("ARTICLE", ArticleCommand::new);
+        map.put("BODY", BodyCommand::new);
+        map.put("CD", CdCommand::new);
+        map.put("FIND", FindCommand::new);
+        map.put("FINDHEADER", FindheaderCommand::new);
+        map.put("GROUP", GroupCommand::new);
+        map.put("HEAD", HeadCommand::new);
+        map.put("HELP", HelpCommand::new);
+        map.put("IHAVE", IhaveCommand::new);
+        map.put("LAST", LastCommand::new);
+        map.put("LIST", ListCommand::new);
+        map.put("LS", LsCommand::new);
+        map.put("MKDIR", MkdirCommand::new);
+        map.put("MODE", ModeCommand::new);
+        map.put("MV", MvCommand::new);
+        map.put("NEWGROUP", NewgroupCommand::new);
+        map.put("NEWGROUPS", NewgroupsCommand::new);
+        map.put("NEWNEWS", NewnewsCommand::new);
+        map.put("NEXT", NextCommand::new);
+        map.put("PASSWD", PasswdCommand::new);
+        map.put("POST", PostCommand::new);
+        map.put("PWD", PwdCommand::new);
+        map.put("RM", RmCommand::new);
+        map.put("RMDIR", RmdirCommand::new);
+        map.put("SLAVE", SlaveCommand::new);
+        map.put("STAT", StatCommand::new);
+        map.put("STATS", StatsCommand::new);
+        map.put("USERADD", UseraddCommand::new);
+        map.put("USERCH", UserchCommand::new);
+        map.put("USERLIST", UserlistCommand::new);
+        map.put("USERRM", UserrmCommand::new);
+        map.put("XOVER", XoverCommand::new);
+        commands = Collections.unmodifiableMap(map);
+    }
+
+
+    private CommandRegistry() {
+        // This class can't be instantiated
+    }
+
+
+    /**
+     * Returns the factory for the given verb (in any case), or null if there
+     * is no such command
+     */
+    public static CommandFactory get(String verb) {
+        return commands.get(verb.toUpperCase(Locale.ROOT));
+    }
+
+
+    /**
+     * Returns the verbs of all known commands, in upper case
+     */
+    public static Set<String> verbs() {
+        return commands.keySet();
+    }
+}
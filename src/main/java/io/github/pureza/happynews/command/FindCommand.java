@@ -8,6 +8,8 @@ import io.github.pureza.happynews.user.User;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * FIND Command
@@ -40,6 +42,14 @@ public class FindCommand extends Command {
         String[] newsGroups = args[1].split(",");
         String regex = args[2];
 
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, Pattern.DOTALL | Pattern.MULTILINE);
+        } catch (PatternSyntaxException ex) {
+            out.println("501 command syntax error");
+            return;
+        }
+
         out.println("232 List of matching articles follows");
 
         // Saves the matching article ids in a set to avoid duplicates
@@ -50,14 +60,18 @@ public class FindCommand extends Command {
                 continue;
             }
 
-            // XXX Other client threads may update the list of articles while we
-            // XXX traverse it
-            synchronized (g.articles()) {
+            // The index narrows the search down to the articles that contain
+            // the literal parts of the expression. Otherwise, traverse a
+            // snapshot, so that we don't block other clients from posting
+            // while we read the articles
+            int[] candidates = server.findCandidates(g, regex);
+            if (candidates != null) {
+                for (int num : candidates) {
+                    find(server.getArticle(g.getArticleId(num)), pattern, matches);
+                }
+            } else {
                 for (String artId : g.articles()) {
-                    Article a = server.getArticle(artId);
-                    if (a.findInBody(regex)) {
-                        matches.add(a.getId());
-                    }
+                    find(server.getArticle(artId), pattern, matches);
                 }
             }
         }
@@ -65,4 +79,14 @@ public class FindCommand extends Command {
         matches.forEach(out::println);
         out.println(".");
     }
+
+
+    /**
+     * Adds the article to the set of matches, if its body matches the pattern
+     */
+    private void find(Article a, Pattern pattern, Set<String> matches) {
+        if (a != null && a.findInBody(pattern)) {
+            matches.add(a.getId());
+        }
+    }
 }
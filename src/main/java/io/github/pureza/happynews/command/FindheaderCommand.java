@@ -6,6 +6,8 @@ import io.github.pureza.happynews.user.User;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import io.github.pureza.happynews.newsgroup.Newsgroup;
 import io.github.pureza.happynews.newsgroup.Article;
@@ -43,6 +45,13 @@ public class FindheaderCommand extends Command {
         String header = args[2];
         String regex = ".*" + args[3] + ".*";
 
+        try {
+            Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            out.println("501 command syntax error");
+            return;
+        }
+
         out.println("231 List of matching articles follows");
 
         // Saves the matching article ids in a set to avoid duplicates
@@ -53,14 +62,17 @@ public class FindheaderCommand extends Command {
                 continue;
             }
 
-            // XXX Other client threads may update the list of articles while we
-            // XXX traverse it
-            synchronized(group.articles()) {
-                for (String artId : group.articles()) {
-                    Article a = server.getArticle(artId);
-                    if (a.findInHeader(header, regex)) {
-                        matches.add(a.getId());
-                    }
+            if (server.isHeaderIndexed(header)) {
+                matches.addAll(server.findByHeader(group, header, args[3]));
+                continue;
+            }
+
+            // Traverse a snapshot, so that we don't block other clients from
+            // posting while we read the articles
+            for (String artId : group.articles()) {
+                Article a = server.getArticle(artId);
+                if (a.findInHeader(header, regex)) {
+                    matches.add(a.getId());
                 }
             }
         }
@@ -35,13 +35,14 @@ public class GroupCommand extends Command {
             if (group != null) {
                 client.setCurrentGroup(group);
 
-                synchronized (group.articles()) {
-                    out.printf("211 %d %d %d %s group selected\n",
-                            group.getLastArticleNum() - group.getFirstArticleNum() + 1,
-                            group.getFirstArticleNum(),
-                            group.getLastArticleNum(),
-                            group.getName());
-                }
+                // Read the last article number only once, as other clients
+                // may be posting to this group
+                int last = group.getLastArticleNum();
+                out.printf("211 %d %d %d %s group selected\n",
+                        last - group.getFirstArticleNum() + 1,
+                        group.getFirstArticleNum(),
+                        last,
+                        group.getName());
             } else {
                 out.println("411 no such news group");
             }
@@ -70,7 +70,9 @@ public class HelpCommand extends Command {
                         "\n   USERLIST   List all users in the system" +
                         "\n   USERADD    Add a user" +
                         "\n   USERCH     Update the user role" +
-                        "\n   USERRM     Remove a user";
+                        "\n   USERRM     Remove a user" +
+                        "\n   -------------------- Monitoring ---------------------" +
+                        "\n   STATS      Display the latency and throughput of each command";
 
         out.println(userCommands);
         if (client instanceof Editor) {
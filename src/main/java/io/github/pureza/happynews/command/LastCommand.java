@@ -34,21 +34,21 @@ public class LastCommand extends Command {
             return;
         }
 
-        synchronized (currentGroup) {
-            if (currentGroup.isEmpty()) {
-                out.println("420 no current article has been selected");
-                return;
-            }
-
-            int articleIndex = client.getCurrentArticleIndex();
-            if (!currentGroup.hasPrevious(articleIndex)) {
-                out.println("422 no previous article in this group");
-                return;
-            }
-
-            client.setCurrentArticleIndex(currentGroup.previousIndex(articleIndex));
-            Article a = server.getArticle(client.getCurrentArticleId());
-            out.printf("223 %d %s article retrieved - request text separately\n", client.getCurrentArticleIndex(), a.getId());
+        // Articles are only ever appended, so there's no need to lock the
+        // group: the checks below remain valid
+        if (currentGroup.isEmpty()) {
+            out.println("420 no current article has been selected");
+            return;
         }
+
+        int articleIndex = client.getCurrentArticleIndex();
+        if (!currentGroup.hasPrevious(articleIndex)) {
+            out.println("422 no previous article in this group");
+            return;
+        }
+
+        client.setCurrentArticleIndex(currentGroup.previousIndex(articleIndex));
+        Article a = server.getArticle(client.getCurrentArticleId());
+        out.printf("223 %d %s article retrieved - request text separately\n", client.getCurrentArticleIndex(), a.getId());
     }
 }
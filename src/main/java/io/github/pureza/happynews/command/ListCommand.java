@@ -32,13 +32,11 @@ public class ListCommand extends Command {
 
         String canPost = client instanceof Editor ? "y" : "n";
 
-        // XXX Synchronize, because other client thread may change the list of
-        // XXX newsgroups concurrently
-        synchronized(server.groups()) {
-            server.groups().values()
-                    .stream()
-                    .forEach(group -> out.printf("%s %d %d %s\n", group.getName(), group.getLastArticleNum(), group.getFirstArticleNum(), canPost));
-        }
+        // server.groups() is a snapshot, so other clients may keep creating
+        // newsgroups while we print it
+        server.groups().values()
+                .stream()
+                .forEach(group -> out.printf("%s %d %d %s\n", group.getName(), group.getLastArticleNum(), group.getFirstArticleNum(), canPost));
         out.println(".");
     }
 }
@@ -58,15 +58,13 @@ public class NewgroupsCommand extends Command {
 
         out.println("231 list of new newsgroups follows");
 
-        // The list of groups can be modified by other threads, so it needs to
-        // be synchronized
-        synchronized(server.groups()) {
-            server.groups().values()
-                    .stream()
-                    .filter(group -> group.getDateCreated().after(c.getTime()))
-                    .forEach(group -> out.printf("%s %d %d %s\n", group.getName(), group.getLastArticleNum(),
-                            group.getFirstArticleNum(), canPost));
-        }
+        // server.groups() is a snapshot, so other clients may keep creating
+        // newsgroups while we print it
+        server.groups().values()
+                .stream()
+                .filter(group -> group.getDateCreated().after(c.getTime()))
+                .forEach(group -> out.printf("%s %d %d %s\n", group.getName(), group.getLastArticleNum(),
+                        group.getFirstArticleNum(), canPost));
         out.println(".");
     }
 }
@@ -4,6 +4,7 @@ import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
 import io.github.pureza.happynews.server.NNTPServer;
 import io.github.pureza.happynews.user.User;
+import io.github.pureza.happynews.util.Wildmat;
 
 import java.io.IOException;
 import java.text.DateFormat;
@@ -15,10 +16,12 @@ import java.util.*;
  * NEWNEWS Command
  *
  * Lists all articles published on a set of newsgroups after the given date.
- * A date must obey the format YYMMDD HHMMSS.
+ * A date must obey the format YYMMDD HHMMSS. The newsgroups may be given as a
+ * wildmat (e.g., alt.tv.*,!alt.tv.friends).
  *
  * Usage:   NEWNEWS <newsgroup1,[newsgroup2...]> <YYMMDD HHMMSS>
  * Example: NEWNEWS alt.tv.twin-peaks,alt.tv.evangelion 930130 123000
+ *          NEWNEWS comp.lang.* 930130 123000
  * Permission: Reader
  */
 @SuppressWarnings("unused")
@@ -53,25 +56,50 @@ public class NewnewsCommand extends Command {
 
         out.println("230 list of new articles by message-id follows");
         Set<String> articles = new HashSet<>();
-        for (String s : args[1].split(",")) {
-            Newsgroup group = server.getGroup(s);
-
-            // Ignore non-existent newsgroups
-            if (group == null) {
+        for (Newsgroup group : selectGroups(args[1])) {
+            List<String> ids = group.articlesPostedAfter(c.getTime());
+            if (ids != null) {
+                articles.addAll(ids);
                 continue;
             }
 
-            synchronized (group.articles()) {
-                // The newest articles are at the end of the list
-                for (int i = group.articles().size() - 1; i >= 0; i--) {
-                    Article a = server.getArticle(group.articles().get(i));
-                    if (a.getDatePosted().after(c.getTime())) {
-                        articles.add(a.getId());
-                    }
+            // The posting dates of this group are not known, so check every
+            // article. The newest articles are at the end of the list
+            ids = group.articles();
+            for (int i = ids.size() - 1; i >= 0; i--) {
+                Article a = server.getArticle(ids.get(i));
+                if (a.getDatePosted().after(c.getTime())) {
+                    articles.add(a.getId());
                 }
             }
         }
         articles.forEach(out::println);
         out.println(".");
     }
+
+
+    /**
+     * Returns the newsgroups selected by the given list of names or wildmat
+     *
+     * Non-existent newsgroups are ignored.
+     */
+    private List<Newsgroup> selectGroups(String wildmat) {
+        List<Newsgroup> groups = new ArrayList<>();
+        if (Wildmat.isPattern(wildmat)) {
+            for (Newsgroup group : server.groups().values()) {
+                if (Wildmat.matches(wildmat, group.getName())) {
+                    groups.add(group);
+                }
+            }
+        } else {
+            for (String s : wildmat.split(",")) {
+                Newsgroup group = server.getGroup(s);
+                if (group != null) {
+                    groups.add(group);
+                }
+            }
+        }
+
+        return groups;
+    }
 }
@@ -57,7 +57,7 @@ public class PostCommand extends Command {
 
         // Read the header
         while ((line = in.readLine()) != null && line.length() > 0) {
-            logger.info("{}: {}", client.getUsername(), line);
+            logger.debug("{}: {}", client.getUsername(), line);
 
             if (line.equals(".")) {
                 if (headerText.length() == 0) {
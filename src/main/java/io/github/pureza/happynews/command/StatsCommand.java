@@ -0,0 +1,56 @@
+package io.github.pureza.happynews.command;
+
+import io.github.pureza.happynews.server.CommandMetrics;
+import io.github.pureza.happynews.server.NNTPServer;
+import io.github.pureza.happynews.user.Admin;
+import io.github.pureza.happynews.user.User;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STATS Command
+ *
+ * Prints the number of commands run since the server started, by verb, with
+ * their throughput, the bytes sent in response and their latency percentiles,
+ * in milliseconds.
+ * Lines that weren't commands are counted as UNKNOWN.
+ *
+ * Usage:   STATS
+ * Example: STATS
+ * Permission: Admin
+ */
+@SuppressWarnings("unused")
+public class StatsCommand extends Command {
+
+    public StatsCommand(User client, String args, NNTPServer server) throws IOException {
+        super(client, args, server);
+    }
+
+
+    @Override
+    public void process() throws IOException {
+        if (!(client instanceof Admin)) {
+            out.println("502 permission denied");
+            return;
+        }
+
+        CommandMetrics metrics = server.commandMetrics();
+        double uptime = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(metrics.uptime()));
+        out.printf(Locale.ROOT, "292 Command statistics for the last %.0f seconds follow\n", uptime);
+        out.printf("%-10s %10s %7s %9s %12s %8s %8s %8s %8s %8s\n",
+                "VERB", "COUNT", "ERRORS", "PER_SEC", "BYTES", "MEAN_MS", "P50_MS", "P90_MS", "P99_MS", "MAX_MS");
+        for (CommandMetrics.Stats stats : metrics.all().values()) {
+            if (stats.getCount() == 0) {
+                continue;
+            }
+
+            out.printf(Locale.ROOT, "%-10s %10d %7d %9.2f %12d %8.2f %8.2f %8.2f %8.2f %8.2f\n",
+                    stats.verb(), stats.getCount(), stats.getErrors(), stats.getCount() / uptime,
+                    stats.getBytesSent(), stats.getMeanMillis(), stats.getP50Millis(), stats.getP90Millis(),
+                    stats.getP99Millis(), stats.getMaxMillis());
+        }
+        out.println(".");
+    }
+}
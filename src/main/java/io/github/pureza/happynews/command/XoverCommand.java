@@ -3,6 +3,7 @@ package io.github.pureza.happynews.command;
 import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.newsgroup.Overview;
 import io.github.pureza.happynews.server.NNTPServer;
 import io.github.pureza.happynews.user.User;
 
@@ -77,6 +78,17 @@ public class XoverCommand extends Command {
         out.println("224 Overview information follows");
 
         for (int i = startIndex; i <= endIndex; i++) {
+            // Serve the overview database, without touching the article file
+            Overview overview = server.getOverview(group, i);
+            if (overview != null) {
+                out.printf("%d\t%s\t%s\t%s\t%s\n", i,
+                        overview.getSubject(),
+                        overview.getFrom(),
+                        overview.getDate(),
+                        overview.getMessageId());
+                continue;
+            }
+
             Article article = server.getArticle(group.getArticleId(i));
             if (article != null) {
                 ArticleHeader header = article.getHeader();
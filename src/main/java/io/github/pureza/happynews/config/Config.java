@@ -8,6 +8,36 @@ import java.nio.file.Path;
  */
 public abstract class Config {
 
+    /**
+     * How the server handles client connections
+     */
+    public enum ServerMode {
+        /** One thread per connection (ClientHandler) */
+        THREAD,
+
+        /**
+         * One virtual thread per connection (ClientHandler). Requires Java 21;
+         * older JVMs fall back to a pool of platform threads
+         */
+        VIRTUAL,
+
+        /** A few selector-based event loops shared by all connections */
+        NIO
+    }
+
+
+    /**
+     * How the articles are stored
+     */
+    public enum ArticleStorage {
+        /** One file per article, inside the articles home */
+        FILES,
+
+        /** Appended to large segment files, inside the segments home */
+        SEGMENTS
+    }
+
+
     /**
      * Base path where all files are stored
      */
@@ -36,4 +66,143 @@ public abstract class Config {
      * Path to the file containing the user details, relative to the base dir
      */
     public abstract Path usersFile();
+
+
+    /**
+     * Path to the journal of the changes to the newsgroups not yet written to
+     * the groups file
+     */
+    public Path groupsJournal() {
+        return groupsFile().resolveSibling(groupsFile().getFileName() + ".journal");
+    }
+
+
+    /**
+     * Path to the binary snapshot of the groups file, read at startup instead
+     * of the groups file while it's up to date
+     */
+    public Path groupsSnapshot() {
+        return groupsFile().resolveSibling(groupsFile().getFileName() + ".snapshot");
+    }
+
+
+    /**
+     * Path to the binary snapshot of the article ids, read at startup instead
+     * of listing the stored articles
+     */
+    public Path articlesSnapshot() {
+        return baseDir().resolve("articles.snapshot");
+    }
+
+
+    /**
+     * Path to the write-ahead log of the articles posted since the last
+     * checkpoint
+     */
+    public Path articleLog() {
+        return baseDir().resolve("articles.log");
+    }
+
+
+    /**
+     * How the articles are stored
+     */
+    public ArticleStorage articleStorage() {
+        return ArticleStorage.FILES;
+    }
+
+
+    /**
+     * Path to the directory holding the article segments, when the articles
+     * are stored in segments
+     */
+    public Path segmentsHome() {
+        return baseDir().resolve("segments");
+    }
+
+
+    /**
+     * Path to the directory holding the overview files of each newsgroup
+     */
+    public Path overviewHome() {
+        return baseDir().resolve("overview");
+    }
+
+
+    /**
+     * Maximum size of the article cache, in bytes. 0 disables the cache
+     */
+    public long articleCacheSize() {
+        return 64L * 1024 * 1024;
+    }
+
+
+    /**
+     * How the server handles client connections
+     */
+    public ServerMode serverMode() {
+        return ServerMode.THREAD;
+    }
+
+
+    /**
+     * Number of event loops used by the NIO server
+     */
+    public int serverThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Number of threads used to rebuild the repositories and their indexes at
+     * startup
+     */
+    public int startupThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+
+    /**
+     * Maximum number of article files read at once while rebuilding the
+     * repositories and their indexes at startup
+     */
+    public int startupOpenFiles() {
+        return 64;
+    }
+
+
+    /**
+     * Should the article indexes be built in the background, while the server
+     * runs?
+     *
+     * If so (the default), the server starts serving right after reading the
+     * repositories. Until the indexes are ready, FIND and FINDHEADER check
+     * every article.
+     */
+    public boolean indexInBackground() {
+        return true;
+    }
+
+
+    /**
+     * Seconds between the summaries of the storage metrics written to the
+     * log, or 0 to write none
+     */
+    public int metricsLogInterval() {
+        return 60;
+    }
+
+
+    /**
+     * One in how many commands is summarized in the access log, or 0 to log
+     * none
+     *
+     * Every command is logged at 1, but the log then costs more than most
+     * commands do under load, so only a sample is logged by default.
+     *
+     * See AccessLog.
+     */
+    public int accessLogSampling() {
+        return 100;
+    }
 }
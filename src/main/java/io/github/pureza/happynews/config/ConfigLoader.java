@@ -12,6 +12,9 @@ public class ConfigLoader {
 
     /**
      * Loads the configuration from the application.properties file
+     *
+     * System properties with the same name (e.g., -Dserver.mode=nio) take
+     * precedence over the values in the file.
      */
     public static Config load() throws IOException {
         Properties props = new Properties();
@@ -20,28 +23,130 @@ public class ConfigLoader {
         return new Config() {
             @Override
             public Path baseDir() {
-                return Paths.get(props.getProperty("base.dir"));
+                return Paths.get(property(props, "base.dir"));
             }
 
             @Override
             public Path usersHome() {
-                return baseDir().resolve(props.getProperty("users.dir")).normalize();
+                return baseDir().resolve(property(props, "users.dir")).normalize();
             }
 
             @Override
             public Path articlesHome() {
-                return baseDir().resolve(props.getProperty("articles.dir")).normalize();
+                return baseDir().resolve(property(props, "articles.dir")).normalize();
             }
 
             @Override
             public Path groupsFile() {
-                return baseDir().resolve(props.getProperty("groups.file")).normalize();
+                return baseDir().resolve(property(props, "groups.file")).normalize();
             }
 
             @Override
             public Path usersFile() {
-                return baseDir().resolve(props.getProperty("users.file")).normalize();
+                return baseDir().resolve(property(props, "users.file")).normalize();
+            }
+
+            @Override
+            public Path overviewHome() {
+                String dir = property(props, "overview.dir");
+                return dir != null ? baseDir().resolve(dir).normalize() : super.overviewHome();
+            }
+
+            @Override
+            public ArticleStorage articleStorage() {
+                String storage = property(props, "article.storage");
+                return storage != null ? ArticleStorage.valueOf(storage.trim().toUpperCase()) : super.articleStorage();
+            }
+
+            @Override
+            public Path segmentsHome() {
+                String dir = property(props, "segments.dir");
+                return dir != null ? baseDir().resolve(dir).normalize() : super.segmentsHome();
+            }
+
+            @Override
+            public long articleCacheSize() {
+                String size = property(props, "article.cache.size");
+                return size != null ? parseSize(size) : super.articleCacheSize();
+            }
+
+            @Override
+            public ServerMode serverMode() {
+                String mode = property(props, "server.mode");
+                return mode != null ? ServerMode.valueOf(mode.trim().toUpperCase()) : super.serverMode();
+            }
+
+            @Override
+            public int serverThreads() {
+                String threads = property(props, "server.threads");
+                return threads != null && Integer.parseInt(threads.trim()) > 0
+                        ? Integer.parseInt(threads.trim())
+                        : super.serverThreads();
+            }
+
+            @Override
+            public int startupThreads() {
+                String threads = property(props, "startup.threads");
+                return threads != null && Integer.parseInt(threads.trim()) > 0
+                        ? Integer.parseInt(threads.trim())
+                        : super.startupThreads();
+            }
+
+            @Override
+            public int startupOpenFiles() {
+                String files = property(props, "startup.open.files");
+                return files != null ? Integer.parseInt(files.trim()) : super.startupOpenFiles();
+            }
+
+            @Override
+            public boolean indexInBackground() {
+                String background = property(props, "index.background");
+                return background != null ? Boolean.parseBoolean(background.trim()) : super.indexInBackground();
+            }
+
+            @Override
+            public int metricsLogInterval() {
+                String interval = property(props, "metrics.log.interval");
+                return interval != null ? Integer.parseInt(interval.trim()) : super.metricsLogInterval();
+            }
+
+            @Override
+            public int accessLogSampling() {
+                String sampling = property(props, "access.log.sampling");
+                return sampling != null ? Integer.parseInt(sampling.trim()) : super.accessLogSampling();
             }
         };
     }
+
+
+    /**
+     * Parses a size in bytes, with an optional K, M or G suffix (e.g., 64M)
+     */
+    static long parseSize(String size) {
+        size = size.trim().toUpperCase();
+        long unit = 1;
+        switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1)) {
+            case 'G':
+                unit *= 1024;
+            case 'M':
+                unit *= 1024;
+            case 'K':
+                unit *= 1024;
+                size = size.substring(0, size.length() - 1).trim();
+                break;
+            default:
+                break;
+        }
+
+        return Long.parseLong(size) * unit;
+    }
+
+
+    /**
+     * Returns the value of the given property, giving precedence to system
+     * properties
+     */
+    private static String property(Properties props, String name) {
+        return System.getProperty(name, props.getProperty(name));
+    }
 }
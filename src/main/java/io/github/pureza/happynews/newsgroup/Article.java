@@ -1,12 +1,19 @@
 package io.github.pureza.happynews.newsgroup;
 
+import io.github.pureza.happynews.storage.StorageMetrics;
 import io.github.pureza.happynews.validation.ArticleValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -26,13 +33,45 @@ public class Article {
     /** Article file */
     private final File articleFile;
 
+    /** Offset of the article within the file */
+    private final long offset;
+
+    /** Length of the article, in bytes, or -1 if it takes the whole file */
+    private final long length;
+
+    /** Offset of the body within the article, or -1 if not known in advance */
+    private final int bodyOffset;
+
+    /** When the article was posted, or -1 if that's when the file was modified */
+    private final long datePosted;
+
+    /** Mapping of the file, if it's memory-mapped. May be null */
+    private final Mapping mapping;
+
+    /** Cache for the header and body. May be null */
+    private final ArticleCache cache;
+
+    /** Where the body is within the file, once known */
+    private volatile BodyRegion bodyRegion;
+
     /** Used to validate article ids */
     private ArticleValidator articleValidator = new ArticleValidator();
 
+    /** Where the disk work is counted */
+    private static final StorageMetrics metrics = StorageMetrics.get();
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
 
     public Article(String id, Path articlesHome) {
+        this(id, articlesHome, null);
+    }
+
+
+    /**
+     * Creates an article whose header and body are kept in the given cache
+     */
+    public Article(String id, Path articlesHome, ArticleCache cache) {
         if (id == null) {
             throw new NullPointerException("id");
         }
@@ -51,6 +90,43 @@ public class Article {
 
         this.id = id;
         this.articleFile = articlesHome.resolve(this.id.substring(1, this.id.length() - 1)).toFile();
+        this.offset = 0;
+        this.length = -1;
+        this.bodyOffset = -1;
+        this.datePosted = -1;
+        this.mapping = null;
+        this.cache = cache;
+    }
+
+
+    /**
+     * Creates an article stored in the given region of a file (shared with
+     * other articles), that was posted at the given time, in milliseconds
+     *
+     * If the offset of the body is known (it's -1 otherwise), the body is
+     * found without reading the header. If the file is mapped, the article is
+     * read from the mapping, when possible.
+     *
+     * The id is not validated: this is how stores create their articles, whose
+     * ids were checked when they were posted or first found.
+     */
+    public Article(String id, Path file, long offset, long length, int bodyOffset, long datePosted, Mapping mapping, ArticleCache cache) {
+        if (id == null) {
+            throw new NullPointerException("id");
+        }
+
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+
+        this.id = id;
+        this.articleFile = file.toFile();
+        this.offset = offset;
+        this.length = length;
+        this.bodyOffset = bodyOffset;
+        this.datePosted = datePosted;
+        this.mapping = mapping;
+        this.cache = cache;
     }
 
 
@@ -66,16 +142,58 @@ public class Article {
      * Return the date the article was posted
      */
     public Date getDatePosted() {
-        return new Date(articleFile.lastModified());
+        if (datePosted >= 0) {
+            metrics.datePostedKnown();
+            return new Date(datePosted);
+        }
+
+        long start = System.nanoTime();
+        long modified = articleFile.lastModified();
+        metrics.datePostedStat(System.nanoTime() - start);
+        return new Date(modified);
+    }
+
+
+    /**
+     * Returns the size of the article, in bytes
+     */
+    public long size() {
+        return length >= 0 ? length : articleFile.length();
+    }
+
+
+    /**
+     * Reads the overview of the article
+     *
+     * @throws IllegalArgumentException if the header is not correctly formatted
+     */
+    public Overview readOverview() throws IOException {
+        try (BufferedReader in = openReader()) {
+            return Overview.read(in, (int) size());
+        }
     }
 
 
     /**
      * Return the article header
+     *
+     * The header may be shared with other callers, so it must not be modified.
      */
     public ArticleHeader getHeader() {
-        try {
-            return new ArticleHeader(articleFile);
+        ArticleHeader header = cache != null ? cache.getHeader(id) : null;
+        if (header != null) {
+            metrics.headerCacheHit();
+            return header;
+        }
+
+        long start = System.nanoTime();
+        try (BufferedReader in = openHeaderReader()) {
+            header = new ArticleHeader(in);
+            metrics.headerRead(System.nanoTime() - start);
+            if (cache != null) {
+                cache.putHeader(id, header);
+            }
+            return header;
         } catch (IOException ex) {
             logger.error("An error occurred while reading the header of article {}", this.id, ex);
             return null;
@@ -87,29 +205,247 @@ public class Article {
      * Return the article body
      */
     public String getBody() {
-        StringBuilder body = new StringBuilder();
+        byte[] cached = cache != null ? cache.getBody(id) : null;
+        if (cached != null) {
+            metrics.bodyCacheHit();
+            return new String(cached, Charset.defaultCharset());
+        }
+
         try {
-            BufferedReader in = new BufferedReader(new FileReader(articleFile));
+            long start = System.nanoTime();
+            String body = readBody();
+            metrics.bodyRead(System.nanoTime() - start);
+            if (cache != null) {
+                cache.putBody(id, body.getBytes(Charset.defaultCharset()));
+            }
+            return body;
+        } catch (IOException ex) {
+            logger.error("An error occurred while reading the article's body", ex);
+            return "";
+        }
+    }
 
-            String s;
 
+    /**
+     * Reads the article body from the file
+     */
+    private String readBody() throws IOException {
+        ByteBuffer contents = mapped();
+        if (contents != null) {
+            // Decode just the body, which can only be shortened in place if it
+            // has no carriage returns
+            BodyRegion region = bodyRegion();
+            contents.position((int) (region.offset - offset));
+            contents.limit(contents.position() + (int) region.length);
+            metrics.bytesRead(contents.remaining());
+            String body = Charset.defaultCharset().decode(contents).toString();
+            if (body.indexOf('\r') < 0) {
+                return body.endsWith("\n") ? body.substring(0, body.length() - 1) : body;
+            }
+
+            return readLines(new BufferedReader(new StringReader(body)));
+        }
+
+        try (BufferedReader in = openReader()) {
             // Skip the header
+            String s;
             while ((s = in.readLine()) != null && s.length() > 0);
 
-            // Read the body
-            while ((s = in.readLine()) != null) {
-                body.append(s).append("\n");
+            return readLines(in);
+        }
+    }
+
+
+    /**
+     * Reads the remaining lines, separated by newlines
+     */
+    private static String readLines(BufferedReader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String s;
+        while ((s = in.readLine()) != null) {
+            text.append(s).append("\n");
+        }
+
+        // Delete the last newline
+        if (text.length() > 0) {
+            text.deleteCharAt(text.length() - 1);
+        }
+
+        return text.toString();
+    }
+
+
+    /**
+     * Opens a reader of the header of the article, which may read beyond it
+     */
+    private BufferedReader openHeaderReader() throws IOException {
+        ByteBuffer contents = mapped();
+        if (contents != null && bodyOffset >= 0) {
+            contents.limit(bodyOffset);
+            metrics.bytesRead(contents.remaining());
+            return new BufferedReader(new StringReader(Charset.defaultCharset().decode(contents).toString()));
+        }
+
+        return openReader();
+    }
+
+
+    /**
+     * Opens a reader of the article
+     */
+    private BufferedReader openReader() throws IOException {
+        ByteBuffer contents = mapped();
+        if (contents != null) {
+            metrics.bytesRead(contents.remaining());
+            return new BufferedReader(new StringReader(Charset.defaultCharset().decode(contents).toString()));
+        }
+
+        if (length < 0) {
+            InputStream in = new FileInputStream(articleFile);
+            metrics.fileOpened();
+            return new BufferedReader(new InputStreamReader(metrics.counting(in), Charset.defaultCharset()));
+        }
+
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(readRegion()), Charset.defaultCharset()));
+    }
+
+
+    /**
+     * Reads the region of the file that holds the article
+     */
+    private byte[] readRegion() throws IOException {
+        ByteBuffer contents = ByteBuffer.allocate((int) length);
+        try (FileChannel file = FileChannel.open(articleFile.toPath(), StandardOpenOption.READ)) {
+            metrics.fileOpened();
+            while (contents.hasRemaining()) {
+                if (file.read(contents, offset + contents.position()) < 0) {
+                    throw new EOFException("Article " + id + " was truncated");
+                }
             }
+        }
+
+        metrics.bytesRead(contents.capacity());
+
+        return contents.array();
+    }
+
+
+    /**
+     * Returns the contents of the article, if the file is mapped, or null
+     *
+     * Reading from the buffer takes no system calls.
+     */
+    private ByteBuffer mapped() throws IOException {
+        return mapping != null ? mapping.slice(offset, (int) length) : null;
+    }
+
+
+    /**
+     * Checks if the article has a non-empty body
+     */
+    public boolean hasBody() throws IOException {
+        return !bodyRegion().isEmpty();
+    }
+
+
+    /**
+     * Writes the body, as stored, to the given channel
+     *
+     * Bodies are stored as they came from the client (i.e., dot-stuffed), so
+     * they are sent straight from the file, without going through the heap.
+     * If the file is mapped, the body is written from the mapping. Otherwise,
+     * if the target is a socket channel, this is done by the operating system
+     * (sendfile). A newline is added if the body doesn't end with one.
+     *
+     * Returns the number of bytes written.
+     */
+    public long writeBody(WritableByteChannel target) throws IOException {
+        long start = System.nanoTime();
+        BodyRegion region = bodyRegion();
+        if (region.isEmpty()) {
+            return 0;
+        }
 
-            // Delete the last newline
-            if (body.length() > 0) {
-                body.deleteCharAt(body.length() - 1);
+        long written = 0;
+        ByteBuffer contents = mapped();
+        if (contents != null) {
+            contents.position((int) (region.offset - offset));
+            contents.limit(contents.position() + (int) region.length);
+            while (contents.hasRemaining()) {
+                written += target.write(contents);
+            }
+        } else {
+            try (FileChannel file = FileChannel.open(articleFile.toPath(), StandardOpenOption.READ)) {
+                metrics.fileOpened();
+                while (written < region.length) {
+                    long n = file.transferTo(region.offset + written, region.length - written, target);
+                    if (n <= 0 && file.size() < region.offset + region.length) {
+                        throw new EOFException("Article " + id + " was truncated");
+                    }
+                    written += n;
+                }
+            }
+        }
+
+        if (!region.endsWithNewline) {
+            ByteBuffer newline = ByteBuffer.wrap(new byte[] { '\n' });
+            while (newline.hasRemaining()) {
+                written += target.write(newline);
             }
-        } catch (IOException ex) {
-            logger.error("An error occurred while reading the article's body", ex);
         }
 
-        return body.toString();
+        metrics.bodyTransferred(System.nanoTime() - start, written);
+        return written;
+    }
+
+
+    /**
+     * Returns the region of the file holding the body
+     *
+     * Articles don't change once posted, so this is only computed once.
+     */
+    private BodyRegion bodyRegion() throws IOException {
+        BodyRegion region = bodyRegion;
+        if (region == null) {
+            ByteBuffer contents = mapped();
+            if (contents != null) {
+                region = bodyRegion = BodyRegion.of(contents, offset, bodyOffset);
+            } else {
+                try (FileChannel file = FileChannel.open(articleFile.toPath(), StandardOpenOption.READ)) {
+                    metrics.fileOpened();
+                    region = bodyRegion = BodyRegion.of(file, offset, length >= 0 ? length : file.size(), bodyOffset);
+                }
+            }
+        }
+
+        return region;
+    }
+
+
+    /**
+     * Returns the offset of the body of the given article contents (between
+     * the buffer's position and limit), relative to the position
+     *
+     * The body starts after the first empty line. If there is none, there is
+     * no body, and the offset is the length of the contents.
+     */
+    public static int bodyOffset(ByteBuffer contents) {
+        int offset = 0;
+        int lineLength = 0;
+        for (int i = contents.position(); i < contents.limit(); i++) {
+            byte b = contents.get(i);
+            offset++;
+            if (b == '\n') {
+                if (lineLength == 0) {
+                    break;
+                }
+                lineLength = 0;
+            } else if (b != '\r') {
+                lineLength++;
+            }
+        }
+
+        return offset;
     }
 
 
@@ -117,7 +453,15 @@ public class Article {
      * Searches the given regular expression within the body of the article
      */
     public boolean findInBody(String regex) {
-        Matcher m = Pattern.compile(regex, Pattern.DOTALL | Pattern.MULTILINE).matcher(getBody());
+        return findInBody(Pattern.compile(regex, Pattern.DOTALL | Pattern.MULTILINE));
+    }
+
+
+    /**
+     * Searches the given pattern within the body of the article
+     */
+    public boolean findInBody(Pattern pattern) {
+        Matcher m = pattern.matcher(getBody());
         return m.find();
     }
 
@@ -137,6 +481,107 @@ public class Article {
     }
 
 
+    /**
+     * Location of the body within an article file
+     */
+    private static class BodyRegion {
+
+        /** Offset of the first byte of the body */
+        final long offset;
+
+        /** Length of the body, in bytes */
+        final long length;
+
+        /** Does the body end with a newline? */
+        final boolean endsWithNewline;
+
+
+        BodyRegion(long offset, long length, boolean endsWithNewline) {
+            this.offset = offset;
+            this.length = length;
+            this.endsWithNewline = endsWithNewline;
+        }
+
+
+        /**
+         * Finds the body of the article stored in the given region of a file,
+         * which starts after the first empty line, unless its offset is known
+         */
+        static BodyRegion of(FileChannel file, long start, long size, int bodyOffset) throws IOException {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(file.position(start)));
+
+            // Read the header, until the empty line that ends it
+            long offset = Math.max(bodyOffset, 0);
+            int lineLength = 0;
+            int b;
+            while (bodyOffset < 0 && offset < size && (b = in.read()) >= 0) {
+                offset++;
+                if (b == '\n') {
+                    if (lineLength == 0) {
+                        break;
+                    }
+                    lineLength = 0;
+                } else if (b != '\r') {
+                    lineLength++;
+                }
+            }
+
+            long length = size - offset;
+            byte[] tail = new byte[(int) Math.min(2, length)];
+            file.read(ByteBuffer.wrap(tail), start + size - tail.length);
+
+            return of(start + offset, length, tail);
+        }
+
+
+        /**
+         * Finds the body of the given article contents, which were read from
+         * the given offset of the file
+         */
+        static BodyRegion of(ByteBuffer contents, long start, int bodyOffset) {
+            int offset = bodyOffset >= 0 ? bodyOffset : bodyOffset(contents);
+            int length = contents.remaining() - offset;
+            byte[] tail = new byte[Math.min(2, length)];
+            for (int i = 0; i < tail.length; i++) {
+                tail[i] = contents.get(contents.limit() - tail.length + i);
+            }
+
+            return of(start + offset, length, tail);
+        }
+
+
+        /**
+         * Creates the region of a body, given its last bytes
+         */
+        private static BodyRegion of(long offset, long length, byte[] tail) {
+            // A body made of a single line terminator is empty
+            if ((length == 1 && tail[0] == '\n') || (length == 2 && tail[0] == '\r' && tail[1] == '\n')) {
+                length = 0;
+            }
+
+            return new BodyRegion(offset, length, length > 0 && tail[tail.length - 1] == '\n');
+        }
+
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+    }
+
+
+    /**
+     * Memory where a file is mapped
+     */
+    public interface Mapping {
+
+        /**
+         * Returns a buffer with the given region of the file, between its
+         * position (0) and its limit, or null if the region isn't mapped
+         */
+        ByteBuffer slice(long offset, int length) throws IOException;
+    }
+
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,280 @@
+package io.github.pureza.happynews.newsgroup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of parsed article headers and bodies, by article id
+ *
+ * The cache is bounded by the (estimated) number of bytes it holds, not by
+ * the number of articles. When it's full, articles are evicted with the clock
+ * algorithm, an approximation of LRU: lookups only mark the entry as used, and
+ * eviction sweeps the entries in the order they were added, giving those
+ * marked a second chance. Articles never change once posted, so entries never
+ * go stale.
+ *
+ * This class is thread safe. Lookups don't lock; additions do.
+ */
+public class ArticleCache {
+
+    /** Estimated memory taken by an entry, besides its header and body */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /** Maximum size of the cache, in bytes */
+    private final long maxSize;
+
+    /** Cached articles. Changes are guarded by lock */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The clock: cached articles, in the order they'll be considered for
+     * eviction. Guarded by lock
+     */
+    private final Queue<Entry> clock = new ArrayDeque<>();
+
+    /** Guards changes to entries, clock and size */
+    private final Lock lock = new ReentrantLock();
+
+    /** Current size of the cache, in bytes */
+    private long size;
+
+    /** Statistics */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    /**
+     * Creates a cache that holds up to maxSize bytes. A size of 0 disables the
+     * cache
+     */
+    public ArticleCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * Returns the cached header of the given article, or null if it's not
+     * cached
+     *
+     * The header is shared by all callers, so it must not be modified.
+     */
+    public ArticleHeader getHeader(String id) {
+        Entry entry = use(id);
+        return count(entry != null ? entry.header : null);
+    }
+
+
+    /**
+     * Returns the cached body of the given article, or null if it's not cached
+     *
+     * The array is shared by all callers, so it must not be modified.
+     */
+    public byte[] getBody(String id) {
+        Entry entry = use(id);
+        return count(entry != null ? entry.body : null);
+    }
+
+
+    /**
+     * Caches the header of the given article
+     */
+    public void putHeader(String id, ArticleHeader header) {
+        // Headers are held as strings and a map of fields, roughly twice the
+        // size of the text each
+        put(id, header, null, 4L * header.toString().length());
+    }
+
+
+    /**
+     * Caches the body of the given article
+     */
+    public void putBody(String id, byte[] body) {
+        put(id, null, body, body.length);
+    }
+
+
+    /**
+     * Returns the estimated size of the cache, in bytes
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the maximum size of the cache, in bytes
+     */
+    public long maxSize() {
+        return maxSize;
+    }
+
+
+    /**
+     * Returns the number of lookups that found what they were looking for
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Returns the number of lookups that found nothing
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Returns the number of articles evicted to make room for others
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ArticleCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits() +
+                ", misses=" + misses() +
+                ", evictions=" + evictions() +
+                '}';
+    }
+
+
+    /**
+     * Returns the entry of the given article, marking it as used, or null if
+     * it's not cached
+     */
+    private Entry use(String id) {
+        Entry entry = entries.get(id);
+        if (entry != null && !entry.used) {
+            // Checked first, so that hot entries aren't written over and over
+            entry.used = true;
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Counts a lookup and returns its result
+     */
+    private <T> T count(T value) {
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+
+        return value;
+    }
+
+
+    /**
+     * Adds the given header or body to the article's entry and evicts other
+     * articles if the cache gets too big
+     *
+     * Parts that would make the entry bigger than the whole cache are not
+     * added.
+     */
+    private void put(String id, ArticleHeader header, byte[] body, long bytes) {
+        if (bytes + ENTRY_OVERHEAD > maxSize) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            // Checked before the entry is created, so that no empty entry is
+            // left charged to the cache
+            Entry entry = entries.get(id);
+            long entrySize = entry != null ? entry.size : 0;
+            if (entrySize + bytes + ENTRY_OVERHEAD > maxSize) {
+                return;
+            }
+
+            if (entry == null) {
+                entry = new Entry(id);
+                entries.put(id, entry);
+                clock.add(entry);
+                size += ENTRY_OVERHEAD;
+            }
+
+            if (header != null && entry.header == null) {
+                entry.header = header;
+                entry.size += bytes;
+                size += bytes;
+            } else if (body != null && entry.body == null) {
+                entry.body = body;
+                entry.size += bytes;
+                size += bytes;
+            }
+
+            evict(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Evicts articles until the cache fits its maximum size, except for the
+     * given one, which was just added to. Must be called with lock held
+     */
+    private void evict(Entry added) {
+        // Each entry is passed over at most twice: once to clear its mark, and
+        // once to evict it
+        int passes = 2 * clock.size();
+        while (size > maxSize && passes-- > 0) {
+            Entry eldest = clock.remove();
+            if (eldest == added || eldest.used) {
+                eldest.used = false;
+                clock.add(eldest);
+                continue;
+            }
+
+            entries.remove(eldest.id);
+            size -= eldest.size + ENTRY_OVERHEAD;
+            evictions.increment();
+        }
+    }
+
+
+    /**
+     * The cached parts of an article
+     */
+    private static class Entry {
+
+        /** The article id */
+        final String id;
+
+        volatile ArticleHeader header;
+
+        volatile byte[] body;
+
+        /** Size of the header and the body, in bytes. Guarded by lock */
+        long size;
+
+        /** Was the entry looked up since the clock last passed over it? */
+        volatile boolean used;
+
+
+        Entry(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -33,6 +33,14 @@ public class ArticleHeader {
     }
 
 
+    /**
+     * Creates a new ArticleHeader from a reader of the article contents
+     */
+    ArticleHeader(BufferedReader in) throws IOException {
+        readHeader(in);
+    }
+
+
     /**
      * Create a new ArticleHeader from a string
      */
@@ -0,0 +1,272 @@
+package io.github.pureza.happynews.newsgroup;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Append-only list of the article ids of a newsgroup, with their posting
+ * times
+ *
+ * Articles are stored in fixed-size chunks that are never moved once
+ * allocated, so appending never copies the existing articles. An article is
+ * published by incrementing the volatile size, after it was written, which
+ * means that readers never lock: they read the size, and everything below it
+ * is immutable from then on. Appends are serialized, but they don't wait for
+ * readers.
+ *
+ * This class is thread safe.
+ */
+class ArticleList implements Serializable {
+
+    /** Articles per chunk (as a power of two) */
+    private static final int CHUNK_BITS = 10;
+
+    /** Articles per chunk */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Chunks of article ids. Only replaced (by a larger copy) when full
+     * Written under appendLock
+     */
+    private volatile String[][] ids = new String[1][];
+
+    /**
+     * Chunks of posting times, in milliseconds, which never decrease
+     * Written under appendLock
+     */
+    private volatile long[][] times = new long[1][];
+
+    /** Number of articles. Written under appendLock, after the article */
+    private volatile int size;
+
+    /** Are the posting times known? */
+    private volatile boolean dated;
+
+    /** Serializes appends */
+    private final Lock appendLock = new ReentrantLock();
+
+
+    ArticleList(List<String> articles, boolean dated) {
+        for (String id : articles) {
+            add(id, 0);
+        }
+        this.dated = dated;
+    }
+
+
+    /**
+     * Creates a list of articles posted at the given times
+     */
+    ArticleList(List<String> articles, long[] postingTimes) {
+        for (int i = 0; i < articles.size(); i++) {
+            add(articles.get(i), postingTimes[i]);
+        }
+        this.dated = true;
+    }
+
+
+    /**
+     * Appends an article and returns its number
+     *
+     * An article is never considered older than the one posted before it.
+     */
+    int add(String id, long postingTime) {
+        appendLock.lock();
+        try {
+            int n = size;
+            int chunk = n >>> CHUNK_BITS;
+            if (chunk == ids.length) {
+                ids = Arrays.copyOf(ids, chunk * 2);
+                times = Arrays.copyOf(times, chunk * 2);
+            }
+            if (ids[chunk] == null) {
+                ids[chunk] = new String[CHUNK_SIZE];
+                times[chunk] = new long[CHUNK_SIZE];
+            }
+
+            ids[chunk][n & (CHUNK_SIZE - 1)] = id;
+            times[chunk][n & (CHUNK_SIZE - 1)] = n > 0 ? Math.max(postingTime, time(times, n - 1)) : postingTime;
+
+            // Publishes the article
+            size = n + 1;
+            return size;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the id of the article at the given index
+     *
+     * @throws IndexOutOfBoundsException if there is no such article
+     */
+    String get(int index) {
+        int n = size;
+        if (index < 0 || index >= n) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+        }
+
+        return ids[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
+
+
+    /**
+     * Returns the number of articles
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the articles published so far
+     *
+     * The snapshot is a view, not a copy, but later appends don't affect it.
+     */
+    List<String> snapshot() {
+        int n = size;
+        return new Snapshot(ids, 0, n);
+    }
+
+
+    /**
+     * Returns a snapshot of the articles posted after the given time, or null
+     * if the posting times are not known
+     */
+    List<String> postedAfter(long time) {
+        if (!dated) {
+            return null;
+        }
+
+        int n = size;
+        String[][] ids = this.ids;
+        long[][] times = this.times;
+
+        // Find the first article posted after the given time
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(times, mid) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return new Snapshot(ids, low, n);
+    }
+
+
+    /**
+     * Checks whether the posting times are known
+     */
+    boolean isDated() {
+        return dated;
+    }
+
+
+    /**
+     * Returns the posting times of the first n articles, or null if they are
+     * not known
+     */
+    long[] postingTimes(int n) {
+        if (!dated) {
+            return null;
+        }
+
+        long[][] times = this.times;
+        long[] postingTimes = new long[n];
+        for (int i = 0; i < n; i++) {
+            postingTimes[i] = time(times, i);
+        }
+
+        return postingTimes;
+    }
+
+
+    /**
+     * Sets the posting times of all the articles
+     *
+     * Meant to be called once, at startup, before the times are searched.
+     */
+    void datePostings(ToLongFunction<String> postingTime) {
+        appendLock.lock();
+        try {
+            long last = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                last = Math.max(last, postingTime.applyAsLong(get(i)));
+                times[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)] = last;
+            }
+
+            dated = true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the posting time of the article at the given index
+     */
+    private static long time(long[][] times, int index) {
+        return times[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
+
+
+    /**
+     * Immutable view of a range of the list
+     */
+    private static class Snapshot extends AbstractList<String> implements RandomAccess {
+
+        /** The chunks, as they were when the snapshot was taken */
+        private final String[][] ids;
+
+        /** First article of the snapshot (inclusive) */
+        private final int from;
+
+        /** Last article of the snapshot (exclusive) */
+        private final int to;
+
+
+        Snapshot(String[][] ids, int from, int to) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            int i = from + index;
+            return ids[i >>> CHUNK_BITS][i & (CHUNK_SIZE - 1)];
+        }
+
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+
+        @Override
+        public List<String> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size());
+            }
+
+            return new Snapshot(ids, from + fromIndex, from + toIndex);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package io.github.pureza.happynews.newsgroup;
 
 import java.util.*;
 import java.io.*;
+import java.util.function.ToLongFunction;
 
 /**
  * A newsgroup
@@ -16,43 +17,98 @@ public class Newsgroup implements Serializable {
     /** Date of creation */
     private final Date dateCreated;
 
-    /**
-     * Newsgroup articles
-     * This is a shared resource, so all accesses need to be synchronized
-     */
-    private final List<String> articles = new ArrayList<>();
+    /** Newsgroup articles */
+    private final ArticleList articles;
 
 
     public Newsgroup(String name) {
         this.name = name;
         this.dateCreated = new Date();
+        this.articles = new ArticleList(Collections.emptyList(), true);
     }
 
 
     public Newsgroup(String name, Date dateCreated, List<String> articles) {
         this.name = name;
         this.dateCreated = dateCreated;
-        this.articles.addAll(articles);
+        this.articles = new ArticleList(articles, articles.isEmpty());
     }
 
 
     /**
-     * Returns the newsgroup articles
+     * Creates a newsgroup whose articles were posted at the given times, in
+     * milliseconds
+     */
+    public Newsgroup(String name, Date dateCreated, List<String> articles, long[] postingTimes) {
+        this.name = name;
+        this.dateCreated = dateCreated;
+        this.articles = new ArticleList(articles, postingTimes);
+    }
+
+
+    /**
+     * Returns a snapshot of the newsgroup articles
+     *
+     * The snapshot is not affected by articles posted afterwards, so it can be
+     * traversed without holding any lock.
      */
     public List<String> articles() {
-        synchronized (articles) {
-            return articles;
-        }
+        return articles.snapshot();
     }
 
 
     /**
-     * Adds a new article to the newsgroup
+     * Returns a snapshot of the articles posted after the given date, in
+     * posting order, or null if the posting dates are not known
      */
-    public void addArticle(String id) {
-        synchronized (articles) {
-            articles.add(id);
-        }
+    public List<String> articlesPostedAfter(Date date) {
+        return articles.postedAfter(date.getTime());
+    }
+
+
+    /**
+     * Returns the posting times of the first n articles, in milliseconds, or
+     * null if the posting dates are not known
+     */
+    public long[] postingTimes(int n) {
+        return articles.postingTimes(n);
+    }
+
+
+    /**
+     * Checks whether the posting dates of the articles are known
+     */
+    public boolean isDated() {
+        return articles.isDated();
+    }
+
+
+    /**
+     * Sets the posting dates of the articles, which are unknown when the
+     * newsgroup is read from the groups file
+     *
+     * The function returns the posting time of the article with the given id.
+     * An article is never considered older than the one posted before it.
+     */
+    public void datePostings(ToLongFunction<String> postingTime) {
+        articles.datePostings(postingTime);
+    }
+
+
+    /**
+     * Adds a new article to the newsgroup and returns its number
+     */
+    public int addArticle(String id) {
+        return addArticle(id, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Adds a new article, posted at the given time, to the newsgroup and
+     * returns its number
+     */
+    public int addArticle(String id, long postingTime) {
+        return articles.add(id, postingTime);
     }
 
 
@@ -60,9 +116,7 @@ public class Newsgroup implements Serializable {
      * Checks if there are articles in this newsgroup
      */
     public boolean isEmpty() {
-        synchronized (articles) {
-            return articles.isEmpty();
-        }
+        return getLastArticleNum() == 0;
     }
 
 
@@ -70,9 +124,7 @@ public class Newsgroup implements Serializable {
      * Retrieves the id of the article at the given index
      */
     public String getArticleId(int n) {
-        synchronized (articles) {
-            return articles.get(n - 1);
-        }
+        return articles.get(n - 1);
     }
 
 
@@ -104,9 +156,7 @@ public class Newsgroup implements Serializable {
      * Returns the number of the last article in this newsgroup
      */
     public int getLastArticleNum() {
-        synchronized (articles) {
-            return articles.size();
-        }
+        return articles.size();
     }
 
 
@@ -169,13 +219,13 @@ public class Newsgroup implements Serializable {
         Newsgroup newsgroup = (Newsgroup) o;
         return Objects.equals(name, newsgroup.name) &&
                 Objects.equals(dateCreated, newsgroup.dateCreated) &&
-                Objects.equals(articles, newsgroup.articles);
+                Objects.equals(articles(), newsgroup.articles());
     }
 
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, dateCreated, articles);
+        return Objects.hash(name, dateCreated, articles());
     }
 
 
@@ -183,7 +233,7 @@ public class Newsgroup implements Serializable {
     public String toString() {
         return "Newsgroup{" +
                 "dateCreated=" + dateCreated +
-                ", articles=" + articles +
+                ", articles=" + articles() +
                 ", name='" + name + '\'' +
                 '}';
     }
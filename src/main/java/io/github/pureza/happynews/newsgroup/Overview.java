@@ -0,0 +1,258 @@
+package io.github.pureza.happynews.newsgroup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Overview of an article, as displayed by XOVER
+ *
+ * Holds the Subject, From, Date, Message-ID and References fields, plus the
+ * size of the article in bytes and the number of lines of its body. The fields
+ * are packed into a single byte array, each one prefixed by its length, so
+ * that millions of overviews fit in memory.
+ *
+ * This class is immutable.
+ */
+public class Overview {
+
+    /** Indexes of the fields within the packed array */
+    private static final int SUBJECT = 0;
+    private static final int FROM = 1;
+    private static final int DATE = 2;
+    private static final int MESSAGE_ID = 3;
+    private static final int REFERENCES = 4;
+
+    /** Header fields kept in the overview, in order */
+    private static final String[] FIELDS = { "Subject", "From", "Date", "Message-ID", "References" };
+
+    /**
+     * The packed fields
+     *
+     * Each field is encoded as a varint with its length in bytes plus one (0
+     * for missing fields) followed by its value in UTF-8.
+     */
+    private final byte[] fields;
+
+    /** Article size, in bytes */
+    private final int bytes;
+
+    /** Number of lines of the body */
+    private final int lines;
+
+
+    private Overview(byte[] fields, int bytes, int lines) {
+        this.fields = fields;
+        this.bytes = bytes;
+        this.lines = lines;
+    }
+
+
+    /**
+     * Creates the overview of an article with the given header
+     */
+    public static Overview of(ArticleHeader header, int bytes, int lines) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(128);
+        for (String field : FIELDS) {
+            String value = header.get(field);
+            if (value == null) {
+                writeVarint(packed, 0);
+            } else {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(packed, encoded.length + 1);
+                packed.write(encoded, 0, encoded.length);
+            }
+        }
+
+        return new Overview(packed.toByteArray(), bytes, lines);
+    }
+
+
+    /**
+     * Reads the overview of an article of the given size, in bytes, from a
+     * reader of its contents
+     *
+     * @throws IllegalArgumentException if the header is not correctly formatted
+     */
+    static Overview read(BufferedReader in, int bytes) throws IOException {
+        StringBuilder headerText = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && line.length() > 0) {
+            headerText.append(line).append("\n");
+        }
+
+        int lines = 0;
+        while (in.readLine() != null) {
+            lines++;
+        }
+
+        return of(new ArticleHeader(headerText.toString()), bytes, lines);
+    }
+
+
+    /**
+     * Reads an overview written by writeTo(), starting at the buffer's
+     * position
+     *
+     * @throws IllegalArgumentException if the buffer doesn't hold a complete
+     *         overview
+     */
+    public static Overview readFrom(ByteBuffer buffer) {
+        if (buffer.remaining() < 12) {
+            throw new IllegalArgumentException("Truncated overview");
+        }
+
+        int bytes = buffer.getInt();
+        int lines = buffer.getInt();
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated overview");
+        }
+
+        byte[] fields = new byte[length];
+        buffer.get(fields);
+        return new Overview(fields, bytes, lines);
+    }
+
+
+    /**
+     * Writes this overview to the given buffer
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(bytes).putInt(lines).putInt(fields.length).put(fields);
+    }
+
+
+    /**
+     * Returns the number of bytes written by writeTo()
+     */
+    public int getRecordSize() {
+        return 12 + fields.length;
+    }
+
+
+    /**
+     * Counts the lines of an article body
+     */
+    public static int countLines(String body) {
+        if (body.isEmpty()) {
+            return 0;
+        }
+
+        int lines = 1;
+        for (int i = 0; i < body.length() - 1; i++) {
+            if (body.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+
+        return lines;
+    }
+
+
+    public String getSubject() {
+        return field(SUBJECT);
+    }
+
+
+    public String getFrom() {
+        return field(FROM);
+    }
+
+
+    public String getDate() {
+        return field(DATE);
+    }
+
+
+    public String getMessageId() {
+        return field(MESSAGE_ID);
+    }
+
+
+    public String getReferences() {
+        return field(REFERENCES);
+    }
+
+
+    public int getBytes() {
+        return bytes;
+    }
+
+
+    public int getLines() {
+        return lines;
+    }
+
+
+    /**
+     * Decodes the field with the given index, or returns null if it's missing
+     */
+    private String field(int index) {
+        int pos = 0;
+        for (int i = 0; ; i++) {
+            // Decode the varint
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = fields[pos++];
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            if (i == index) {
+                return length == 0 ? null : new String(fields, pos, length - 1, StandardCharsets.UTF_8);
+            }
+
+            pos += Math.max(0, length - 1);
+        }
+    }
+
+
+    /**
+     * Writes a non-negative integer with as few bytes as possible
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Overview overview = (Overview) o;
+        return bytes == overview.bytes &&
+                lines == overview.lines &&
+                Arrays.equals(fields, overview.fields);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(fields), bytes, lines);
+    }
+
+
+    @Override
+    public String toString() {
+        return "Overview{" +
+                "subject='" + getSubject() + '\'' +
+                ", from='" + getFrom() + '\'' +
+                ", date='" + getDate() + '\'' +
+                ", messageId='" + getMessageId() + '\'' +
+                ", references='" + getReferences() + '\'' +
+                ", bytes=" + bytes +
+                ", lines=" + lines +
+                '}';
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.user.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs a summary line for a sample of the commands run: who ran them, the
+ * verb, how long they took and the bytes sent in response
+ *
+ * One in every N commands is logged, picked at random (so the clients don't
+ * share a counter). Commands that failed are always logged, unless the log is
+ * off. The lines go to the io.github.pureza.happynews.access logger, at INFO.
+ *
+ * The line is built on the client's thread (logback would format a
+ * parametrized message there anyway, when handing it to the asynchronous
+ * appender), but only for the commands in the sample, and without
+ * String.format, varargs or boxing.
+ */
+public class AccessLog {
+
+    /** Name of the logger */
+    static final String LOGGER = "io.github.pureza.happynews.access";
+
+    /** One in how many commands is logged (0 = none) */
+    private final int sampling;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(LOGGER);
+
+
+    public AccessLog(int sampling) {
+        this.sampling = Math.max(sampling, 0);
+    }
+
+
+    /**
+     * Logs a command, if it's in the sample
+     */
+    public void log(User client, String verb, long nanos, long bytesSent, boolean failed) {
+        if (sampled(failed) && logger.isInfoEnabled()) {
+            logger.info(line(client.getUsername(), verb, nanos, bytesSent, failed));
+        }
+    }
+
+
+    /**
+     * Is the next command logged?
+     */
+    boolean sampled(boolean failed) {
+        return sampling > 0 && (failed || sampling == 1 || ThreadLocalRandom.current().nextInt(sampling) == 0);
+    }
+
+
+    /**
+     * Returns the line logged for a command, with the time in milliseconds,
+     * to the microsecond
+     */
+    static String line(String username, String verb, long nanos, long bytesSent, boolean failed) {
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        StringBuilder line = new StringBuilder(64)
+                .append(username).append(' ').append(verb).append(' ')
+                .append(micros / 1000).append('.');
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction).append(" ms ").append(bytesSent).append(" bytes");
+        if (failed) {
+            line.append(" FAILED");
+        }
+
+        return line.toString();
+    }
+}
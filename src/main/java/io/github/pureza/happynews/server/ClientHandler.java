@@ -1,6 +1,7 @@
 package io.github.pureza.happynews.server;
 
 import io.github.pureza.happynews.user.User;
+import io.github.pureza.happynews.util.CountingOutputStream;
 
 import java.net.Socket;
 import java.io.*;
@@ -10,9 +11,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * A client thread
+ * Handles a client, from authentication until he quits
+ *
+ * Blocks on the client socket, so each handler needs its own (platform or
+ * virtual) thread.
  */
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable {
+
+    /** Size of the buffer that holds the responses not yet sent */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 
     /** The client socket */
     private final Socket clientSock;
@@ -23,7 +30,8 @@ public class ClientHandler extends Thread {
     /** The server */
     private final NNTPServer server;
 
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
 
 
     public ClientHandler(Socket clientSock, NNTPServer server) {
@@ -32,21 +40,27 @@ public class ClientHandler extends Thread {
     }
 
 
+    @Override
     public void run() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(new BufferedInputStream(clientSock.getInputStream())));
-             PrintStream out = new PrintStream(clientSock.getOutputStream(), true)) {
+        // Responses are buffered and only sent when the client has no more
+        // commands for us, so that a batch of pipelined commands is answered
+        // with a single write
+        try (CountingOutputStream sent = new CountingOutputStream(new BufferedOutputStream(clientSock.getOutputStream(), OUTPUT_BUFFER_SIZE));
+             PrintStream out = new PrintStream(sent, false);
+             BufferedReader in = new BufferedReader(new InputStreamReader(new FlushingInputStream(clientSock.getInputStream(), out)))) {
 
             // Authenticate the user
             authenticate(in, out);
 
             client.setClientSocket(clientSock);
+            client.setClientIO(in, out, sent);
             logger.info("{} authenticated himself as {}", clientSock.getInetAddress().getHostAddress(), client.getUsername());
 
             // Main loop: read and processes commands, until the user quits
             while (true) {
                 String s = in.readLine();
 
-                if (s.toLowerCase().startsWith("quit")) {
+                if (s == null || s.toLowerCase().startsWith("quit")) {
                     break;
                 }
 
@@ -54,17 +68,15 @@ public class ClientHandler extends Thread {
                     continue;
                 }
 
-                try {
-                    Command cmd = Command.parse(client, s, server);
-                    logger.info("{}: {}", client.getUsername(), s);
-                    cmd.process();
-                } catch (UnknownCommandException ex) {
-                    out.println("500 " + s + ": Command not recognized");
-                    logger.debug("Unknown command: {}", s);
-                }
+                execute(client, s, server);
             }
         } catch (Exception ex) {
-            logger.error("An error occurred while handling a client", ex);
+            if (clientSock.isClosed()) {
+                // Closed by the server, which is shutting down
+                logger.debug("Connection closed by the server", ex);
+            } else {
+                logger.error("An error occurred while handling a client", ex);
+            }
         } finally {
             try {
                 String name = client != null ? client.getUsername() : clientSock.getInetAddress().getHostAddress();
@@ -77,6 +89,49 @@ public class ClientHandler extends Thread {
     }
 
 
+    /**
+     * Executes the command typed by the client, recording its latency and the
+     * bytes sent in the server's command metrics and access log
+     *
+     * The line itself is only logged at DEBUG, as it's read for every command
+     * (and may hold passwords).
+     */
+    static void execute(User client, String line, NNTPServer server) throws IOException {
+        long start = System.nanoTime();
+        long sent = client.getBytesSent();
+        Command cmd;
+        try {
+            cmd = Command.parse(client, line, server);
+        } catch (UnknownCommandException ex) {
+            client.getWriter().println("500 " + line + ": Command not recognized");
+            logger.debug("Unknown command: {}", line);
+            record(client, server.commandMetrics().unknown(), start, sent, true, server);
+            return;
+        }
+
+        logger.debug("{}: {}", client.getUsername(), line);
+        boolean failed = true;
+        try {
+            cmd.process();
+            failed = false;
+        } finally {
+            record(client, server.commandMetrics().get(cmd), start, sent, failed, server);
+        }
+    }
+
+
+    /**
+     * Records a command that started at the given time, when the client had
+     * been sent the given number of bytes
+     */
+    private static void record(User client, CommandMetrics.Stats stats, long start, long sent, boolean failed, NNTPServer server) {
+        long nanos = System.nanoTime() - start;
+        long bytes = client.getBytesSent() - sent;
+        stats.record(nanos, bytes, failed);
+        server.accessLog().log(client, stats.verb(), nanos, bytes, failed);
+    }
+
+
     /**
      * Authenticates the user
      *
@@ -0,0 +1,320 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.command.Command;
+import io.github.pureza.happynews.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the commands run by the clients, by verb
+ *
+ * Each command is measured around Command.process(), by ClientHandler (for
+ * both connection models). Recording doesn't allocate: the statistics of a
+ * verb are looked up by the class of the command, and created when the verb
+ * is first seen.
+ *
+ * Once registered, the statistics of each verb are published through JMX, as
+ * io.github.pureza.happynews:type=Commands,name=VERB. Admins can also read
+ * them with STATS.
+ */
+public class CommandMetrics {
+
+    /** Domain of the JMX names */
+    static final String JMX_DOMAIN = "io.github.pureza.happynews";
+
+    /** Name of the statistics of the lines that aren't commands */
+    static final String UNKNOWN = "UNKNOWN";
+
+    /** Statistics by command class */
+    private final Map<Class<?>, Stats> byClass = new ConcurrentHashMap<>();
+
+    /** Statistics by verb */
+    private final Map<String, Stats> byVerb = new ConcurrentHashMap<>();
+
+    /** Statistics of the lines that aren't commands */
+    private final Stats unknown;
+
+    /** When the statistics started, as in System.nanoTime() */
+    private final long start = System.nanoTime();
+
+    /** Are the statistics published through JMX? */
+    private boolean registered;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(CommandMetrics.class);
+
+
+    public CommandMetrics() {
+        this.unknown = verb(UNKNOWN);
+    }
+
+
+    /**
+     * Returns the statistics of the given command
+     */
+    public Stats get(Command command) {
+        Stats stats = byClass.get(command.getClass());
+        return stats != null ? stats : create(command.getClass());
+    }
+
+
+    /**
+     * Returns the statistics of the lines that aren't commands
+     */
+    public Stats unknown() {
+        return unknown;
+    }
+
+
+    /**
+     * Returns the statistics of each verb seen so far, sorted by verb
+     */
+    public SortedMap<String, Stats> all() {
+        return new TreeMap<>(byVerb);
+    }
+
+
+    /**
+     * Returns the time since the statistics started, in nanoseconds
+     */
+    public long uptime() {
+        return System.nanoTime() - start;
+    }
+
+
+    /**
+     * Publishes the statistics through JMX, including those of verbs seen
+     * later
+     *
+     * Replaces those of another server in the same JVM, if any.
+     */
+    public synchronized void register() {
+        registered = true;
+        for (Stats stats : byVerb.values()) {
+            register(stats);
+        }
+    }
+
+
+    /**
+     * Removes the statistics from JMX
+     */
+    public synchronized void unregister() {
+        registered = false;
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        for (Stats stats : byVerb.values()) {
+            try {
+                ObjectName name = objectName(stats.verb);
+                if (mbeans.isRegistered(name)) {
+                    mbeans.unregisterMBean(name);
+                }
+            } catch (JMException ex) {
+                logger.warn("Unable to unregister the statistics of {}", stats.verb, ex);
+            }
+        }
+    }
+
+
+    /**
+     * Creates the statistics of the given command class, named after its verb
+     * (the class name without "Command")
+     */
+    private synchronized Stats create(Class<?> type) {
+        Stats stats = byClass.get(type);
+        if (stats == null) {
+            String verb = type.getSimpleName().replaceFirst("Command$", "").toUpperCase(Locale.ROOT);
+            stats = verb(verb.isEmpty() ? type.getName() : verb);
+            byClass.put(type, stats);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * Returns the statistics of the given verb, creating them if needed
+     */
+    private synchronized Stats verb(String verb) {
+        Stats stats = byVerb.get(verb);
+        if (stats == null) {
+            stats = new Stats(verb);
+            byVerb.put(verb, stats);
+            if (registered) {
+                register(stats);
+            }
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * Publishes the statistics of a verb through JMX
+     */
+    private void register(Stats stats) {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = objectName(stats.verb);
+            if (mbeans.isRegistered(name)) {
+                mbeans.unregisterMBean(name);
+            }
+            mbeans.registerMBean(stats, name);
+        } catch (JMException ex) {
+            logger.warn("Unable to register the statistics of {}", stats.verb, ex);
+        }
+    }
+
+
+    /**
+     * Returns the JMX name of the statistics of the given verb
+     */
+    static ObjectName objectName(String verb) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Commands,name=" + ObjectName.quote(verb));
+    }
+
+
+    /**
+     * Statistics of a verb, as seen through JMX
+     */
+    public interface StatsMXBean {
+
+        /** Number of commands run */
+        long getCount();
+
+        /** Number of commands that failed with an exception */
+        long getErrors();
+
+        /** Bytes sent in response */
+        long getBytesSent();
+
+        /** Average latency, in milliseconds */
+        double getMeanMillis();
+
+        /** Median latency, in milliseconds */
+        double getP50Millis();
+
+        /** 90th percentile of the latency, in milliseconds */
+        double getP90Millis();
+
+        /** 99th percentile of the latency, in milliseconds */
+        double getP99Millis();
+
+        /** 99.9th percentile of the latency, in milliseconds */
+        double getP999Millis();
+
+        /** Largest latency, in milliseconds */
+        double getMaxMillis();
+    }
+
+
+    /**
+     * Statistics of a verb
+     */
+    public static class Stats implements StatsMXBean {
+
+        /** The verb */
+        private final String verb;
+
+        /** Latency of the commands */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /** Number of commands that failed */
+        private final AtomicLong errors = new AtomicLong();
+
+        /** Bytes sent in response */
+        private final AtomicLong bytes = new AtomicLong();
+
+
+        Stats(String verb) {
+            this.verb = verb;
+        }
+
+
+        /**
+         * Records a command, that took the given time and sent the given
+         * number of bytes
+         */
+        public void record(long nanos, long bytesSent, boolean failed) {
+            latency.record(nanos);
+            bytes.addAndGet(bytesSent);
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+
+
+        public String verb() {
+            return verb;
+        }
+
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+
+        @Override
+        public long getErrors() {
+            return errors.get();
+        }
+
+
+        @Override
+        public long getBytesSent() {
+            return bytes.get();
+        }
+
+
+        @Override
+        public double getMeanMillis() {
+            return latency.mean() / 1e6;
+        }
+
+
+        @Override
+        public double getP50Millis() {
+            return latency.percentile(0.50) / 1e6;
+        }
+
+
+        @Override
+        public double getP90Millis() {
+            return latency.percentile(0.90) / 1e6;
+        }
+
+
+        @Override
+        public double getP99Millis() {
+            return latency.percentile(0.99) / 1e6;
+        }
+
+
+        @Override
+        public double getP999Millis() {
+            return latency.percentile(0.999) / 1e6;
+        }
+
+
+        @Override
+        public double getMaxMillis() {
+            return latency.max() / 1e6;
+        }
+    }
+}
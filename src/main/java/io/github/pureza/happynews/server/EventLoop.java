@@ -0,0 +1,143 @@
+package io.github.pureza.happynews.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector thread shared by many client connections
+ *
+ * The event loop only moves bytes: it reads client input and hands it to the
+ * connections, and writes the output they could not write right away. Commands
+ * never run here.
+ */
+class EventLoop extends Thread {
+
+    /** Size of the buffer used to read from the sockets */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The selector */
+    private final Selector selector;
+
+    /** Tasks submitted by other threads, to be run by this loop */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /** Buffer used to read from the sockets. Shared by all connections */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    /** Is the loop running? Cleared by shutdown() */
+    private volatile boolean running = true;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(EventLoop.class);
+
+
+    EventLoop(String name) throws IOException {
+        super(name);
+        setDaemon(true);
+        this.selector = Selector.open();
+    }
+
+
+    /**
+     * Runs the given task in this loop's thread
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Starts serving the given connection
+     */
+    void register(SocketChannel channel, NioConnection connection) {
+        execute(() -> {
+            try {
+                connection.registered(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException ex) {
+                logger.error("Unable to register a new client connection", ex);
+                connection.closeNow();
+            }
+        });
+    }
+
+
+    /**
+     * Stops the loop, closes its connections and then its selector
+     *
+     * Waits for the loop's thread to stop first, so that the selector isn't
+     * used while it's being closed.
+     */
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        join();
+
+        // Connections accepted while we were stopping are registered before
+        // they are closed with the rest
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).closeNow();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            logger.warn("Unable to close the selector of {}", getName(), ex);
+        }
+    }
+
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable(readBuffer);
+                        }
+
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | CancelledKeyException ex) {
+                        logger.debug("An error occurred while talking to a client", ex);
+                        connection.closeNow();
+                    }
+                }
+            } catch (Exception ex) {
+                logger.error("An error occurred in the event loop", ex);
+            }
+        }
+    }
+
+
+    /**
+     * Runs the tasks submitted by other threads
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.pureza.happynews.server;
+
+import java.io.FilterInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that flushes some output before it blocks waiting for input
+ *
+ * Used to pipeline commands: while the client has more commands buffered, the
+ * responses pile up in the output buffer. They are sent all at once when we
+ * run out of input, or when a command (e.g., POST) waits for more data.
+ */
+class FlushingInputStream extends FilterInputStream {
+
+    /** The output to flush */
+    private final Flushable output;
+
+
+    FlushingInputStream(InputStream in, Flushable output) {
+        super(in);
+        this.output = output;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        flushIfBlocking();
+        return super.read();
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        flushIfBlocking();
+        return super.read(b, off, len);
+    }
+
+
+    /**
+     * Flushes the output if the next read would block
+     */
+    private void flushIfBlocking() throws IOException {
+        if (in.available() == 0) {
+            output.flush();
+        }
+    }
+}
@@ -4,8 +4,12 @@ import io.github.pureza.happynews.config.Config;
 import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.newsgroup.Overview;
 import io.github.pureza.happynews.storage.ArticleRepository;
+import io.github.pureza.happynews.storage.BodyIndex;
 import io.github.pureza.happynews.storage.GroupRepository;
+import io.github.pureza.happynews.storage.OverviewRepository;
+import io.github.pureza.happynews.storage.StorageMetrics;
 import io.github.pureza.happynews.storage.UserRepository;
 import io.github.pureza.happynews.user.Editor;
 import io.github.pureza.happynews.user.User;
@@ -13,13 +17,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The server
@@ -35,9 +51,52 @@ public class NNTPServer extends Thread {
     /** Article repository */
     private final ArticleRepository articleRepository;
 
+    /** Overview repository */
+    private final OverviewRepository overviewRepository;
+
+    /** Index of the article bodies, used by FIND */
+    private final BodyIndex bodyIndex = new BodyIndex();
+
+    /** Are the bodies of the articles read at startup indexed yet? */
+    private volatile boolean bodiesIndexed;
+
+    /** Latency and throughput of the commands, by verb */
+    private final CommandMetrics commandMetrics = new CommandMetrics();
+
+    /** Summary lines of a sample of the commands */
+    private final AccessLog accessLog;
+
+    /** Size of the article log, in bytes, that triggers a checkpoint */
+    static final long CHECKPOINT_LOG_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Keeps checkpoints from running in the middle of a post
+     *
+     * Posts take the read lock, so they don't block each other, until their
+     * article was added to its newsgroups. A checkpoint takes the write lock
+     * to rotate the article log, so every article in the rotated log is
+     * already in its newsgroups when they are written.
+     */
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
     /** The server's socket */
     private ServerSocket server;
 
+    /** The NIO engine, once running in NIO mode */
+    private volatile NioServer nioServer;
+
+    /** Runs the client handlers, once running in a thread per connection mode */
+    private volatile ExecutorService handlers;
+
+    /** Sockets of the clients being served by the handlers */
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    /** Seconds to wait for the client handlers to finish on shutdown */
+    private static final int SHUTDOWN_TIMEOUT = 5;
+
+    /** Runs the periodic checkpoints, until the server is shut down */
+    private final Timer timer = new Timer("checkpoint", true);
+
     /** Application configuration */
     private Config config;
 
@@ -50,7 +109,7 @@ public class NNTPServer extends Thread {
      * incoming connections at the port specified
      */
     public NNTPServer(int port, Config config) throws Exception {
-        this(new ServerSocket(port), config);
+        this(openServerSocket(port), config);
     }
 
 
@@ -61,44 +120,200 @@ public class NNTPServer extends Thread {
      */
     NNTPServer(ServerSocket socket, Config config) throws Exception {
         this.config = config;
+        this.accessLog = new AccessLog(config.accessLogSampling());
         this.userRepository = new UserRepository(config);
         this.groupRepository = new GroupRepository(config);
         this.articleRepository = new ArticleRepository(config);
+        this.overviewRepository = new OverviewRepository(config);
+        this.groupRepository.recover(articleRepository.loggedPostings());
+        this.overviewRepository.recover(groupRepository.groups().values(), articleRepository::getOverview);
+        datePostings();
+        if (config.indexInBackground()) {
+            Thread indexer = new Thread(this::indexBodies, "body-index");
+            indexer.setDaemon(true);
+            indexer.start();
+        } else {
+            indexBodies();
+        }
 
         // Creates the server socket
         this.server = socket;
-
-        // Internal thread that stores newsgroups every 10 seconds
-        new Timer() {
-            {
-                schedule(new TimerTask() {
-                    public void run() {
-                        groupRepository.writeGroups();
-                    }
-                }, 10000, 10000);
+        commandMetrics.register();
+        StorageMetrics.get().register();
+
+        // Internal thread that checkpoints the article log or compacts the
+        // group journal, when they are large enough, every 10 seconds
+        timer.schedule(new TimerTask() {
+            public void run() {
+                checkpointIfNeeded();
             }
-        };
+        }, 10000, 10000);
+
+        // And logs what the storage did, every once in a while
+        long interval = TimeUnit.SECONDS.toMillis(config.metricsLogInterval());
+        if (interval > 0) {
+            timer.schedule(new TimerTask() {
+                public void run() {
+                    StorageMetrics.get().logSummary();
+                }
+            }, interval, interval);
+        }
     }
 
 
     /**
      * Server main loop
      */
-    @SuppressWarnings("InfiniteLoopStatement")
     public void run() {
-        logger.info("Server up & listening on {}", server.getLocalPort());
-        while (true) {
+        logger.info("Server up & listening on {} ({} mode)", server.getLocalPort(), config.serverMode().name().toLowerCase());
+        switch (config.serverMode()) {
+            case NIO:
+                runNio();
+                break;
+            case VIRTUAL:
+                runThreaded(newVirtualThreadExecutor());
+                break;
+            default:
+                runThreaded(Executors.newCachedThreadPool());
+                break;
+        }
+    }
+
+
+    /**
+     * Accept loop for the thread per connection models
+     *
+     * Each client is handled by a ClientHandler, run by the given executor.
+     */
+    private void runThreaded(ExecutorService executor) {
+        handlers = executor;
+        while (!server.isClosed()) {
             try {
                 Socket request = server.accept();
-                logger.info("New client connection from " + request.getInetAddress().getHostAddress() + ":" + request.getPort());
-                (new ClientHandler(request, this)).start();
+
+                // Responses are already batched (see ClientHandler), so Nagle's
+                // algorithm would only hold back their last segment, such as
+                // the dot after an article body, until the client acks
+                request.setTcpNoDelay(true);
+                logger.info("New client connection from {}:{}", request.getInetAddress().getHostAddress(), request.getPort());
+                serve(executor, request);
             } catch (IOException ex) {
+                if (server.isClosed()) {
+                    logger.info("Server socket closed");
+                    break;
+                }
+
                 logger.error("An error occurred while waiting for new connections. Retrying...", ex);
             }
         }
     }
 
 
+    /**
+     * Runs a handler for the given client, keeping its socket until it's done
+     */
+    private void serve(ExecutorService executor, Socket request) throws IOException {
+        ClientHandler handler = new ClientHandler(request, this);
+        clients.add(request);
+        try {
+            executor.execute(() -> {
+                try {
+                    handler.run();
+                } finally {
+                    clients.remove(request);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // The server is shutting down
+            clients.remove(request);
+            request.close();
+        }
+    }
+
+
+    /**
+     * Serves the clients with the NIO event loops
+     */
+    private void runNio() {
+        if (server.getChannel() == null) {
+            throw new IllegalStateException("The NIO mode requires a server socket with a channel");
+        }
+
+        try {
+            nioServer = new NioServer(server.getChannel(), this, config.serverThreads());
+            nioServer.run();
+        } catch (IOException ex) {
+            logger.error("Unable to start the event loops", ex);
+        }
+    }
+
+
+    /**
+     * Returns an executor that runs each task in a new virtual thread
+     *
+     * Virtual threads are only available since Java 21, so they are looked up
+     * by reflection. On older JVMs, returns a pool of platform threads.
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            logger.warn("Virtual threads require Java 21. Falling back to a pool of platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+
+    /**
+     * Opens the server socket
+     */
+    private static ServerSocket openServerSocket(int port) throws IOException {
+        // Always backed by a channel, even when clients are served by threads,
+        // so that article bodies can be sent with FileChannel.transferTo
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        return channel.socket();
+    }
+
+
+    /**
+     * Restores the posting dates of the articles of the newsgroups read from
+     * the groups file, so that NEWNEWS doesn't need to check every article
+     *
+     * Newsgroups read from the group snapshot already know them.
+     */
+    private void datePostings() {
+        long start = System.currentTimeMillis();
+        int dated = 0;
+        for (Newsgroup group : groupRepository.groups().values()) {
+            if (group.isDated()) {
+                continue;
+            }
+
+            group.datePostings(id -> {
+                Article article = articleRepository.get(id);
+                return article != null ? article.getDatePosted().getTime() : 0;
+            });
+            dated++;
+        }
+
+        if (dated > 0) {
+            logger.info("Posting dates of {} groups restored in {} ms", dated, System.currentTimeMillis() - start);
+        }
+    }
+
+
+    /**
+     * Indexes the bodies of the articles read at startup
+     */
+    void indexBodies() {
+        bodyIndex.build(groupRepository.groups().values(), articleRepository::readBody,
+                config.startupThreads(), config.startupOpenFiles());
+        bodiesIndexed = true;
+    }
+
+
     /**
      * Returns the application configuration
      */
@@ -108,9 +323,7 @@ public class NNTPServer extends Thread {
 
 
     /**
-     * Return the list of newsgroups
-     *
-     * This is a shared resource and must be synchronized!
+     * Return a snapshot of the list of newsgroups
      */
     public Map<String, Newsgroup> groups() {
         return groupRepository.groups();
@@ -212,6 +425,64 @@ public class NNTPServer extends Thread {
     }
 
 
+    /**
+     * Return the overview of the given article of the newsgroup, or null if
+     * there is no such article
+     */
+    public Overview getOverview(Newsgroup group, int num) {
+        Overview overview = overviewRepository.get(group, num);
+        if (overview == null && group.containsArticleNum(num)) {
+            overview = articleRepository.getOverview(group.getArticleId(num));
+        }
+
+        return overview;
+    }
+
+
+    /**
+     * Returns the numbers of the articles of the given newsgroup whose body may
+     * match the given regular expression, or null if they all may
+     *
+     * They all may while the bodies are being indexed in the background.
+     */
+    public int[] findCandidates(Newsgroup group, String regex) {
+        return bodiesIndexed ? bodyIndex.candidates(group, regex) : null;
+    }
+
+
+    /**
+     * Checks whether FINDHEADER can use an index for the given header field
+     */
+    public boolean isHeaderIndexed(String field) {
+        return articleRepository.isHeaderIndexed(field);
+    }
+
+
+    /**
+     * Returns the ids of the articles of the given newsgroup whose header field
+     * matches the given regular expression. The field must be indexed
+     */
+    public List<String> findByHeader(Newsgroup group, String field, String regex) {
+        return articleRepository.findByHeader(field, regex, group.articles());
+    }
+
+
+    /**
+     * Returns the latency and throughput of the commands run so far
+     */
+    public CommandMetrics commandMetrics() {
+        return commandMetrics;
+    }
+
+
+    /**
+     * Returns the access log
+     */
+    public AccessLog accessLog() {
+        return accessLog;
+    }
+
+
     /**
      * Posts a new article
      */
@@ -220,19 +491,36 @@ public class NNTPServer extends Thread {
         SimpleDateFormat s = new SimpleDateFormat("E, dd MMM yy HH:mm:ss");
         header.put("Date", s.format(new Date()));
 
+        checkpointLock.readLock().lock();
+        try {
+            return post(header, body, author);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Stores a new article and adds it to its newsgroups
+     *
+     * Once the article is stored, it's in the article log, so adding it to
+     * the newsgroups doesn't need to be durable.
+     */
+    private boolean post(ArticleHeader header, String body, Editor author) {
         if (articleRepository.add(header, body, author)) {
             // Adds the article to the corresponding newsgroups
             String msgId = header.get("Message-ID");
+            Overview overview = Overview.of(header, (int) articleRepository.get(msgId).size(), Overview.countLines(body));
             String[] tokens = header.get("Newsgroups").split(",");
             for (String name : tokens) {
-                synchronized (groupRepository.groups()) {
-                    Newsgroup group = groupRepository.get(name.trim());
-                    if (group == null) {
-                        continue;
-                    }
-
-                    group.addArticle(msgId);
+                Newsgroup group = groupRepository.get(name.trim());
+                if (group == null) {
+                    continue;
                 }
+
+                int num = groupRepository.addArticle(group, msgId);
+                overviewRepository.add(group, num, overview);
+                bodyIndex.add(group, num, body);
             }
 
             return true;
@@ -240,4 +528,108 @@ public class NNTPServer extends Thread {
             return false;
         }
     }
+
+
+    /**
+     * Checkpoints the article log if it's large enough, or else compacts the
+     * group journal if it is
+     */
+    void checkpointIfNeeded() {
+        try {
+            if (articleRepository.logSize() >= CHECKPOINT_LOG_SIZE) {
+                checkpoint();
+            } else {
+                groupRepository.compactIfNeeded();
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to checkpoint the article log", ex);
+        }
+    }
+
+
+    /**
+     * Writes the newsgroups (and their snapshot) and syncs the logged
+     * articles, so that the article log can be emptied, and takes a snapshot
+     * of the article ids
+     *
+     * If anything fails, the rotated log is kept, and the next checkpoint
+     * tries again.
+     */
+    void checkpoint() throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            articleRepository.rotateLog();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        if (groupRepository.writeGroups()) {
+            articleRepository.writeSnapshot();
+            articleRepository.discardRotatedLog();
+        }
+    }
+
+
+    /**
+     * Stops accepting connections and checkpoints, so that the next startup
+     * reads the snapshots instead of the article log and the groups file
+     *
+     * The clients are disconnected before the checkpoint, so that they can't
+     * post after it. The repositories are closed last.
+     */
+    public void shutdown() {
+        logger.info("Shutting down");
+        timer.cancel();
+        commandMetrics.unregister();
+        StorageMetrics.get().unregister();
+        try {
+            server.close();
+            NioServer nio = nioServer;
+            if (nio != null) {
+                nio.shutdown();
+            }
+
+            stopHandlers();
+            checkpoint();
+        } catch (IOException ex) {
+            logger.error("Unable to checkpoint on shutdown", ex);
+        }
+
+        try {
+            articleRepository.close();
+            overviewRepository.close();
+            groupRepository.close();
+        } catch (IOException ex) {
+            logger.error("Unable to close the repositories on shutdown", ex);
+        }
+    }
+
+
+    /**
+     * Disconnects the clients served by the handlers and waits a few seconds
+     * for the commands being run to finish
+     */
+    private void stopHandlers() {
+        ExecutorService executor = handlers;
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                logger.warn("Unable to close the connection to {}", client.getRemoteSocketAddress(), ex);
+            }
+        }
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Some clients were still being served {} seconds after the shutdown", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,605 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.user.User;
+import io.github.pureza.happynews.util.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * A client connection served by the NIO server
+ *
+ * The event loop splits the client input into lines and queues them here.
+ * Queued lines are processed in order by a worker thread, which is only
+ * borrowed while there is something to do: idle connections hold no thread.
+ * Commands that read more input (e.g., POST) block their worker, never the
+ * event loop.
+ *
+ * Reading from the client stops while too much of its input is waiting to
+ * be processed, and resumes once the worker caught up, so that a client that
+ * pipelines commands without reading the responses can't fill the heap.
+ *
+ * Responses are buffered until the worker runs out of lines to process, or
+ * until a command waits for more input, so that pipelined commands are
+ * answered with as few writes as possible. Whatever the socket can't take
+ * right away is queued and written by the event loop as the client drains it.
+ *
+ * This class is thread safe.
+ */
+class NioConnection {
+
+    /** Connection state */
+    private enum State { AUTH_USER, AUTH_PASSWORD, READY, CLOSED }
+
+    /** Longest line accepted from a client */
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /** Size of the buffer that holds the responses not yet sent */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /** Amount of queued output above which writers wait for the client */
+    private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+    /** Amount of queued input above which the client isn't read from */
+    private static final int MAX_PENDING_INPUT = 1024 * 1024;
+
+    /** Amount of queued input below which reading from the client resumes */
+    private static final int RESUME_INPUT = MAX_PENDING_INPUT / 4;
+
+    /** The client channel */
+    private final SocketChannel channel;
+
+    /** The event loop serving this connection */
+    private final EventLoop loop;
+
+    /** Runs the commands */
+    private final Executor workers;
+
+    /** The server */
+    private final NNTPServer server;
+
+    /** Selection key, once the channel is registered */
+    private SelectionKey key;
+
+    /**
+     * Complete lines waiting to be processed, including their terminators.
+     * Guarded by this.
+     */
+    private final Queue<byte[]> lines = new ArrayDeque<>();
+
+    /** Number of bytes in lines. Guarded by this */
+    private int pendingInput;
+
+    /** Is reading from the client paused? Guarded by this */
+    private boolean readPaused;
+
+    /** Line being read by a command, and how much of it was already read */
+    private byte[] currentLine;
+    private int currentPos;
+
+    /** Incomplete line. Only touched by the event loop */
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+    /** Is a worker processing this connection? Guarded by this */
+    private boolean processing;
+
+    /** Has the client closed its side of the connection? Guarded by this */
+    private boolean eof;
+
+    /** Output the channel couldn't take yet. Guarded by this */
+    private final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+    /** Number of bytes in output */
+    private int pendingOutput;
+
+    /** Close as soon as the pending output is written? */
+    private boolean closeWhenWritten;
+
+    /** Session state */
+    private volatile State state = State.AUTH_USER;
+
+    /** Username sent with AUTHINFO USER */
+    private String username;
+
+    /** The authenticated user */
+    private User client;
+
+    /** Stream from which commands read client input */
+    private final InputStream in = new LineInputStream();
+
+    /** Stream through which commands write to the client */
+    private final OutputStream rawOut = new ChannelOutputStream();
+
+    /** Counts the bytes of the responses sent through out */
+    private final CountingOutputStream sent = new CountingOutputStream(new BufferedOutputStream(rawOut, OUTPUT_BUFFER_SIZE));
+
+    /** Used to send responses. Flushed at the end of each batch of commands */
+    private final PrintStream out = new PrintStream(sent, false);
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(NioConnection.class);
+
+
+    NioConnection(SocketChannel channel, EventLoop loop, Executor workers, NNTPServer server) {
+        this.channel = channel;
+        this.loop = loop;
+        this.workers = workers;
+        this.server = server;
+    }
+
+
+    /**
+     * Called by the event loop once the channel is registered
+     */
+    void registered(SelectionKey key) {
+        this.key = key;
+        out.println("480 server ready - authentication required");
+        out.flush();
+    }
+
+
+    /**
+     * Called by the event loop when there is input available
+     */
+    void onReadable(ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int n = channel.read(buffer);
+        if (n < 0) {
+            onEof();
+            return;
+        }
+
+        byte[] bytes = buffer.array();
+        int start = 0;
+        Queue<byte[]> complete = new ArrayDeque<>();
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == '\n') {
+                if (partialLine.size() == 0) {
+                    complete.add(Arrays.copyOfRange(bytes, start, i + 1));
+                } else {
+                    partialLine.write(bytes, start, i + 1 - start);
+                    complete.add(partialLine.toByteArray());
+                    partialLine.reset();
+                }
+                start = i + 1;
+            }
+        }
+
+        partialLine.write(bytes, start, buffer.position() - start);
+        if (partialLine.size() > MAX_LINE_LENGTH) {
+            throw new IOException("Line too long");
+        }
+
+        if (!complete.isEmpty()) {
+            deliver(complete);
+        }
+    }
+
+
+    /**
+     * Called by the event loop when the channel can take more output
+     */
+    synchronized void onWritable() throws IOException {
+        writePending();
+    }
+
+
+    /**
+     * Closes the connection right away, discarding any pending output
+     */
+    void closeNow() {
+        synchronized (this) {
+            if (state == State.CLOSED && !channel.isOpen()) {
+                return;
+            }
+
+            state = State.CLOSED;
+            eof = true;
+            notifyAll();
+        }
+
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            channel.close();
+        } catch (IOException ex) {
+            logger.debug("An error occurred", ex);
+        }
+
+        logger.info("{} left", client != null ? client.getUsername() : channel.socket().getInetAddress().getHostAddress());
+    }
+
+
+    /**
+     * Handles the end of the client input
+     */
+    private void onEof() {
+        // The last line may come without a terminator
+        Queue<byte[]> last = new ArrayDeque<>();
+        if (partialLine.size() > 0) {
+            last.add(partialLine.toByteArray());
+            partialLine.reset();
+        }
+
+        setInterest(SelectionKey.OP_READ, false);
+
+        boolean pending;
+        synchronized (this) {
+            lines.addAll(last);
+            eof = true;
+            notifyAll();
+
+            if (processing) {
+                // The worker will close the connection when it's done
+                return;
+            }
+
+            pending = processing = !lines.isEmpty();
+        }
+
+        if (pending) {
+            workers.execute(this::process);
+        } else {
+            close();
+        }
+    }
+
+
+    /**
+     * Queues the given lines and makes sure a worker processes them
+     */
+    private void deliver(Queue<byte[]> complete) {
+        synchronized (this) {
+            for (byte[] line : complete) {
+                lines.add(line);
+                pendingInput += line.length;
+            }
+
+            if (pendingInput > MAX_PENDING_INPUT && !readPaused) {
+                // Called from the event loop, so the interest can be changed
+                // right away
+                readPaused = true;
+                setInterest(SelectionKey.OP_READ, false);
+            }
+
+            if (processing) {
+                // The worker may be waiting for more input
+                notifyAll();
+                return;
+            }
+
+            processing = true;
+        }
+
+        workers.execute(this::process);
+    }
+
+
+    /**
+     * Processes the queued lines, one at a time
+     */
+    private void process() {
+        try {
+            byte[] line;
+            while ((line = nextLine()) != null) {
+                handle(decode(line));
+            }
+        } catch (Exception ex) {
+            logger.error("An error occurred while handling a client", ex);
+            synchronized (this) {
+                state = State.CLOSED;
+                processing = false;
+            }
+        }
+
+        if (state == State.CLOSED) {
+            close();
+        }
+    }
+
+
+    /**
+     * Returns the next line to process, or null when there is none
+     *
+     * Once it returns null, the worker is done with this connection. The
+     * responses to the batch are flushed before that happens.
+     */
+    private synchronized byte[] nextLine() {
+        if (state == State.CLOSED) {
+            out.flush();
+            processing = false;
+            return null;
+        }
+
+        if (currentLine != null) {
+            byte[] rest = new byte[currentLine.length - currentPos];
+            System.arraycopy(currentLine, currentPos, rest, 0, rest.length);
+            currentLine = null;
+            return rest;
+        }
+
+        byte[] line = pollLine();
+        if (line == null) {
+            out.flush();
+            processing = false;
+            if (eof) {
+                state = State.CLOSED;
+            }
+        }
+
+        return line;
+    }
+
+
+    /**
+     * Takes the next line from the queue, resuming reading from the client
+     * once enough of its input was processed
+     *
+     * Must be called with the lock held.
+     */
+    private byte[] pollLine() {
+        byte[] line = lines.poll();
+        if (line != null) {
+            pendingInput -= line.length;
+            if (readPaused && pendingInput < RESUME_INPUT) {
+                readPaused = false;
+                if (!eof) {
+                    loop.execute(() -> setInterest(SelectionKey.OP_READ, true));
+                }
+            }
+        }
+
+        return line;
+    }
+
+
+    /**
+     * Handles a line sent by the client
+     */
+    private void handle(String line) throws IOException {
+        switch (state) {
+            case AUTH_USER:
+                if (line.toUpperCase().startsWith("AUTHINFO USER")) {
+                    username = line.split(" ")[2];
+                    out.println("381 password please...");
+                    state = State.AUTH_PASSWORD;
+                } else {
+                    out.println("480 server ready - authentication required");
+                }
+                break;
+
+            case AUTH_PASSWORD:
+                client = server.login(username, line.split(" ")[2]);
+                if (client == null) {
+                    out.println("482 Invalid login");
+                    logger.info("Invalid login from {}", channel.socket().getInetAddress().getHostAddress());
+                    state = State.CLOSED;
+                    break;
+                }
+
+                client.setClientSocket(channel.socket());
+                client.setClientStreams(in, rawOut);
+                client.setClientIO(new BufferedReader(new InputStreamReader(in)), out, sent);
+                out.println("281 Authentication accepted");
+                logger.info("{} authenticated himself as {}", channel.socket().getInetAddress().getHostAddress(), client.getUsername());
+                state = State.READY;
+                break;
+
+            case READY:
+                if (line.toLowerCase().startsWith("quit")) {
+                    state = State.CLOSED;
+                } else if (!line.equals("")) {
+                    ClientHandler.execute(client, line, server);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * Closes the connection once all the pending output is written
+     */
+    private void close() {
+        synchronized (this) {
+            state = State.CLOSED;
+            if (!output.isEmpty()) {
+                closeWhenWritten = true;
+                return;
+            }
+        }
+
+        closeNow();
+    }
+
+
+    /**
+     * Writes the given bytes to the client
+     *
+     * Whatever the channel can't take right away is queued and written by the
+     * event loop. Blocks while there is too much output queued.
+     */
+    private synchronized void send(byte[] bytes, int off, int len) throws IOException {
+        if (!channel.isOpen()) {
+            throw new IOException("Connection closed");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, off, len);
+        if (output.isEmpty()) {
+            channel.write(buffer);
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+        }
+
+        // Copy, because the caller will reuse its array
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        output.add(copy);
+        pendingOutput += copy.remaining();
+        loop.execute(() -> setInterest(SelectionKey.OP_WRITE, true));
+
+        try {
+            while (pendingOutput > MAX_PENDING_OUTPUT && channel.isOpen()) {
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * Writes as much of the pending output as the channel will take
+     *
+     * Must be called from the event loop, with the lock held.
+     */
+    private void writePending() throws IOException {
+        while (!output.isEmpty()) {
+            ByteBuffer head = output.peek();
+            int written = channel.write(head);
+            pendingOutput -= written;
+            if (head.hasRemaining()) {
+                break;
+            }
+            output.poll();
+        }
+
+        notifyAll();
+
+        if (output.isEmpty()) {
+            setInterest(SelectionKey.OP_WRITE, false);
+            if (closeWhenWritten) {
+                loop.execute(this::closeNow);
+            }
+        }
+    }
+
+
+    /**
+     * Enables or disables interest in the given operation
+     *
+     * Must be called from the event loop.
+     */
+    private void setInterest(int op, boolean enabled) {
+        if (key != null && key.isValid()) {
+            key.interestOps(enabled ? key.interestOps() | op : key.interestOps() & ~op);
+        }
+    }
+
+
+    /**
+     * Decodes a line, stripping its terminator
+     */
+    private static String decode(byte[] line) {
+        int length = line.length;
+        if (length > 0 && line[length - 1] == '\n') {
+            length--;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+
+        return new String(line, 0, length, Charset.defaultCharset());
+    }
+
+
+    /**
+     * Stream over the lines queued by the event loop
+     *
+     * Each read returns at most what is left of one line and available() is
+     * always 0, so that the readers stacked on top of it (which may be
+     * discarded after each command) never read ahead into the next command.
+     */
+    private class LineInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            synchronized (NioConnection.this) {
+                try {
+                    while (currentLine == null) {
+                        currentLine = pollLine();
+                        currentPos = 0;
+                        if (currentLine == null) {
+                            if (eof) {
+                                return -1;
+                            }
+
+                            // The client may be waiting for a response
+                            // before it sends more
+                            out.flush();
+                            NioConnection.this.wait();
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+
+                int n = Math.min(len, currentLine.length - currentPos);
+                System.arraycopy(currentLine, currentPos, b, off, n);
+                currentPos += n;
+                if (currentPos == currentLine.length) {
+                    currentLine = null;
+                }
+                return n;
+            }
+        }
+
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+
+
+    /**
+     * Stream that writes to the channel
+     */
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            send(b, off, len);
+        }
+    }
+}
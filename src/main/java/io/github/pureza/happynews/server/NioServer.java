@@ -0,0 +1,124 @@
+package io.github.pureza.happynews.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking connection engine
+ *
+ * Accepted connections are spread over a small, fixed set of event loops.
+ * Commands run on a worker pool that only grows with the number of commands
+ * being processed at the same time, not with the number of connections.
+ */
+class NioServer {
+
+    /** The server channel */
+    private final ServerSocketChannel serverChannel;
+
+    /** The server */
+    private final NNTPServer server;
+
+    /** The event loops */
+    private final EventLoop[] loops;
+
+    /** Runs the commands */
+    private final ExecutorService workers;
+
+    /** Has the server been shut down? Guarded by this */
+    private boolean stopped;
+
+    /** How long shutdown() waits for the commands being run, in seconds */
+    private static final int SHUTDOWN_TIMEOUT = 5;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(NioServer.class);
+
+
+    NioServer(ServerSocketChannel serverChannel, NNTPServer server, int threads) throws IOException {
+        this.serverChannel = serverChannel;
+        this.server = server;
+
+        this.loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop("EventLoop-" + i);
+        }
+
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "Worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Accepts connections and hands them to the event loops, until the server
+     * channel is closed. Then shuts the server down
+     */
+    void run() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                Socket request = channel.socket();
+                logger.info("New client connection from {}:{}", request.getInetAddress().getHostAddress(), request.getPort());
+
+                EventLoop loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.register(channel, new NioConnection(channel, loop, workers, server));
+            } catch (ClosedChannelException ex) {
+                logger.info("Server channel closed");
+            } catch (IOException ex) {
+                logger.error("An error occurred while waiting for new connections. Retrying...", ex);
+            }
+        }
+
+        shutdown();
+    }
+
+
+    /**
+     * Closes the connections, stops the event loops and interrupts the
+     * commands being run, waiting a few seconds for them to finish
+     *
+     * The server channel must be closed first, so that no more connections
+     * are accepted.
+     */
+    synchronized void shutdown() {
+        if (stopped) {
+            return;
+        }
+
+        stopped = true;
+        try {
+            for (EventLoop loop : loops) {
+                loop.shutdown();
+            }
+
+            workers.shutdownNow();
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Some commands were still running {} seconds after the shutdown", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
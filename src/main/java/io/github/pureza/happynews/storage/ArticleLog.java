@@ -0,0 +1,415 @@
+package io.github.pureza.happynews.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Write-ahead log of the articles posted since the last checkpoint
+ *
+ * Each record holds the id and the contents of an article (whose Newsgroups
+ * header says which groups it was posted to), framed by its length and a
+ * checksum.
+ *
+ * A record without contents cancels the earlier records of the same article,
+ * whose post failed after it was logged. Cancelled articles are left out when
+ * the log is read.
+ *
+ * Appending a record doesn't sync it. Posters call sync() afterwards, which
+ * uses group commit: a single fsync covers every record appended before it
+ * started, so posters that wait for the same fsync share it.
+ *
+ * Like the group journal, the log is rotated at a checkpoint, and the rotated
+ * log is deleted once its articles are safely stored elsewhere.
+ *
+ * A crash in the middle of an append leaves an incomplete record at the end
+ * of the log. It's truncated before anything else is appended, so that the
+ * records that follow can be read.
+ *
+ * This class is thread safe.
+ */
+class ArticleLog implements Closeable {
+
+    /** Size of the length and checksum preceding each record */
+    private static final int FRAME_SIZE = 8;
+
+    /** The log */
+    private final Path file;
+
+    /** The rotated log, while a checkpoint is in progress */
+    private final Path rotated;
+
+    /** The open log, or null if it wasn't opened yet. Guarded by appendLock */
+    private FileChannel channel;
+
+    /** Bytes appended since the log was created. Guarded by appendLock */
+    private long written;
+
+    /** Bytes that are known to be on disk */
+    private volatile long synced;
+
+    /** Size of the current log file */
+    private volatile long size = -1;
+
+    /** Number of fsyncs. Guarded by syncLock */
+    private int syncs;
+
+    /** Serializes appends */
+    private final Lock appendLock = new ReentrantLock();
+
+    /**
+     * Serializes fsyncs
+     *
+     * Always taken before appendLock, if both are needed.
+     */
+    private final Lock syncLock = new ReentrantLock();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    ArticleLog(Path file) {
+        this.file = file;
+        this.rotated = file.resolveSibling(file.getFileName() + ".old");
+    }
+
+
+    /**
+     * Appends a record and returns the position that must be synced for it
+     * to be durable
+     */
+    long append(String id, byte[] article) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(FRAME_SIZE + 4 + idBytes.length + article.length);
+        record.position(FRAME_SIZE);
+        record.putInt(idBytes.length).put(idBytes).put(article);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), FRAME_SIZE, record.capacity() - FRAME_SIZE);
+        record.putInt(0, record.capacity() - FRAME_SIZE);
+        record.putInt(4, (int) crc.getValue());
+        record.rewind();
+
+        appendLock.lock();
+        try {
+            FileChannel channel = channel();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+
+            size += record.capacity();
+            written += record.capacity();
+            return written;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Appends a record that cancels the article with the given id, and
+     * returns the position that must be synced for it to be durable
+     */
+    long cancel(String id) throws IOException {
+        return append(id, new byte[0]);
+    }
+
+
+    /**
+     * Waits until every record up to the given position is on disk
+     *
+     * If another thread is syncing, this waits for it to finish, and then
+     * syncs the records appended meanwhile (including those of other
+     * waiting threads) at once.
+     */
+    void sync(long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                // Synced by the thread we were waiting for
+                return;
+            }
+
+            long target;
+            FileChannel channel;
+            appendLock.lock();
+            try {
+                target = written;
+                channel = channel();
+            } finally {
+                appendLock.unlock();
+            }
+
+            channel.force(false);
+            synced = target;
+            syncs++;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of fsyncs done so far
+     */
+    int syncs() {
+        syncLock.lock();
+        try {
+            return syncs;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the size of the log, in bytes, not counting the rotated log
+     */
+    long size() throws IOException {
+        appendLock.lock();
+        try {
+            channel();
+            return size;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Reads the records of the rotated log, if there is one, followed by those
+     * of the current log
+     *
+     * Reading a log stops at the first incomplete or corrupted record, which
+     * is what a crash in the middle of an append leaves behind.
+     */
+    List<Record> read() throws IOException {
+        List<Record> records = read(rotated);
+        records.addAll(read(file));
+        return withoutCancelled(records);
+    }
+
+
+    /**
+     * Reads the records of the rotated log, if there is one
+     */
+    List<Record> readRotated() throws IOException {
+        return withoutCancelled(read(rotated));
+    }
+
+
+    /**
+     * Syncs the log and moves its records to the rotated log
+     *
+     * If a previous rotated log is still around (because a checkpoint
+     * failed), the records are added to it.
+     */
+    void rotate() throws IOException {
+        syncLock.lock();
+        try {
+            appendLock.lock();
+            try {
+                // An open log was truncated when it was opened
+                boolean truncated = channel != null;
+                if (channel != null) {
+                    channel.force(false);
+                    synced = written;
+                }
+                close();
+
+                if (Files.exists(file)) {
+                    if (!truncated) {
+                        truncate(file);
+                    }
+
+                    if (Files.exists(rotated)) {
+                        truncate(rotated);
+                        Files.write(rotated, Files.readAllBytes(file), APPEND);
+                        Files.delete(file);
+                    } else {
+                        Files.move(file, rotated, ATOMIC_MOVE);
+                    }
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+
+    /**
+     * Deletes the rotated log, once its articles are safely stored elsewhere
+     */
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotated);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                size = -1;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the log channel, opening it if needed. Must be called with
+     * appendLock held
+     */
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            truncate(file);
+            channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+            size = channel.size();
+        }
+
+        return channel;
+    }
+
+
+    /**
+     * Truncates the given log after its last complete record, if needed
+     */
+    private void truncate(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(path));
+        int end = read(log, path, null);
+        if (end < log.capacity()) {
+            logger.warn("Truncating {} from {} to {} bytes, after an incomplete record", path, log.capacity(), end);
+            try (FileChannel channel = FileChannel.open(path, WRITE)) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the records of the given log
+     */
+    private List<Record> read(Path path) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (Files.exists(path)) {
+            read(ByteBuffer.wrap(Files.readAllBytes(path)), path, records);
+        }
+
+        return records;
+    }
+
+
+    /**
+     * Reads the records of the given log contents into the given list (if
+     * not null) and returns where the last complete record ends
+     */
+    private int read(ByteBuffer log, Path path, List<Record> records) {
+        int end = log.position();
+        while (log.remaining() >= FRAME_SIZE) {
+            int start = log.position();
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length < 4 || length > log.remaining()) {
+                logger.warn("Ignoring the incomplete record at position {} of {}", start, path);
+                break;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(log.array(), log.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Ignoring the corrupted record at position {} of {}", start, path);
+                break;
+            }
+
+            int idLength = log.getInt();
+            if (idLength < 0 || idLength > length - 4) {
+                logger.warn("Ignoring the corrupted record at position {} of {}", start, path);
+                break;
+            }
+
+            int to = start + FRAME_SIZE + length;
+            if (records != null) {
+                String id = new String(log.array(), log.position(), idLength, StandardCharsets.UTF_8);
+                int from = log.position() + idLength;
+                records.add(new Record(id, Arrays.copyOfRange(log.array(), from, to)));
+            }
+            log.position(to);
+            end = to;
+        }
+
+        return end;
+    }
+
+
+    /**
+     * Returns the given records, except for the cancelled articles and the
+     * records that cancel them
+     */
+    private static List<Record> withoutCancelled(List<Record> records) {
+        Set<String> cancelled = new HashSet<>();
+        for (Record record : records) {
+            if (record.article.length == 0) {
+                cancelled.add(record.id);
+            }
+        }
+
+        if (!cancelled.isEmpty()) {
+            records.removeIf(record -> cancelled.contains(record.id));
+        }
+
+        return records;
+    }
+
+
+    /**
+     * A logged article
+     */
+    static class Record {
+
+        /** The article id */
+        final String id;
+
+        /** The contents of the article file */
+        final byte[] article;
+
+
+        Record(String id, byte[] article) {
+            this.id = id;
+            this.article = article;
+        }
+    }
+}
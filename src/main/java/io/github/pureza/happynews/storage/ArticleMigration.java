@@ -0,0 +1,80 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.config.Config;
+import io.github.pureza.happynews.config.ConfigLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Copies the articles stored as files to segments
+ *
+ * Run it with the server stopped, and then set article.storage to segments:
+ *
+ *   java -cp happynews-1.0.jar io.github.pureza.happynews.storage.ArticleMigration
+ *
+ * Articles are copied in the order they were posted, and keep their posting
+ * dates. Those already in the segments are skipped, so an interrupted
+ * migration may just be run again. The article files are not deleted.
+ */
+public class ArticleMigration {
+
+    /** Articles copied between progress messages */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(ArticleMigration.class);
+
+
+    private ArticleMigration() {
+        // This class can't be instantiated
+    }
+
+
+    public static void main(String[] args) {
+        try {
+            Config config = ConfigLoader.load();
+            try (FileArticleStore source = new FileArticleStore(config.articlesHome());
+                 SegmentArticleStore target = new SegmentArticleStore(config.segmentsHome())) {
+                migrate(source, target);
+            }
+        } catch (Exception ex) {
+            logger.error("An error occurred while migrating the articles", ex);
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Copies the articles of the source store that are not in the target
+     * store yet, and returns how many were copied
+     */
+    static int migrate(FileArticleStore source, SegmentArticleStore target) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>(source.ids());
+        Collections.sort(ids, Comparator.comparingInt(ArticleRepository::articleNumber)
+                .thenComparing(Comparator.naturalOrder()));
+
+        int copied = 0;
+        for (String id : ids) {
+            if (target.size(id) >= 0) {
+                continue;
+            }
+
+            target.create(id, source.read(id), source.article(id, null).getDatePosted().getTime());
+            if (++copied % PROGRESS_INTERVAL == 0) {
+                logger.info("{} of {} articles copied", copied, ids.size());
+            }
+        }
+
+        target.sync(ids);
+        logger.info("{} articles copied ({} were already there) in {} ms",
+                copied, ids.size() - copied, System.currentTimeMillis() - start);
+        return copied;
+    }
+}
@@ -2,34 +2,56 @@ package io.github.pureza.happynews.storage;
 
 import io.github.pureza.happynews.config.Config;
 import io.github.pureza.happynews.newsgroup.Article;
+import io.github.pureza.happynews.newsgroup.ArticleCache;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
+import io.github.pureza.happynews.newsgroup.Overview;
 import io.github.pureza.happynews.user.Editor;
 import io.github.pureza.happynews.validation.ArticleValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Function;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Repository for articles
  *
- * Articles are stored as files inside articles/. The name of the file is the article id
- * (a string of the form <article-number@sender-host>).
+ * Articles are kept by an ArticleStore: either as files inside articles/,
+ * named after the article id (a string of the form <article-number@sender-host>),
+ * or appended to segment files (see Config.articleStorage()).
  *
  * An empty file with the same name is also created inside the editor's home.
  *
+ * Stored articles are not synced when they are written. Instead, each article
+ * is also appended to a write-ahead log, which is synced before the post is
+ * acknowledged, and replayed at startup. The log is emptied at checkpoints,
+ * once the stored articles are synced (see rotateLog()).
+ *
+ * Instead of listing the stored articles at startup, their ids are read from
+ * a snapshot (see writeSnapshot()). If the store changed since the snapshot
+ * was taken, the articles are listed in the background, while the server
+ * runs. Meanwhile, articles missing from the snapshot are looked up as they
+ * are asked for, and posts wait for the listing, which the article numbers
+ * depend on.
+ *
  * This class is thread safe.
  */
-public class ArticleRepository {
+public class ArticleRepository implements Closeable {
+
+    /** Identifies snapshots of the article ids */
+    private static final int SNAPSHOT_MAGIC = 0x484e4131;
+
+    /** Stamp of the article snapshot, when there is none */
+    private static final long NO_SNAPSHOT = Long.MIN_VALUE;
 
     /** Used to validate article components */
     private ArticleValidator articleValidator = new ArticleValidator();
@@ -37,28 +59,217 @@ public class ArticleRepository {
     /** Application configuration */
     private Config config;
 
+    /** Where the articles are stored */
+    private final ArticleStore store;
+
+    /** Articles, grouped by id */
+    private final Map<String, Article> articles = new ConcurrentHashMap<>();
+
     /**
-     * Articles, grouped by id
-     * This is a shared resource and all accesses must be synchronized.
+     * Number of the last article posted (the article number is the first part
+     * of the article id)
+     *
+     * Restored at startup from the existing article files.
      */
-    private final Map<String, Article> articles = new HashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /** Cache for the headers and bodies of the articles */
+    private final ArticleCache cache;
+
+    /** Index of the most searched header fields */
+    private final HeaderIndex headerIndex = new HeaderIndex();
+
+    /** Are the headers of the articles read at startup indexed yet? */
+    private volatile boolean headersIndexed;
+
+    /** Write-ahead log of the articles posted since the last checkpoint */
+    private final ArticleLog log;
+
+    /** Newsgroups of the articles found in the log at startup, by article id */
+    private final Map<String, List<String>> loggedPostings = new LinkedHashMap<>();
+
+    /** Opened once every stored article is known */
+    private final CountDownLatch scanned = new CountDownLatch(1);
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
 
     public ArticleRepository(Config config) {
         this.config = config;
-        this.articles.putAll(loadArticles());
+        this.cache = new ArticleCache(config.articleCacheSize());
+        this.store = openStore(config);
+        this.log = new ArticleLog(config.articleLog());
+
+        long snapshotStamp = loadSnapshot();
+        long stamp = storeStamp();
+        if (snapshotStamp == NO_SNAPSHOT) {
+            this.articles.putAll(loadArticles());
+        }
+
+        replayLog();
+        this.sequence.set(lastArticleNumber(articles.keySet()));
+        if (config.indexInBackground()) {
+            Thread indexer = new Thread(this::indexHeaders, "header-index");
+            indexer.setDaemon(true);
+            indexer.start();
+        } else {
+            indexHeaders();
+        }
+
+        if (snapshotStamp == NO_SNAPSHOT) {
+            scanned.countDown();
+            writeSnapshot(stamp);
+        } else if (snapshotStamp != -1 && snapshotStamp == stamp) {
+            scanned.countDown();
+        } else {
+            logger.info("The article snapshot is out of date. Listing the articles in the background");
+            Thread scanner = new Thread(this::scan, "article-scan");
+            scanner.setDaemon(true);
+            scanner.start();
+        }
     }
 
 
     /**
      * Returns the article with the given id
+     *
+     * While the stored articles are being listed, articles that aren't known
+     * yet are looked up in the store.
      */
     public Article get(String id) {
-        synchronized (articles) {
-            return articles.get(id);
+        Article article = articles.get(id);
+        if (article == null && scanned.getCount() > 0 && articleValidator.isValidArticleId(id)) {
+            return discover(id);
         }
+
+        return article;
+    }
+
+
+    /**
+     * Reads the overview of the article with the given id from its file, or
+     * returns null if there is no such article
+     *
+     * Only used for the articles missing from the overview files, which keep
+     * the overviews of the rest.
+     */
+    public Overview getOverview(String id) {
+        if (get(id) == null) {
+            return null;
+        }
+
+        try {
+            return store.article(id, null).readOverview();
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.error("Unable to read the overview of article {}", id, ex);
+            return null;
+        }
+    }
+
+
+    /**
+     * Reads the body of the article with the given id, bypassing the cache, or
+     * returns null if there is no such article
+     */
+    public String readBody(String id) {
+        if (get(id) == null) {
+            return null;
+        }
+
+        return store.article(id, null).getBody();
+    }
+
+
+    /**
+     * Returns the articles among the given ones whose header field matches the
+     * given regular expression
+     *
+     * @throws IllegalArgumentException if the field is not indexed
+     */
+    public List<String> findByHeader(String field, String regex, List<String> ids) {
+        return headerIndex.find(field, regex, ids);
+    }
+
+
+    /**
+     * Checks whether the given header field is indexed
+     *
+     * No field is, while the headers are being indexed in the background.
+     */
+    public boolean isHeaderIndexed(String field) {
+        return headersIndexed && headerIndex.isIndexed(field);
+    }
+
+
+    /**
+     * Returns the newsgroups of each article found in the write-ahead log at
+     * startup, in the order they were posted
+     *
+     * Posts are logged before the articles are added to their newsgroups, so
+     * some of these may be missing from them.
+     */
+    public Map<String, List<String>> loggedPostings() {
+        return Collections.unmodifiableMap(loggedPostings);
+    }
+
+
+    /**
+     * Returns the size of the write-ahead log, in bytes
+     */
+    public long logSize() throws IOException {
+        return log.size();
+    }
+
+
+    /**
+     * Starts a checkpoint, by rotating the write-ahead log
+     *
+     * Articles posted afterwards go to a new log. Once whatever depends on the
+     * rotated articles (their newsgroups) is safely stored, the checkpoint is
+     * completed by discardRotatedLog().
+     */
+    public void rotateLog() throws IOException {
+        log.rotate();
+    }
+
+
+    /**
+     * Completes a checkpoint, by syncing the files of the articles in the
+     * rotated log and deleting it
+     */
+    public void discardRotatedLog() throws IOException {
+        store.sync(log.readRotated().stream().map(record -> record.id).collect(toList()));
+        log.discardRotated();
+    }
+
+
+    /**
+     * Writes a snapshot of the article ids, read at the next startup instead
+     * of listing the stored articles, and returns true if it was written
+     *
+     * Nothing is written while the stored articles are being listed, as some
+     * of them may not be known yet.
+     */
+    public boolean writeSnapshot() {
+        return scanned.getCount() == 0 && writeSnapshot(storeStamp());
+    }
+
+
+    /**
+     * Waits until every stored article is known
+     *
+     * Used for testing purposes.
+     */
+    void awaitScan() throws InterruptedException {
+        scanned.await();
+    }
+
+
+    /**
+     * Returns the article cache
+     */
+    public ArticleCache cache() {
+        return cache;
     }
 
 
@@ -74,68 +285,171 @@ public class ArticleRepository {
             return false;
         }
 
-        synchronized (articles) {
-            // The article id is <article-number@host>, where the article number is
-            // the sequential integer counting the number of articles posted on the
-            // server and host is the sender's hostname.
-            int unique = articles.size() + 1;
-            Matcher matcher = ArticleValidator.FROM_PATTERN.matcher(header.get("From"));
+        Matcher matcher = ArticleValidator.FROM_PATTERN.matcher(header.get("From"));
+        if (!matcher.find()) {
+            logger.error("This should not happen, because if the From is invalid, isValidHeader() should have caught that!");
+            return false;
+        }
 
-            if (matcher.find()) {
-                String host = matcher.group(2);
+        // The article id is <article-number@host>, where the article number is
+        // the sequential integer counting the number of articles posted on the
+        // server and host is the sender's hostname.
+        String host = matcher.group(2);
+        StorageMetrics metrics = StorageMetrics.get();
+        long start = System.nanoTime();
+        byte[] contents;
+        try {
+            contents = store(header, body, host);
+        } catch (IOException ex) {
+            logger.error("Unable to store the article", ex);
+            return false;
+        }
 
-                // Create a file named 'article-number@host' within articles/
-                File articleFile = config.articlesHome().resolve(unique + "@" + host).toFile();
+        String msgId = header.get("Message-ID");
+        File userFile = new File(author.getHome() + File.separator + msgId.substring(1, msgId.length() - 1));
+        boolean created = false;
+        boolean logged = false;
+        try {
+            // Create an empty file named after the article id in the user's home
+            long creating = System.nanoTime();
+            created = userFile.createNewFile();
+            if (!created) {
+                throw new IOException(userFile + " already exists");
+            }
+            metrics.homeFileCreated(System.nanoTime() - creating);
 
-                String msgId = "<" + articleFile.getName() + ">";
-                header.put("Message-ID", msgId);
+            // The article is durable once it's in the log. Concurrent posts
+            // share the fsync
+            long logging = System.nanoTime();
+            long position = log.append(msgId, contents);
+            logged = true;
+            log.sync(position);
+            metrics.logSynced(System.nanoTime() - logging);
+        } catch (IOException e) {
+            logger.error("An error occurred while saving the article", e);
+            discard(msgId, userFile, created, logged);
+            return false;
+        }
 
-                try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(articleFile)))) {
-                    out.println(header);
-                    out.println();
-                    out.print(body);
+        headerIndex.add(msgId, header);
+        articles.put(msgId, store.article(msgId, cache));
+        metrics.articleWritten(System.nanoTime() - start, contents.length);
+        return true;
+    }
 
-                    // Create an empty file named after the article id in the user's home
-                    File userFile = new File(author.getHome() + File.separator + articleFile.getName());
-                    boolean created = userFile.createNewFile();
-                    assert (created);
 
-                    articles.put(msgId, new Article(msgId, config.articlesHome()));
-                } catch (IOException e) {
-                    logger.error("An error occurred while saving the article", e);
-                    return false;
-                }
+    /**
+     * Undoes what was done for a post that failed: cancels its log record (so
+     * that it isn't restored at the next startup), deletes the file created
+     * in the editor's home and the stored article
+     */
+    private void discard(String msgId, File userFile, boolean created, boolean logged) {
+        if (logged) {
+            try {
+                log.sync(log.cancel(msgId));
+            } catch (IOException ex) {
+                logger.error("Unable to cancel article {} in the log. It will be restored at the next startup", msgId, ex);
+            }
+        }
+
+        if (created && !userFile.delete()) {
+            logger.warn("Unable to delete {}", userFile);
+        }
+
+        try {
+            store.delete(msgId);
+        } catch (IOException ex) {
+            logger.warn("Unable to delete the incomplete article {}", msgId, ex);
+        }
+    }
 
-                return true;
-            } else {
-                logger.error("This should not happen, because if the From is invalid, isValidHeader() should have caught that!");
-                return false;
+
+    /**
+     * Stores a new article posted from the given host, setting its id in the
+     * header, and returns its contents
+     *
+     * The article number comes from the sequence. If there is already an
+     * article with that number (for instance, because its file was copied to
+     * the articles folder while the server was running), the next number is
+     * tried. The article is only published once it's stored, so no lock is
+     * needed while storing it.
+     */
+    private byte[] store(ArticleHeader header, String body, String host) throws IOException {
+        try {
+            scanned.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the articles to be listed");
+        }
+
+        String separator = System.lineSeparator();
+        while (true) {
+            String msgId = "<" + sequence.incrementAndGet() + "@" + host + ">";
+            header.put("Message-ID", msgId);
+            byte[] contents = (header + separator + separator + body).getBytes(Charset.defaultCharset());
+            try {
+                store.create(msgId, contents);
+                return contents;
+            } catch (FileAlreadyExistsException ex) {
+                logger.warn("Article {} already exists. Trying the next number", msgId);
             }
         }
     }
 
 
     /**
-     * Reads the articles
+     * Returns the highest article number among the given article ids, or 0
+     * if there is none
      */
-    Map<String, Article> loadArticles() {
-        Map<String, Article> articles = new HashMap<>();
+    static int lastArticleNumber(Collection<String> ids) {
+        int last = 0;
+        for (String id : ids) {
+            last = Math.max(last, articleNumber(id));
+        }
+
+        return last;
+    }
 
-        Path articlesHome = config.articlesHome();
-        if (!Files.exists(articlesHome)) {
-            logger.debug("Creating the articles home folder at {}...", articlesHome);
 
+    /**
+     * Returns the article number of the given article id, or -1 if it isn't
+     * a number we assigned
+     */
+    static int articleNumber(String id) {
+        int at = id.indexOf('@');
+        if (at > 1) {
             try {
-                Files.createDirectory(articlesHome);
-            } catch (IOException ex) {
-                logger.error("Unable to create the articles home folder", ex);
+                return Integer.parseInt(id.substring(1, at));
+            } catch (NumberFormatException ex) {
+                // Not a number we assigned
             }
         }
 
+        return -1;
+    }
+
+
+    /**
+     * Reads the articles, by listing the store
+     *
+     * The ids are listed by a single thread, but validated in parallel.
+     * Articles with invalid ids (files that don't belong to the articles
+     * folder) are ignored.
+     */
+    Map<String, Article> loadArticles() {
+        Map<String, Article> articles = new ConcurrentHashMap<>();
         try {
-            articles.putAll(Files.list(articlesHome)
-                    .map(path -> new Article("<" + path.getFileName().toString() + ">", config.articlesHome()))
-                    .collect(toMap(Article::getId, Function.identity())));
+            List<String> ids = new ArrayList<>(store.ids());
+            try (ParallelScan scan = new ParallelScan("Loading the articles", ids.size(),
+                    config.startupThreads(), config.startupOpenFiles())) {
+                scan.forEach(ids, id -> {
+                    if (articleValidator.isValidArticleId(id)) {
+                        articles.put(id, store.article(id, cache));
+                    } else {
+                        logger.warn("Ignoring the article with the invalid id {}", id);
+                    }
+                });
+            }
         } catch (Exception ex) {
             logger.error("An error occurred while loading the articles", ex);
         }
@@ -143,4 +457,241 @@ public class ArticleRepository {
         logger.info("{} articles found", articles.size());
         return articles;
     }
+
+
+    /**
+     * Reads the articles of the snapshot, and returns the stamp of the store
+     * when it was taken, or NO_SNAPSHOT if there is no (valid) snapshot
+     *
+     * The ids aren't validated, as they were when they were first found.
+     */
+    private long loadSnapshot() {
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = Snapshots.open(config.articlesSnapshot(), SNAPSHOT_MAGIC)) {
+            if (in == null) {
+                return NO_SNAPSHOT;
+            }
+
+            long stamp = in.readLong();
+            int count = in.readInt();
+            Map<String, Article> articles = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                Article article = store.article(id, cache);
+                if (article != null) {
+                    articles.put(id, article);
+                }
+            }
+
+            this.articles.putAll(articles);
+            logger.info("{} articles read from the snapshot in {} ms", articles.size(), System.currentTimeMillis() - start);
+            return stamp;
+        } catch (IOException ex) {
+            logger.error("Unable to read the article snapshot. Listing the articles instead", ex);
+            return NO_SNAPSHOT;
+        }
+    }
+
+
+    /**
+     * Writes a snapshot of the article ids, taken when the store had the
+     * given stamp, and returns true if it was written
+     */
+    private boolean writeSnapshot(long stamp) {
+        List<String> ids = new ArrayList<>(articles.keySet());
+        try {
+            Snapshots.write(config.articlesSnapshot(), SNAPSHOT_MAGIC, stamp, out -> {
+                out.writeInt(ids.size());
+                for (String id : ids) {
+                    out.writeUTF(id);
+                }
+            });
+            return true;
+        } catch (IOException ex) {
+            logger.error("Unable to write the article snapshot", ex);
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns the stamp of the store, or -1 if it can't be told
+     */
+    private long storeStamp() {
+        try {
+            return store.stamp();
+        } catch (IOException ex) {
+            logger.warn("Unable to read the stamp of the article store", ex);
+            return -1;
+        }
+    }
+
+
+    /**
+     * Lists the stored articles, adding those missing from the snapshot and
+     * forgetting those that are gone, and writes a new snapshot
+     */
+    private void scan() {
+        long start = System.currentTimeMillis();
+        try {
+            long stamp = storeStamp();
+            Set<String> ids = new HashSet<>(store.ids());
+            int found = 0;
+            for (String id : ids) {
+                if (articles.containsKey(id)) {
+                    continue;
+                }
+
+                if (!articleValidator.isValidArticleId(id)) {
+                    logger.warn("Ignoring the article with the invalid id {}", id);
+                } else if (discover(id) != null) {
+                    found++;
+                }
+            }
+
+            int gone = 0;
+            for (String id : articles.keySet()) {
+                if (!ids.contains(id) && store.size(id) < 0) {
+                    articles.remove(id);
+                    gone++;
+                }
+            }
+
+            sequence.accumulateAndGet(lastArticleNumber(ids), Math::max);
+            scanned.countDown();
+            writeSnapshot(stamp);
+            logger.info("{} articles listed in {} ms: {} were missing from the snapshot and {} are gone",
+                    ids.size(), System.currentTimeMillis() - start, found, gone);
+        } catch (IOException ex) {
+            logger.error("Unable to list the articles", ex);
+        } finally {
+            scanned.countDown();
+        }
+    }
+
+
+    /**
+     * Adds a stored article that wasn't known, indexing its header, and
+     * returns it, or returns null if there is no such article
+     */
+    private Article discover(String id) {
+        try {
+            if (store.size(id) < 0) {
+                return null;
+            }
+        } catch (IOException ex) {
+            logger.warn("Unable to look up article {}", id, ex);
+            return null;
+        }
+
+        Article article = store.article(id, cache);
+        if (article == null) {
+            return null;
+        }
+
+        Article previous = articles.putIfAbsent(id, article);
+        if (previous != null) {
+            return previous;
+        }
+
+        ArticleHeader header = article.getHeader();
+        if (header != null) {
+            headerIndex.add(id, header);
+        }
+        return article;
+    }
+
+
+    /**
+     * Restores the articles of the write-ahead log whose files are missing or
+     * incomplete, and remembers the newsgroups they were posted to
+     */
+    private void replayLog() {
+        List<ArticleLog.Record> records;
+        try {
+            records = log.read();
+        } catch (IOException ex) {
+            logger.error("Unable to read the article log", ex);
+            return;
+        }
+
+        int restored = 0;
+        for (ArticleLog.Record record : records) {
+            try {
+                if (store.size(record.id) != record.article.length) {
+                    store.replace(record.id, record.article);
+                    articles.put(record.id, store.article(record.id, cache));
+                    restored++;
+                } else {
+                    articles.putIfAbsent(record.id, store.article(record.id, cache));
+                }
+
+                String newsgroups = new ArticleHeader(new String(record.article, Charset.defaultCharset())).get("Newsgroups");
+                loggedPostings.put(record.id, newsgroups == null ? Collections.emptyList()
+                        : Arrays.stream(newsgroups.split(",")).map(String::trim).collect(toList()));
+            } catch (IOException | IllegalArgumentException ex) {
+                logger.error("Unable to restore article {} from the log", record.id, ex);
+            }
+        }
+
+        if (!records.isEmpty()) {
+            logger.info("{} articles found in the article log, {} restored", records.size(), restored);
+        }
+    }
+
+
+    /**
+     * Opens the article store chosen by the configuration
+     */
+    private static ArticleStore openStore(Config config) {
+        if (config.articleStorage() == Config.ArticleStorage.SEGMENTS) {
+            try {
+                return new SegmentArticleStore(config.segmentsHome());
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to open the article segments", ex);
+            }
+        }
+
+        return new FileArticleStore(config.articlesHome());
+    }
+
+
+    /**
+     * Indexes the headers of the articles read at startup, reading them in
+     * parallel
+     *
+     * Articles posted meanwhile index themselves.
+     */
+    private void indexHeaders() {
+        List<String> ids = new ArrayList<>(articles.keySet());
+        try (ParallelScan scan = new ParallelScan("Indexing the article headers", ids.size(),
+                config.startupThreads(), config.startupOpenFiles())) {
+            scan.forEach(ids, id -> {
+                try {
+                    Article article = store.article(id, null);
+                    ArticleHeader header = article != null ? article.getHeader() : null;
+                    if (header != null) {
+                        headerIndex.add(id, header);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    logger.error("Unable to index the header of article {}", id, ex);
+                }
+            });
+        }
+
+        headersIndexed = true;
+    }
+
+
+    /**
+     * Closes the article store and the article log
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            store.close();
+        } finally {
+            log.close();
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.Article;
+import io.github.pureza.happynews.newsgroup.ArticleCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.Collection;
+
+/**
+ * Where the contents of the articles are stored
+ *
+ * Articles are stored as they will be sent to the clients: the header, an
+ * empty line and the body. Stores don't sync what they write, unless asked
+ * to (see sync()), because ArticleRepository logs every article first.
+ *
+ * Implementations must be thread safe.
+ */
+public interface ArticleStore extends Closeable {
+
+    /**
+     * Returns the ids of the stored articles
+     */
+    Collection<String> ids() throws IOException;
+
+
+    /**
+     * Returns a stamp that changes whenever articles are added or removed, or
+     * -1 if it can't be told (for instance, because the store changed too
+     * recently)
+     *
+     * Used to tell whether a snapshot of the ids is still up to date, without
+     * listing them.
+     */
+    long stamp() throws IOException;
+
+
+    /**
+     * Returns the given stored article, whose header and body are kept in the
+     * given cache (which may be null)
+     *
+     * Stores that don't know where an article is return null if it's not
+     * stored. Others don't check.
+     */
+    Article article(String id, ArticleCache cache);
+
+
+    /**
+     * Returns the size of the given article, in bytes, or -1 if it's not
+     * stored
+     */
+    long size(String id) throws IOException;
+
+
+    /**
+     * Stores a new article
+     *
+     * @throws FileAlreadyExistsException if there is already an article with
+     *         the given id
+     */
+    void create(String id, byte[] contents) throws IOException;
+
+
+    /**
+     * Stores an article, replacing the one with the same id, if any
+     */
+    void replace(String id, byte[] contents) throws IOException;
+
+
+    /**
+     * Removes an article
+     */
+    void delete(String id) throws IOException;
+
+
+    /**
+     * Makes sure that the given articles are on disk
+     */
+    void sync(Collection<String> ids) throws IOException;
+}
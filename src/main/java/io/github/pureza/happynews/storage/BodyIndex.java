@@ -0,0 +1,541 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.Newsgroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * In-memory inverted index of the article bodies, used by FIND
+ *
+ * Each newsgroup has its own index, mapping every trigram (three consecutive
+ * characters, lower-cased) found in the bodies to the sorted list of the
+ * numbers of the articles that contain it.
+ *
+ * A regular expression can't be looked up directly, so the index is used to
+ * find the candidates: the literal strings that every match must contain are
+ * extracted from the expression, and only the articles that contain all their
+ * trigrams may match. The candidates must still be checked with the regular
+ * expression. Expressions without such literals (for instance, "a|b" or ".*")
+ * can't use the index.
+ *
+ * This class is thread safe.
+ */
+public class BodyIndex {
+
+    /** Minimum length of a literal, so that it has at least one trigram */
+    private static final int TRIGRAM = 3;
+
+    /** Estimated memory used by each term, besides its postings */
+    private static final int TERM_OVERHEAD = 64;
+
+    /** Articles of a newsgroup read at once while building the index */
+    static final int BUILD_BATCH = 4096;
+
+    /** Indexes of each newsgroup, by newsgroup name */
+    private final Map<String, GroupIndex> groups = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    /**
+     * Indexes the bodies of all the articles of the given newsgroups
+     *
+     * The body of each article is obtained with the given function, which
+     * receives the article id and returns null if the body can't be read.
+     */
+    public void build(Collection<Newsgroup> groups, Function<String, String> bodies) {
+        build(groups, bodies, Runtime.getRuntime().availableProcessors(), 64);
+    }
+
+
+    /**
+     * Indexes the bodies of all the articles of the given newsgroups, with the
+     * given number of threads, reading at most openFiles bodies at once
+     *
+     * The articles of each newsgroup are read and split into trigrams in
+     * parallel, a batch at a time, and then added in order, because appending
+     * to the posting lists is cheaper than inserting into them.
+     */
+    public void build(Collection<Newsgroup> groups, Function<String, String> bodies, int threads, int openFiles) {
+        long start = System.currentTimeMillis();
+        Map<Newsgroup, List<String>> snapshots = new LinkedHashMap<>();
+        long total = 0;
+        for (Newsgroup group : groups) {
+            List<String> ids = group.articles();
+            snapshots.put(group, ids);
+            total += ids.size();
+        }
+
+        int articles = 0;
+        try (ParallelScan scan = new ParallelScan("Indexing the article bodies", total, threads, openFiles)) {
+            for (Map.Entry<Newsgroup, List<String>> entry : snapshots.entrySet()) {
+                List<String> ids = entry.getValue();
+                for (int from = 0; from < ids.size(); from += BUILD_BATCH) {
+                    int first = from;
+                    long[][] batch = new long[Math.min(BUILD_BATCH, ids.size() - from)][];
+                    List<Integer> indexes = new ArrayList<>(batch.length);
+                    for (int i = 0; i < batch.length; i++) {
+                        indexes.add(i);
+                    }
+
+                    scan.forEach(indexes, i -> {
+                        String body = bodies.apply(ids.get(first + i));
+                        if (body != null) {
+                            batch[i] = trigrams(body);
+                        }
+                    });
+
+                    GroupIndex index = this.groups.computeIfAbsent(entry.getKey().getName(), name -> new GroupIndex());
+                    for (int i = 0; i < batch.length; i++) {
+                        if (batch[i] != null) {
+                            index.add(first + i + 1, batch[i]);
+                            articles++;
+                        }
+                    }
+                }
+            }
+        }
+
+        logger.info("Indexed the bodies of {} articles in {} ms ({} terms, {} postings, ~{} KB)",
+                articles, System.currentTimeMillis() - start, terms(), postings(), estimatedSize() / 1024);
+    }
+
+
+    /**
+     * Indexes the body of the given article
+     */
+    public void add(Newsgroup group, int num, String body) {
+        long[] trigrams = trigrams(body);
+        groups.computeIfAbsent(group.getName(), name -> new GroupIndex()).add(num, trigrams);
+    }
+
+
+    /**
+     * Returns the numbers of the articles of the given newsgroup that may
+     * match the given regular expression, in ascending order
+     *
+     * Returns null if the index can't be used for this expression or
+     * newsgroup, in which case all the articles must be checked.
+     */
+    public int[] candidates(Newsgroup group, String regex) {
+        GroupIndex index = groups.get(group.getName());
+        List<String> literals = requiredLiterals(regex);
+        if (index == null || literals == null || literals.isEmpty()) {
+            return null;
+        }
+
+        Set<Long> keys = new HashSet<>();
+        for (String literal : literals) {
+            for (long trigram : trigrams(literal)) {
+                keys.add(trigram);
+            }
+        }
+
+        return index.intersect(keys);
+    }
+
+
+    /**
+     * Returns the number of distinct terms, over all newsgroups
+     */
+    public long terms() {
+        long terms = 0;
+        for (GroupIndex index : groups.values()) {
+            terms += index.terms();
+        }
+
+        return terms;
+    }
+
+
+    /**
+     * Returns the number of postings, over all newsgroups
+     */
+    public long postings() {
+        long postings = 0;
+        for (GroupIndex index : groups.values()) {
+            postings += index.postings();
+        }
+
+        return postings;
+    }
+
+
+    /**
+     * Returns an estimate of the memory used by the index, in bytes
+     */
+    public long estimatedSize() {
+        return terms() * TERM_OVERHEAD + postings() * Integer.BYTES;
+    }
+
+
+    /**
+     * Returns the literal strings that every match of the given regular
+     * expression must contain
+     *
+     * Only literals long enough to have a trigram are returned. Returns null if
+     * the expression is not understood well enough to tell (for instance, if it
+     * has alternations or inline flags).
+     *
+     * This is conservative: anything that isn't a plain character (classes,
+     * groups, anchors, escapes) ends the current literal, and so does every
+     * quantifier. Optional characters are dropped.
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        boolean afterLiteral = false;
+
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 == regex.length()) {
+                        return null;
+                    }
+
+                    char next = regex.charAt(i + 1);
+                    if (!Character.isLetterOrDigit(next)) {
+                        // An escaped metacharacter
+                        run.append(next);
+                        afterLiteral = true;
+                    } else if ("dDsSwWbBAGZzntrfae".indexOf(next) >= 0) {
+                        flush(run, literals);
+                        afterLiteral = false;
+                    } else {
+                        // Quotes, back references, code points, properties...
+                        return null;
+                    }
+                    i += 2;
+                    break;
+
+                case '[':
+                    flush(run, literals);
+                    afterLiteral = false;
+                    i = skipClass(regex, i);
+                    break;
+
+                case '(':
+                    if (regex.startsWith("(?", i) && i + 2 < regex.length()
+                            && "idmsuxU-".indexOf(regex.charAt(i + 2)) >= 0) {
+                        // Inline flags may change how the rest is matched
+                        return null;
+                    }
+                    flush(run, literals);
+                    afterLiteral = false;
+                    i = skipGroup(regex, i);
+                    break;
+
+                case '*':
+                case '?':
+                case '{':
+                case '+':
+                    if (afterLiteral && c != '+') {
+                        // The last character is optional
+                        run.setLength(run.length() - 1);
+                    }
+                    flush(run, literals);
+                    afterLiteral = false;
+                    i = skipQuantifier(regex, i);
+                    break;
+
+                case '.':
+                case '^':
+                case '$':
+                    flush(run, literals);
+                    afterLiteral = false;
+                    i++;
+                    break;
+
+                case '|':
+                case ')':
+                    return null;
+
+                default:
+                    run.append(c);
+                    afterLiteral = true;
+                    i++;
+            }
+
+            if (i < 0) {
+                return null;
+            }
+        }
+
+        flush(run, literals);
+        return literals;
+    }
+
+
+    /**
+     * Adds the current literal to the list, if it's long enough, and starts a
+     * new one
+     */
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() >= TRIGRAM) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+
+    /**
+     * Returns the index that follows the character class that starts at the
+     * given index, or -1 if it isn't closed
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            // A leading ] is a literal
+            i++;
+        }
+
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Returns the index that follows the group that starts at the given index,
+     * or -1 if it isn't closed
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Returns the index that follows the quantifier that starts at the given
+     * index, including its lazy or possessive modifier
+     */
+    private static int skipQuantifier(String regex, int start) {
+        int i = start;
+        if (regex.charAt(i) == '{') {
+            i = regex.indexOf('}', i);
+            if (i < 0) {
+                return -1;
+            }
+        }
+        i++;
+
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+
+        return i;
+    }
+
+
+    /**
+     * Returns the distinct trigrams of the given text
+     */
+    static long[] trigrams(String text) {
+        if (text.length() < TRIGRAM) {
+            return new long[0];
+        }
+
+        long[] trigrams = new long[text.length() - TRIGRAM + 1];
+        char c0 = Character.toLowerCase(text.charAt(0));
+        char c1 = Character.toLowerCase(text.charAt(1));
+        for (int i = 0; i < trigrams.length; i++) {
+            char c2 = Character.toLowerCase(text.charAt(i + 2));
+            trigrams[i] = ((long) c0 << 32) | ((long) c1 << 16) | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+
+    /**
+     * Index of a single newsgroup
+     */
+    private static class GroupIndex {
+
+        /**
+         * Posting lists, by trigram
+         * This is a shared resource, guarded by lock
+         */
+        private final Map<Long, Postings> postings = new HashMap<>();
+
+        /** Number of postings. Guarded by lock */
+        private long size;
+
+        /** Guards the postings */
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+        void add(int num, long[] trigrams) {
+            lock.writeLock().lock();
+            try {
+                for (long trigram : trigrams) {
+                    postings.computeIfAbsent(trigram, t -> new Postings()).add(num);
+                }
+                size += trigrams.length;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+
+        /**
+         * Returns the articles that contain all the given trigrams
+         */
+        int[] intersect(Set<Long> trigrams) {
+            lock.readLock().lock();
+            try {
+                List<Postings> lists = new ArrayList<>();
+                for (long trigram : trigrams) {
+                    Postings list = postings.get(trigram);
+                    if (list == null) {
+                        return new int[0];
+                    }
+                    lists.add(list);
+                }
+
+                // Start with the shortest list, so that it only gets shorter
+                lists.sort(Comparator.comparingInt(list -> list.size));
+                int[] result = Arrays.copyOf(lists.get(0).nums, lists.get(0).size);
+                int count = result.length;
+                for (int i = 1; i < lists.size() && count > 0; i++) {
+                    count = lists.get(i).retainAll(result, count);
+                }
+
+                return Arrays.copyOf(result, count);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+
+        int terms() {
+            lock.readLock().lock();
+            try {
+                return postings.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+
+        long postings() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Sorted list of article numbers
+     */
+    private static class Postings {
+
+        /** The article numbers. Only the first size are used */
+        int[] nums = new int[2];
+
+        /** Number of article numbers */
+        int size;
+
+
+        /**
+         * Adds the given article number
+         *
+         * Articles are usually indexed in order, so this is an append, unless
+         * two articles were posted concurrently.
+         */
+        void add(int num) {
+            if (size == nums.length) {
+                nums = Arrays.copyOf(nums, size + (size >> 1) + 1);
+            }
+
+            int pos = size;
+            while (pos > 0 && nums[pos - 1] > num) {
+                pos--;
+            }
+            if (pos > 0 && nums[pos - 1] == num) {
+                return;
+            }
+
+            System.arraycopy(nums, pos, nums, pos + 1, size - pos);
+            nums[pos] = num;
+            size++;
+        }
+
+
+        /**
+         * Keeps only the first count numbers of the given sorted array that
+         * are also in this list, and returns how many were kept
+         */
+        int retainAll(int[] result, int count) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && nums[j] < result[i]) {
+                    j++;
+                }
+                if (j < size && nums[j] == result[i]) {
+                    result[kept++] = result[i];
+                }
+            }
+
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.Article;
+import io.github.pureza.happynews.newsgroup.ArticleCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Stores each article in its own file, named after the article id (without
+ * the angle brackets)
+ *
+ * This class is thread safe.
+ */
+public class FileArticleStore implements ArticleStore {
+
+    /**
+     * How long after a change the modification time of the articles home
+     * can't be trusted to tell it from the next change, in milliseconds
+     *
+     * File systems only update modification times every few milliseconds (or
+     * even seconds), so a change made right after another may go unnoticed.
+     */
+    static final long STAMP_GRANULARITY = 2000;
+
+    /** Where the articles are stored */
+    private final Path home;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    public FileArticleStore(Path home) {
+        this.home = home;
+    }
+
+
+    /**
+     * Returns the ids of the stored articles, creating the articles home if
+     * it doesn't exist
+     */
+    @Override
+    public Collection<String> ids() throws IOException {
+        if (!Files.exists(home)) {
+            logger.debug("Creating the articles home folder at {}...", home);
+            Files.createDirectory(home);
+        }
+
+        try (Stream<Path> files = Files.list(home)) {
+            return files.map(path -> "<" + path.getFileName().toString() + ">").collect(toList());
+        }
+    }
+
+
+    /**
+     * Returns the modification time of the articles home, which changes
+     * whenever an article file is created or deleted
+     */
+    @Override
+    public long stamp() throws IOException {
+        if (!Files.exists(home)) {
+            return -1;
+        }
+
+        long modified = Files.getLastModifiedTime(home).toMillis();
+        return System.currentTimeMillis() - modified < STAMP_GRANULARITY ? -1 : modified;
+    }
+
+
+    /**
+     * Returns the given article
+     *
+     * Neither the id nor the file are checked, as that would cost a system
+     * call per article at startup.
+     */
+    @Override
+    public Article article(String id, ArticleCache cache) {
+        return new Article(id, path(id), 0, -1, -1, -1, null, cache);
+    }
+
+
+    /**
+     * Reads the contents of the given article
+     */
+    byte[] read(String id) throws IOException {
+        return Files.readAllBytes(path(id));
+    }
+
+
+    @Override
+    public long size(String id) throws IOException {
+        Path path = path(id);
+        return Files.exists(path) ? Files.size(path) : -1;
+    }
+
+
+    @Override
+    public void create(String id, byte[] contents) throws IOException {
+        Path path = Files.createFile(path(id));
+        try {
+            Files.write(path, contents);
+        } catch (IOException ex) {
+            Files.deleteIfExists(path);
+            throw ex;
+        }
+    }
+
+
+    @Override
+    public void replace(String id, byte[] contents) throws IOException {
+        Files.write(path(id), contents);
+    }
+
+
+    @Override
+    public void delete(String id) throws IOException {
+        Files.deleteIfExists(path(id));
+    }
+
+
+    @Override
+    public void sync(Collection<String> ids) throws IOException {
+        for (String id : ids) {
+            Path path = path(id);
+            if (Files.exists(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public void close() {
+        // Nothing to close
+    }
+
+
+    /**
+     * Returns the path of the file of the given article
+     */
+    private Path path(String id) {
+        return home.resolve(id.substring(1, id.length() - 1));
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.pureza.happynews.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only journal of the changes to the newsgroups since they were last
+ * written to the groups file
+ *
+ * Each record is a line of tab separated fields. Records are written as soon
+ * as they are appended (but not synced to disk), so they survive a crash of
+ * the server.
+ *
+ * When the groups file is rewritten, the journal is rotated first: its
+ * records move to a second file (name.old), which is deleted once the groups
+ * file is safely in place. Until then, both files are read at startup.
+ *
+ * A crash in the middle of an append leaves an incomplete line at the end of
+ * the journal, which is truncated before anything else is appended.
+ *
+ * This class is thread safe.
+ */
+class GroupJournal implements Closeable {
+
+    /** The journal */
+    private final Path file;
+
+    /** The rotated journal, while the groups file is being rewritten */
+    private final Path rotated;
+
+    /** The open journal, or null if it wasn't opened yet. Guarded by channelLock */
+    private FileChannel channel;
+
+    /**
+     * Guards the channel
+     *
+     * Not a monitor, because it's held while opening the file, which would
+     * pin the carrier of a virtual thread.
+     */
+    private final Lock channelLock = new ReentrantLock();
+
+    /** Number of records appended since the journal was last rotated */
+    private final AtomicInteger records = new AtomicInteger();
+
+    /** Size of the buffer used to find the last line of a journal */
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    GroupJournal(Path file) {
+        this.file = file;
+        this.rotated = file.resolveSibling(file.getFileName() + ".old");
+    }
+
+
+    /**
+     * Appends a record with the given fields
+     */
+    void append(String... fields) throws IOException {
+        ByteBuffer line = StandardCharsets.UTF_8.encode(String.join("\t", fields) + "\n");
+
+        // A channel opened for appending writes each buffer at the end of the
+        // file, atomically with respect to other writes
+        FileChannel channel = channel();
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+
+        records.incrementAndGet();
+    }
+
+
+    /**
+     * Returns the number of records appended since the journal was last
+     * rotated
+     */
+    int records() {
+        return records.get();
+    }
+
+
+    /**
+     * Reads the records of the rotated journal, if there is one, followed by
+     * those of the current journal
+     *
+     * A partially written record (the last line, if it's incomplete) is
+     * ignored.
+     */
+    List<String[]> read() throws IOException {
+        List<String[]> records = new ArrayList<>();
+        for (Path path : new Path[] { rotated, file }) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+
+            String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            while ((end = text.indexOf('\n', start)) >= 0) {
+                if (end > start) {
+                    records.add(text.substring(start, end).split("\t"));
+                }
+                start = end + 1;
+            }
+        }
+
+        return records;
+    }
+
+
+    /**
+     * Moves the records to the rotated journal and starts a new one
+     *
+     * Callers must make sure that nothing is appended meanwhile. If a
+     * previous rotated journal is still around (because the groups file
+     * couldn't be written), the records are added to it.
+     */
+    void rotate() throws IOException {
+        channelLock.lock();
+        try {
+            // An open journal was truncated when it was opened
+            boolean truncated = channel != null;
+            close();
+
+            if (Files.exists(file)) {
+                if (!truncated) {
+                    truncate(file);
+                }
+
+                if (Files.exists(rotated)) {
+                    truncate(rotated);
+                    Files.write(rotated, Files.readAllBytes(file), APPEND);
+                    Files.delete(file);
+                } else {
+                    Files.move(file, rotated, ATOMIC_MOVE);
+                }
+            }
+
+            records.set(0);
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+
+    /**
+     * Deletes the rotated journal, once its records are safely stored
+     * elsewhere
+     */
+    void discardRotated() throws IOException {
+        Files.deleteIfExists(rotated);
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channelLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the journal channel, opening it if needed
+     */
+    private FileChannel channel() throws IOException {
+        channelLock.lock();
+        try {
+            if (channel == null) {
+                truncate(file);
+                channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+            }
+
+            return channel;
+        } finally {
+            channelLock.unlock();
+        }
+    }
+
+
+    /**
+     * Truncates the given journal after its last complete line, if needed
+     */
+    private void truncate(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+            // Search the last newline, from the end
+            long size = channel.size();
+            long end = size;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            search:
+            while (end > 0) {
+                long from = Math.max(0, end - BUFFER_SIZE);
+                buffer.clear().limit((int) (end - from));
+                while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0);
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        end = from + i + 1;
+                        break search;
+                    }
+                }
+                end = from;
+            }
+
+            if (end < size) {
+                logger.warn("Truncating {} from {} to {} bytes, after an incomplete record", path, size, end);
+                channel.truncate(end);
+            }
+        }
+    }
+}
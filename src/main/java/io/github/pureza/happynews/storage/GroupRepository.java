@@ -7,31 +7,62 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toMap;
 
 /**
  * Group repository
  *
- * Groups are saved in a tab separated file.
+ * Groups are saved in a tab separated file. Changes are appended to a journal
+ * as they happen, and only written to the groups file once the journal is
+ * large enough (see compactIfNeeded()).
+ *
+ * Whenever the groups file is written, so is a binary snapshot of the groups,
+ * with the posting times of their articles, which is read at startup instead
+ * of the groups file, for as long as the groups file isn't changed.
  *
  * This class is thread safe.
  */
-public class GroupRepository {
+public class GroupRepository implements Closeable {
 
     /**
      * Newsgroups, grouped by name
-     * This is a shared resource and should be synchronized.
+     *
+     * Concurrent, so that looking up a newsgroup (as every post does) or
+     * taking a snapshot (as LIST does) never blocks.
      */
-    private final Map<String, Newsgroup> groups = new HashMap<>();
+    private final Map<String, Newsgroup> groups = new ConcurrentHashMap<>();
+
+    /** Journal records that trigger a rewrite of the groups file */
+    static final int COMPACTION_THRESHOLD = 10000;
+
+    /** Identifies snapshots of the groups */
+    private static final int SNAPSHOT_MAGIC = 0x484e4731;
 
     /** Application configuration */
     private final Config config;
 
+    /** Journal of the changes not yet written to the groups file */
+    private final GroupJournal journal;
+
+    /**
+     * Makes the journal consistent with the newsgroups
+     *
+     * Changes take the read lock while they update a newsgroup and append the
+     * corresponding record, so they don't block each other. Creating a group
+     * and rotating the journal take the write lock.
+     */
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+
     /** Used to validate newsgroup names */
     private final NewsgroupValidator validator = new NewsgroupValidator();
 
@@ -44,8 +75,10 @@ public class GroupRepository {
      */
     public GroupRepository(Config config) {
         this.config = config;
+        this.journal = new GroupJournal(config.groupsJournal());
         this.groups.putAll(loadGroups().stream()
                 .collect(toMap(Newsgroup::getName, Function.identity())));
+        replayJournal();
     }
 
 
@@ -56,20 +89,20 @@ public class GroupRepository {
      */
     GroupRepository(Config config, List<Newsgroup> groups) {
         this.config = config;
+        this.journal = new GroupJournal(config.groupsJournal());
         this.groups.putAll(groups.stream()
                 .collect(toMap(Newsgroup::getName, Function.identity())));
     }
 
 
     /**
-     * Returns all groups in the system, grouped by name
+     * Returns a snapshot of all groups in the system, grouped by name
      *
-     * This is a shared resource and should be synchronized.
+     * The snapshot is not affected by groups created afterwards, so it may be
+     * traversed for as long as needed. Taking it doesn't block other threads.
      */
     public Map<String, Newsgroup> groups() {
-        synchronized (groups) {
-            return groups;
-        }
+        return Collections.unmodifiableMap(new HashMap<>(groups));
     }
 
 
@@ -84,29 +117,90 @@ public class GroupRepository {
             return false;
         }
 
-        synchronized (groups) {
-            if (groups.containsKey(name)) {
+        journalLock.writeLock().lock();
+        try {
+            Newsgroup group = new Newsgroup(name);
+            if (groups.putIfAbsent(name, group) != null) {
                 return false;
             }
 
-            groups.put(name, new Newsgroup(name));
+            journal.append("G", name, String.valueOf(group.getDateCreated().getTime()));
+            return true;
+        } catch (IOException ex) {
+            logger.error("Unable to journal the creation of {}", name, ex);
             return true;
+        } finally {
+            journalLock.writeLock().unlock();
         }
     }
 
 
+    /**
+     * Adds an article to the given newsgroup and returns its number
+     */
+    public int addArticle(Newsgroup group, String id) {
+        journalLock.readLock().lock();
+        try {
+            long postingTime = System.currentTimeMillis();
+            int num = group.addArticle(id, postingTime);
+            try {
+                // The number is recorded because concurrent posts may append
+                // their records in a different order
+                journal.append("A", group.getName(), String.valueOf(num), id, String.valueOf(postingTime));
+            } catch (IOException ex) {
+                logger.error("Unable to journal article {} of {}", id, group.getName(), ex);
+            }
+
+            return num;
+        } finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Adds the given articles to their newsgroups, unless they are there
+     * already, and returns how many were added
+     *
+     * Used at startup, with the postings of the article log, whose articles
+     * may not have reached their newsgroups before the server stopped.
+     */
+    public int recover(Map<String, List<String>> postings) {
+        Map<String, Set<String>> present = new HashMap<>();
+        int recovered = 0;
+        for (Map.Entry<String, List<String>> posting : postings.entrySet()) {
+            for (String name : posting.getValue()) {
+                Newsgroup group = groups.get(name);
+                if (group == null) {
+                    continue;
+                }
+
+                Set<String> articles = present.computeIfAbsent(name, n -> new HashSet<>(group.articles()));
+                if (articles.add(posting.getKey())) {
+                    addArticle(group, posting.getKey());
+                    recovered++;
+                }
+            }
+        }
+
+        if (recovered > 0) {
+            logger.info("{} logged articles added to their newsgroups", recovered);
+        }
+        return recovered;
+    }
+
+
     /**
      * Retrieves the newsgroup with the given name
      */
     public Newsgroup get(String name) {
-        synchronized (groups) {
-            return groups.get(name);
-        }
+        return groups.get(name);
     }
 
 
     /**
-     * Reads the list of users from a file
+     * Reads the list of groups from the snapshot, if it's up to date, or else
+     * from the groups file
      */
     List<Newsgroup> loadGroups() {
         List<Newsgroup> groups = new ArrayList<>();
@@ -116,6 +210,11 @@ public class GroupRepository {
             return groups;
         }
 
+        List<Newsgroup> snapshot = loadSnapshot();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
         try (BufferedReader in = Files.newBufferedReader(config.groupsFile())) {
             String line;
             while ((line = in.readLine()) != null) {
@@ -148,17 +247,241 @@ public class GroupRepository {
 
 
     /**
-     * Writes the list of groups to a file
+     * Reads the groups from the snapshot, or returns null if there is no
+     * snapshot of the current groups file
      */
-    public void writeGroups() {
-        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(config.groupsFile()))) {
-            synchronized (groups) {
-                groups.values().forEach(group -> {
-                    out.printf("%s\t%s\t%s\n", group.getName(), group.getDateCreated().getTime(), group.articles().stream().collect(Collectors.joining(",")));
-                });
+    private List<Newsgroup> loadSnapshot() {
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = Snapshots.open(config.groupsSnapshot(), SNAPSHOT_MAGIC)) {
+            if (in == null || in.readLong() != Snapshots.stamp(config.groupsFile())) {
+                return null;
             }
+
+            int count = in.readInt();
+            List<Newsgroup> groups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Date dateCreated = new Date(in.readLong());
+                int size = in.readInt();
+                boolean dated = in.readBoolean();
+                List<String> articles = new ArrayList<>(size);
+                long[] postingTimes = new long[size];
+                for (int j = 0; j < size; j++) {
+                    articles.add(in.readUTF());
+                    if (dated) {
+                        postingTimes[j] = in.readLong();
+                    }
+                }
+
+                groups.add(dated ? new Newsgroup(name, dateCreated, articles, postingTimes)
+                        : new Newsgroup(name, dateCreated, articles));
+            }
+
+            logger.info("{} groups read from the snapshot in {} ms", groups.size(), System.currentTimeMillis() - start);
+            return groups;
+        } catch (IOException ex) {
+            logger.error("Unable to read the group snapshot. Reading {} instead", config.groupsFile(), ex);
+            return null;
+        }
+    }
+
+
+    /**
+     * Writes a snapshot of the groups just written to the groups file
+     *
+     * Returns the size of the snapshot, in bytes.
+     */
+    private long writeSnapshot(Map<Newsgroup, List<String>> groups) throws IOException {
+        return Snapshots.write(config.groupsSnapshot(), SNAPSHOT_MAGIC, Snapshots.stamp(config.groupsFile()), out -> {
+            out.writeInt(groups.size());
+            for (Map.Entry<Newsgroup, List<String>> entry : groups.entrySet()) {
+                Newsgroup group = entry.getKey();
+                List<String> articles = entry.getValue();
+                long[] postingTimes = group.postingTimes(articles.size());
+                out.writeUTF(group.getName());
+                out.writeLong(group.getDateCreated().getTime());
+                out.writeInt(articles.size());
+                out.writeBoolean(postingTimes != null);
+                for (int i = 0; i < articles.size(); i++) {
+                    out.writeUTF(articles.get(i));
+                    if (postingTimes != null) {
+                        out.writeLong(postingTimes[i]);
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Rewrites the groups file if the journal grew large enough
+     *
+     * If nothing changed, nothing is written.
+     */
+    public void compactIfNeeded() {
+        if (journal.records() >= COMPACTION_THRESHOLD) {
+            writeGroups();
+        }
+    }
+
+
+    /**
+     * Writes the list of groups to a file, and empties the journal
+     *
+     * The file is written to a temporary file, synced and renamed over the
+     * groups file, so a crash leaves either the old or the new one. The
+     * journal records are only discarded afterwards. The snapshot is written
+     * last: if that fails, the groups file is read at the next startup.
+     *
+     * Returns true if the groups were written.
+     */
+    public boolean writeGroups() {
+        // Take a snapshot and rotate the journal at the same time, so that the
+        // records of the changes made afterwards stay in the journal. The file
+        // is written without holding the lock
+        long start = System.nanoTime();
+        Map<Newsgroup, List<String>> snapshot = new LinkedHashMap<>();
+        journalLock.writeLock().lock();
+        try {
+            groups.values().forEach(group -> snapshot.put(group, group.articles()));
+            journal.rotate();
+        } catch (IOException ex) {
+            logger.error("Unable to rotate the group journal", ex);
+            return false;
+        } finally {
+            journalLock.writeLock().unlock();
+        }
+
+        Path file = config.groupsFile();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long bytes;
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile())) {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)));
+            snapshot.forEach((group, articles) -> {
+                out.printf("%s\t%s\t%s\n", group.getName(), group.getDateCreated().getTime(), String.join(",", articles));
+            });
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("Unable to write " + temp);
+            }
+            stream.getFD().sync();
+            bytes = stream.getChannel().position();
+        } catch (IOException ex) {
+            logger.error("An error occurred while persisting the groups", ex);
+            return false;
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            journal.discardRotated();
         } catch (IOException ex) {
             logger.error("An error occurred while persisting the groups", ex);
+            return false;
+        }
+
+        try {
+            bytes += writeSnapshot(snapshot);
+        } catch (IOException ex) {
+            logger.error("Unable to write the group snapshot", ex);
+        }
+
+        StorageMetrics.get().groupsWritten(System.nanoTime() - start, bytes);
+        return true;
+    }
+
+
+    /**
+     * Applies the changes recorded in the journal to the groups read from the
+     * groups file
+     *
+     * Records that are already reflected in the groups file (because the
+     * server stopped while writing it) are skipped. Articles are numbered by
+     * their position, so a group is only replayed up to the first missing
+     * record: the articles after it are left to recover(), which adds the
+     * postings of the article log.
+     */
+    private void replayJournal() {
+        List<String[]> records;
+        try {
+            records = journal.read();
+        } catch (IOException ex) {
+            logger.error("Unable to read the group journal", ex);
+            return;
+        }
+
+        // Articles are added in order, by newsgroup
+        Map<String, SortedMap<Integer, Posting>> articles = new HashMap<>();
+        for (String[] record : records) {
+            try {
+                if (record[0].equals("G") && record.length == 3) {
+                    groups.putIfAbsent(record[1], new Newsgroup(record[1], new Date(Long.parseLong(record[2])), Collections.emptyList()));
+                } else if (record[0].equals("A") && (record.length == 4 || record.length == 5)) {
+                    // Records written by older versions don't have the posting time
+                    long postingTime = record.length == 5 ? Long.parseLong(record[4]) : System.currentTimeMillis();
+                    articles.computeIfAbsent(record[1], name -> new TreeMap<>())
+                            .put(Integer.parseInt(record[2]), new Posting(record[3], postingTime));
+                } else {
+                    logger.warn("Ignoring invalid group journal record {}", Arrays.toString(record));
+                }
+            } catch (NumberFormatException ex) {
+                logger.warn("Ignoring invalid group journal record {}", Arrays.toString(record));
+            }
+        }
+
+        int replayed = 0;
+        for (Map.Entry<String, SortedMap<Integer, Posting>> entry : articles.entrySet()) {
+            Newsgroup group = groups.get(entry.getKey());
+            if (group == null) {
+                logger.warn("Ignoring the journaled articles of unknown group {}", entry.getKey());
+                continue;
+            }
+
+            for (Map.Entry<Integer, Posting> article : entry.getValue().entrySet()) {
+                int last = group.getLastArticleNum();
+                if (article.getKey() <= last) {
+                    continue;
+                }
+                if (article.getKey() != last + 1) {
+                    logger.warn("Article {} of {} is missing from the group journal. Ignoring the articles after it",
+                            last + 1, group.getName());
+                    break;
+                }
+
+                group.addArticle(article.getValue().id, article.getValue().time);
+                replayed++;
+            }
+        }
+
+        if (!records.isEmpty()) {
+            logger.info("{} group journal records read, {} articles replayed", records.size(), replayed);
+        }
+    }
+
+
+    /**
+     * Closes the newsgroups journal
+     */
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+
+    /**
+     * An article journaled as added to a newsgroup
+     */
+    private static class Posting {
+
+        /** The article id */
+        final String id;
+
+        /** When it was posted, in milliseconds */
+        final long time;
+
+
+        Posting(String id, long time) {
+            this.id = id;
+            this.time = time;
         }
     }
 }
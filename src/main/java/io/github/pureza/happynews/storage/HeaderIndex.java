@@ -0,0 +1,206 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.ArticleHeader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+
+/**
+ * In-memory index of the most searched header fields, used by FINDHEADER
+ *
+ * Each indexed field has a column, with the value of the field of every
+ * article, and a sorted map from each value to the articles that have it.
+ *
+ * Queries of the form "^value$" and "^prefix" are answered from the sorted
+ * map. Other regular expressions are matched against the column, which is
+ * much faster than reading the headers from the article files.
+ *
+ * This class is thread safe.
+ */
+public class HeaderIndex {
+
+    /** The indexed fields (in lower case, like ArticleHeader keeps them) */
+    public static final Set<String> FIELDS = Collections.unmodifiableSet(
+            new HashSet<>(asList("from", "subject", "newsgroups", "message-id", "references")));
+
+    /** Characters that have a special meaning in a regular expression */
+    private static final String METACHARACTERS = ".^$|?*+()[]{}\\";
+
+    /** Columns of each field */
+    private final Map<String, Column> columns = new HashMap<>();
+
+
+    public HeaderIndex() {
+        for (String field : FIELDS) {
+            columns.put(field, new Column());
+        }
+    }
+
+
+    /**
+     * Checks whether the given field is indexed
+     */
+    public boolean isIndexed(String field) {
+        return columns.containsKey(field.toLowerCase());
+    }
+
+
+    /**
+     * Indexes the header of the given article
+     *
+     * Indexing an article again has no effect.
+     */
+    public void add(String id, ArticleHeader header) {
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            String value = header.get(entry.getKey());
+            if (value != null) {
+                entry.getValue().add(id, value);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of articles with the given field
+     */
+    public int size(String field) {
+        return columns.get(field.toLowerCase()).values.size();
+    }
+
+
+    /**
+     * Returns the articles among the given ones whose field matches the given
+     * regular expression, like Article.findInHeader() would
+     *
+     * @throws IllegalArgumentException if the field is not indexed
+     */
+    public List<String> find(String field, String regex, List<String> ids) {
+        Column column = columns.get(field.toLowerCase());
+        if (column == null) {
+            throw new IllegalArgumentException("Field " + field + " is not indexed");
+        }
+
+        List<String> matches = new ArrayList<>();
+
+        // With MULTILINE, ^ and $ also match around the line breaks of folded
+        // values, so the sorted map can only be used if there are none
+        Query query = Query.parse(regex);
+        if (query != null && !column.multiline) {
+            Collection<Queue<String>> hits;
+            if (query.exact) {
+                Queue<String> exact = column.ids.get(query.literal);
+                hits = exact == null ? Collections.emptyList() : Collections.singletonList(exact);
+            } else {
+                hits = column.ids.subMap(query.literal, query.literal + Character.MAX_VALUE).values();
+            }
+
+            Set<String> wanted = null;
+            for (Queue<String> queue : hits) {
+                if (wanted == null) {
+                    wanted = new HashSet<>(ids);
+                }
+                for (String id : queue) {
+                    if (wanted.contains(id)) {
+                        matches.add(id);
+                    }
+                }
+            }
+
+            return matches;
+        }
+
+        Matcher matcher = Pattern.compile(".*" + regex + ".*", Pattern.DOTALL | Pattern.MULTILINE).matcher("");
+        for (String id : ids) {
+            String value = column.values.get(id);
+            if (value != null && matcher.reset(value).find()) {
+                matches.add(id);
+            }
+        }
+
+        return matches;
+    }
+
+
+    /**
+     * The values of a field
+     */
+    private static class Column {
+
+        /** Field value, by article id */
+        final Map<String, String> values = new ConcurrentHashMap<>();
+
+        /** Article ids, by field value */
+        final ConcurrentSkipListMap<String, Queue<String>> ids = new ConcurrentSkipListMap<>();
+
+        /** Does any value span multiple lines? */
+        volatile boolean multiline;
+
+
+        void add(String id, String value) {
+            if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                multiline = true;
+            }
+
+            if (values.putIfAbsent(id, value) != null) {
+                return;
+            }
+            ids.computeIfAbsent(value, v -> new ConcurrentLinkedQueue<>()).add(id);
+        }
+    }
+
+
+    /**
+     * A query that can be answered by the sorted map: an anchored literal,
+     * optionally anchored at the end too
+     */
+    static class Query {
+
+        /** The value, or its prefix */
+        final String literal;
+
+        /** Is the whole value given? */
+        final boolean exact;
+
+
+        Query(String literal, boolean exact) {
+            this.literal = literal;
+            this.exact = exact;
+        }
+
+
+        /**
+         * Parses the given regular expression, returning null if it's not of
+         * the form "^literal" or "^literal$"
+         */
+        static Query parse(String regex) {
+            if (!regex.startsWith("^")) {
+                return null;
+            }
+
+            StringBuilder literal = new StringBuilder();
+            for (int i = 1; i < regex.length(); i++) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                        return null;
+                    }
+                    literal.append(regex.charAt(++i));
+                } else if (c == '$' && i == regex.length() - 1) {
+                    return new Query(literal.toString(), true);
+                } else if (METACHARACTERS.indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    literal.append(c);
+                }
+            }
+
+            return new Query(literal.toString(), false);
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.Overview;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only overview file of a single newsgroup
+ *
+ * Made of two files:
+ * - name.dat holds the overview records, in the order they were appended.
+ *   Each record is the article number followed by the overview (see
+ *   Overview.writeTo()).
+ * - name.idx is a fixed-width index with one 8 byte slot per article number.
+ *   Slot n - 1 holds the offset of article n's record within name.dat, plus
+ *   one. A zero slot means that there is no record for that article yet.
+ *
+ * Records are written to the data file before their slot, so a crash may
+ * leave unreferenced bytes at the end of the data file, but never a slot
+ * pointing to garbage. open() repairs truncated files.
+ *
+ * Both files are read through memory mappings. A file is mapped again only
+ * once it grew by REMAP_STEP bytes, so that posts don't leave a trail of stale
+ * mappings behind (they are only released when garbage collected); whatever
+ * was appended since is read through the channel. The data file is mapped in
+ * windows, so that it may grow past 2 GB, and each window overlaps the next
+ * one a little, so that records rarely straddle two windows (those that do
+ * are read through the channel too).
+ *
+ * This class is thread safe.
+ */
+class OverviewFile implements Closeable {
+
+    /** Size of each index slot */
+    static final int SLOT_SIZE = 8;
+
+    /** Size of the record header (the article number) */
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    /** Size of the record header and the fixed part of the overview */
+    private static final int RECORD_PREFIX_SIZE = RECORD_HEADER_SIZE + 12;
+
+    /** Bytes appended to a file before it's mapped again */
+    static final long REMAP_STEP = 1024 * 1024;
+
+    /** Size of the windows of the data file that are mapped */
+    static final long DATA_WINDOW = 1L << 30;
+
+    /** Maximum number of index slots mapped (the rest is read through the channel) */
+    private static final int MAX_MAPPED_SLOTS = Integer.MAX_VALUE / SLOT_SIZE;
+
+    /** The data file */
+    private final FileChannel data;
+
+    /** The index file */
+    private final FileChannel index;
+
+    /** Size of the data file. Guarded by appendLock, but readable at any time */
+    private volatile long dataSize;
+
+    /** Number of index slots. Guarded by appendLock, but readable at any time */
+    private volatile int slots;
+
+    /** Serializes appends */
+    private final Lock appendLock = new ReentrantLock();
+
+    /** Size of the windows of the data file that are mapped */
+    private final long window;
+
+    /** Current mappings of both files */
+    private volatile Mapping mapping;
+
+    /** Number of times the files were mapped. Guarded by appendLock */
+    private int remaps;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(OverviewFile.class);
+
+
+    private OverviewFile(FileChannel data, FileChannel index, long window) throws IOException {
+        this.data = data;
+        this.index = index;
+        this.window = window;
+        this.dataSize = data.size();
+        this.slots = (int) (index.size() / SLOT_SIZE);
+        this.mapping = new Mapping(0, null, 0, new MappedByteBuffer[0], window);
+    }
+
+
+    /**
+     * Opens the overview file of the given newsgroup, creating it if needed
+     *
+     * A partially written index slot is discarded, and so are slots that point
+     * past the end of the data file. If the index is missing entries, they are
+     * recovered from the data file.
+     */
+    static OverviewFile open(Path dir, String group) throws IOException {
+        return open(dir, group, DATA_WINDOW);
+    }
+
+
+    /**
+     * Opens the overview file of the given newsgroup, mapping its data file in
+     * windows of the given size
+     */
+    static OverviewFile open(Path dir, String group, long window) throws IOException {
+        FileChannel data = FileChannel.open(dir.resolve(group + ".dat"), CREATE, READ, WRITE);
+        FileChannel index;
+        try {
+            index = FileChannel.open(dir.resolve(group + ".idx"), CREATE, READ, WRITE);
+        } catch (IOException ex) {
+            data.close();
+            throw ex;
+        }
+
+        OverviewFile file = new OverviewFile(data, index, window);
+        try {
+            file.repair(group);
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+
+        return file;
+    }
+
+
+    /**
+     * Returns the overview of the given article, or null if there is none
+     */
+    Overview get(int num) throws IOException {
+        if (num <= 0 || num > slots) {
+            return null;
+        }
+
+        Mapping m = mapping();
+        long offset = slot(m, num) - 1;
+        if (offset < 0) {
+            return null;
+        }
+
+        ByteBuffer record = m.record(offset);
+        if (record == null) {
+            // Appended after the data file was mapped, or across two windows
+            record = readRecord(offset);
+        }
+
+        record.position(record.position() + RECORD_HEADER_SIZE);
+        return Overview.readFrom(record);
+    }
+
+
+    /**
+     * Appends the overview of the given article
+     *
+     * Articles may be appended in any order, but each one only once.
+     */
+    void append(int num, Overview overview) throws IOException {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Invalid article number: " + num);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + overview.getRecordSize());
+        record.putInt(num);
+        overview.writeTo(record);
+        record.flip();
+
+        appendLock.lock();
+        try {
+            long offset = dataSize;
+            writeFully(data, record, offset);
+            dataSize = offset + record.capacity();
+
+            writeSlot(num, offset + 1);
+            slots = Math.max(slots, num);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of index slots, which is the number of the last
+     * article with an overview
+     */
+    int size() {
+        return slots;
+    }
+
+
+    /**
+     * Checks whether there is an overview for the given article
+     */
+    boolean contains(int num) throws IOException {
+        if (num <= 0 || num > slots) {
+            return false;
+        }
+
+        return slot(mapping(), num) > 0;
+    }
+
+
+    /**
+     * Returns the number of times the files were mapped
+     */
+    int remaps() {
+        appendLock.lock();
+        try {
+            return remaps;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+
+    /**
+     * Returns the current mappings, mapping the files again if they grew
+     * enough
+     */
+    private Mapping mapping() throws IOException {
+        Mapping m = mapping;
+        if (!isStale(m)) {
+            return m;
+        }
+
+        appendLock.lock();
+        try {
+            m = mapping;
+            if (isStale(m)) {
+                m = remap(m);
+                mapping = m;
+                remaps++;
+            }
+
+            return m;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Checks whether either file grew enough to be mapped again
+     */
+    private boolean isStale(Mapping m) {
+        return grew(m.dataSize, dataSize) || grew((long) m.slots * SLOT_SIZE, (long) mappableSlots() * SLOT_SIZE);
+    }
+
+
+    /**
+     * Checks whether a file grew enough to be mapped again: as soon as it has
+     * something, the first time, and then every REMAP_STEP bytes
+     */
+    private static boolean grew(long mapped, long size) {
+        return mapped == 0 ? size > 0 : size - mapped >= REMAP_STEP;
+    }
+
+
+    /**
+     * Returns the number of slots that can be mapped
+     */
+    private int mappableSlots() {
+        return Math.min(slots, MAX_MAPPED_SLOTS);
+    }
+
+
+    /**
+     * Maps the files as they are now, keeping the mappings that still cover
+     * them. Must be called with appendLock held
+     */
+    private Mapping remap(Mapping m) throws IOException {
+        int count = mappableSlots();
+        MappedByteBuffer slotsMapping = m.index;
+        if (grew((long) m.slots * SLOT_SIZE, (long) count * SLOT_SIZE)) {
+            slotsMapping = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * SLOT_SIZE);
+        } else {
+            count = m.slots;
+        }
+
+        long size = m.dataSize;
+        MappedByteBuffer[] windows = m.windows;
+        if (grew(m.dataSize, dataSize)) {
+            // Only the windows that grew are mapped again: the last one, and
+            // those whose overlap with the next one grew
+            size = dataSize;
+            windows = Arrays.copyOf(m.windows, (int) ((size + window - 1) / window));
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * window;
+                long length = Math.min(size - start, window + overlap(window));
+                if (windows[i] == null || windows[i].capacity() < length) {
+                    windows[i] = data.map(FileChannel.MapMode.READ_ONLY, start, length);
+                }
+            }
+        }
+
+        return new Mapping(count, slotsMapping, size, windows, window);
+    }
+
+
+    /**
+     * Returns the slot of the given article, which must exist
+     */
+    private long slot(Mapping m, int num) throws IOException {
+        if (num <= m.slots) {
+            return m.index.getLong((num - 1) * SLOT_SIZE);
+        }
+
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        readFully(index, slot, (long) (num - 1) * SLOT_SIZE);
+        return slot.getLong(0);
+    }
+
+
+    /**
+     * Reads the record at the given offset of the data file through the
+     * channel, and returns a buffer positioned at it
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+        readFully(data, prefix, offset);
+        int length = prefix.getInt(RECORD_PREFIX_SIZE - 4);
+        if (prefix.hasRemaining() || length < 0) {
+            throw new IllegalArgumentException("Truncated overview");
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_SIZE + length);
+        readFully(data, record, offset);
+        record.flip();
+        return record;
+    }
+
+
+    /**
+     * Returns how much each window of the data file overlaps the next one
+     */
+    private static long overlap(long window) {
+        return window / 16;
+    }
+
+
+    /**
+     * Repairs the files after a crash
+     */
+    private void repair(String group) throws IOException {
+        // Discard a partially written slot
+        long indexSize = index.size();
+        if (indexSize % SLOT_SIZE != 0) {
+            logger.warn("Overview index of {} has a partial slot. Truncating", group);
+            index.truncate(indexSize - indexSize % SLOT_SIZE);
+            indexSize = index.size();
+        }
+
+        ByteBuffer slotsBuffer = ByteBuffer.allocate((int) indexSize);
+        readFully(index, slotsBuffer, 0);
+        LongBuffer offsets = LongBuffer.wrap(new long[(int) (indexSize / SLOT_SIZE)]);
+        slotsBuffer.flip();
+        offsets.put(slotsBuffer.asLongBuffer()).flip();
+
+        // Scan the data file, dropping whatever follows the last complete
+        // record, and make sure every record is in the index
+        int recovered = 0;
+        long offset = 0;
+        // Not closed, because that would close the data channel too
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(data.position(0)), 64 * 1024));
+        byte[] fields = new byte[256];
+        while (offset + RECORD_HEADER_SIZE + 12 <= dataSize) {
+            int num = in.readInt();
+            in.readInt();
+            in.readInt();
+            int length = in.readInt();
+            long end = offset + RECORD_HEADER_SIZE + 12 + length;
+            if (num <= 0 || length < 0 || end > dataSize) {
+                break;
+            }
+
+            if (length > fields.length) {
+                fields = new byte[length];
+            }
+            in.readFully(fields, 0, length);
+
+            if (num > offsets.limit() || offsets.get(num - 1) != offset + 1) {
+                writeSlot(num, offset + 1);
+                recovered++;
+            }
+
+            offset = end;
+        }
+
+        if (offset < dataSize) {
+            logger.warn("Overview data of {} has a partial record. Truncating", group);
+            data.truncate(offset);
+            dataSize = offset;
+        }
+
+        // Drop the slots that point to records we just discarded
+        for (int i = 0; i < offsets.limit(); i++) {
+            if (offsets.get(i) > dataSize) {
+                writeSlot(i + 1, 0);
+                recovered++;
+            }
+        }
+
+        if (recovered > 0) {
+            logger.warn("Repaired {} overview index slots of {}", recovered, group);
+        }
+
+        slots = (int) (index.size() / SLOT_SIZE);
+    }
+
+
+    /**
+     * Writes the slot of the given article
+     */
+    private void writeSlot(int num, long value) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.putLong(0, value);
+        writeFully(index, slot, (long) (num - 1) * SLOT_SIZE);
+    }
+
+
+    /**
+     * Writes the whole buffer at the given position
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+
+    /**
+     * Reads until the buffer is full or the end of the file
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+    }
+
+
+    /**
+     * Memory mappings of the files, at some point in time
+     */
+    private static class Mapping {
+
+        /** Number of slots mapped */
+        final int slots;
+
+        /** The index file mapping, or null if no slots are mapped */
+        final MappedByteBuffer index;
+
+        /** Number of data bytes mapped */
+        final long dataSize;
+
+        /** Mappings of the windows of the data file */
+        final MappedByteBuffer[] windows;
+
+        /** Size of the windows */
+        final long window;
+
+
+        Mapping(int slots, MappedByteBuffer index, long dataSize, MappedByteBuffer[] windows, long window) {
+            this.slots = slots;
+            this.index = index;
+            this.dataSize = dataSize;
+            this.windows = windows;
+            this.window = window;
+        }
+
+
+        /**
+         * Returns a buffer positioned at the record at the given offset of the
+         * data file, or null if it isn't entirely mapped in a single window
+         */
+        ByteBuffer record(long offset) {
+            if (offset >= dataSize) {
+                return null;
+            }
+
+            int i = (int) (offset / window);
+            ByteBuffer record = windows[i].duplicate();
+            record.position((int) (offset - i * window));
+            if (record.remaining() < RECORD_PREFIX_SIZE
+                    || record.remaining() < RECORD_PREFIX_SIZE + record.getInt(record.position() + RECORD_PREFIX_SIZE - 4)) {
+                return null;
+            }
+
+            return record;
+        }
+    }
+}
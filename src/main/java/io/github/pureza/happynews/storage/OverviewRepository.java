@@ -0,0 +1,151 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.config.Config;
+import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.newsgroup.Overview;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Repository for the overview files of the newsgroups
+ *
+ * Each newsgroup has its own append-only overview file inside overview/ (see
+ * OverviewFile), so that XOVER can be served without reading the articles,
+ * and the overviews don't need to be rebuilt at startup.
+ *
+ * This class is thread safe.
+ */
+public class OverviewRepository implements Closeable {
+
+    /** Application configuration */
+    private final Config config;
+
+    /** Open overview files, by newsgroup name */
+    private final Map<String, OverviewFile> files = new ConcurrentHashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    public OverviewRepository(Config config) {
+        this.config = config;
+
+        if (!Files.exists(config.overviewHome())) {
+            logger.debug("Creating the overview folder at {}...", config.overviewHome());
+
+            try {
+                Files.createDirectories(config.overviewHome());
+            } catch (IOException ex) {
+                logger.error("Unable to create the overview folder", ex);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the overview of the given article, or null if there is none
+     */
+    public Overview get(Newsgroup group, int num) {
+        try {
+            return file(group).get(num);
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Unable to read the overview of article {} of {}", num, group.getName(), ex);
+            return null;
+        }
+    }
+
+
+    /**
+     * Adds the overview of the given article
+     *
+     * Returns true if the overview was added and false otherwise.
+     */
+    public boolean add(Newsgroup group, int num, Overview overview) {
+        try {
+            file(group).append(num, overview);
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Unable to write the overview of article {} of {}", num, group.getName(), ex);
+            return false;
+        }
+    }
+
+
+    /**
+     * Makes sure the overview files have an entry for every article of the
+     * given newsgroups
+     *
+     * Missing entries (for instance, if an overview file was deleted) are
+     * rebuilt with the given function, which returns the overview of the
+     * article with the given id.
+     */
+    public void recover(Collection<Newsgroup> groups, Function<String, Overview> overviews) {
+        long start = System.currentTimeMillis();
+        int recovered = 0;
+        for (Newsgroup group : groups) {
+            int last = group.getLastArticleNum();
+            for (int num = group.getFirstArticleNum(); num <= last; num++) {
+                try {
+                    if (!file(group).contains(num)) {
+                        Overview overview = overviews.apply(group.getArticleId(num));
+                        if (overview != null && add(group, num, overview)) {
+                            recovered++;
+                        }
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    logger.error("Unable to recover the overview of article {} of {}", num, group.getName(), ex);
+                }
+            }
+        }
+
+        if (recovered > 0) {
+            logger.warn("{} overview entries rebuilt from the articles", recovered);
+        }
+        logger.info("Overview files of {} groups checked in {} ms", groups.size(), System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Closes the overview files, which are opened again when next needed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (String name : files.keySet()) {
+            OverviewFile file = files.remove(name);
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Returns the overview file of the given newsgroup, opening it if needed
+     */
+    private OverviewFile file(Newsgroup group) {
+        return files.computeIfAbsent(group.getName(), name -> {
+            try {
+                return OverviewFile.open(config.overviewHome(), name);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.pureza.happynews.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Applies an action to many items (usually articles) in parallel, with a
+ * fork/join pool, and logs the progress
+ *
+ * Each action is expected to open (at most) one file, so the number of
+ * actions running at once is bounded separately from the number of threads:
+ * threads are for the processors, while open files are for the disks (and
+ * the file descriptor limit).
+ *
+ * Used to rebuild the repositories and their indexes at startup.
+ */
+public class ParallelScan implements Closeable {
+
+    /** Items handled by a single task, which isn't split any further */
+    static final int BATCH_SIZE = 64;
+
+    /** Time between progress reports, in milliseconds */
+    static final long PROGRESS_INTERVAL = 5000;
+
+    /** What's being done, for the logs */
+    private final String name;
+
+    /** Number of items expected, over all the calls to forEach() */
+    private final long total;
+
+    /** The pool running the tasks */
+    private final ForkJoinPool pool;
+
+    /** Bounds the number of actions running at once */
+    private final Semaphore openFiles;
+
+    /** Number of items done */
+    private final AtomicLong done = new AtomicLong();
+
+    /** When the scan started */
+    private final long start = System.currentTimeMillis();
+
+    /** When the progress was last reported */
+    private final AtomicLong lastReport = new AtomicLong(start);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    /**
+     * Starts a scan of the given number of items, with the given number of
+     * threads, running at most openFiles actions at once
+     */
+    public ParallelScan(String name, long total, int threads, int openFiles) {
+        this.name = name;
+        this.total = total;
+        this.pool = new ForkJoinPool(threads);
+        this.openFiles = new Semaphore(openFiles);
+    }
+
+
+    /**
+     * Applies the action to each item, in parallel, and returns once all are
+     * done
+     *
+     * The action must deal with its own errors: an exception stops the scan.
+     */
+    public <T> void forEach(List<T> items, Consumer<T> action) {
+        pool.invoke(new Task<>(items, 0, items.size(), action));
+    }
+
+
+    /**
+     * Returns the number of items done so far
+     */
+    public long done() {
+        return done.get();
+    }
+
+
+    /**
+     * Stops the threads and logs how long the scan took
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        logger.info("{}: {} done in {} ms", name, done.get(), System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Logs the progress, if it wasn't logged recently
+     */
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (now - last >= PROGRESS_INTERVAL && lastReport.compareAndSet(last, now)) {
+            long done = this.done.get();
+            logger.info("{}: {} of {} done ({}%)", name, done, total, total > 0 ? done * 100 / total : 100);
+        }
+    }
+
+
+    /**
+     * Applies the action to a range of the items, splitting it in two until
+     * it's small enough
+     */
+    private class Task<T> extends RecursiveAction {
+
+        /** The items */
+        private final List<T> items;
+
+        /** First item of the range (inclusive) */
+        private final int from;
+
+        /** Last item of the range (exclusive) */
+        private final int to;
+
+        /** The action */
+        private final Consumer<T> action;
+
+
+        Task(List<T> items, int from, int to, Consumer<T> action) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task<>(items, from, middle, action), new Task<>(items, middle, to, action));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                openFiles.acquireUninterruptibly();
+                try {
+                    action.accept(items.get(i));
+                } finally {
+                    openFiles.release();
+                }
+                done.incrementAndGet();
+            }
+
+            reportProgress();
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.newsgroup.Article;
+import io.github.pureza.happynews.newsgroup.ArticleCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Stores the articles one after the other in large segment files
+ *
+ * Each record holds its length, its type (an article, or the removal of one),
+ * the posting time, the article id, where the body of the article starts and
+ * the contents of the article. Segments are only appended to, and a new one
+ * is started once the current one is full. Replacing or removing an article
+ * appends a new record: the last record of each article wins.
+ *
+ * Where each article is (its offset index) is kept in memory. It's rebuilt at
+ * startup by reading the records, skipping their contents, which takes a few
+ * sequential reads of large files, instead of listing a directory with a
+ * file per article and reading each of them. An incomplete record at the end
+ * of a segment (left by a crash) is truncated.
+ *
+ * Articles are read from memory-mapped segments. The segment being appended
+ * to is mapped again whenever it grew enough, and its newest articles are
+ * read from the file meanwhile. Only a limited number of segments is mapped
+ * at once.
+ *
+ * This class is thread safe.
+ */
+public class SegmentArticleStore implements ArticleStore {
+
+    /** Maximum size of a segment, in bytes */
+    static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+
+    /** Maximum number of segments mapped at once */
+    static final int MAX_MAPPED_SEGMENTS = 256;
+
+    /** Bytes appended to a mapped segment before it's mapped again */
+    static final long REMAP_STEP = 16L * 1024 * 1024;
+
+    /** Type of the records that hold an article, without the body offset */
+    private static final byte ARTICLE = 0;
+
+    /** Type of the records that remove an article */
+    private static final byte REMOVAL = 1;
+
+    /** Type of the records that hold an article and the offset of its body */
+    private static final byte ARTICLE_WITH_BODY = 2;
+
+    /** Size of the record length, type, posting time and id length */
+    private static final int RECORD_HEADER = 4 + 1 + 8 + 2;
+
+    /** Where the segments are stored */
+    private final Path home;
+
+    /** Maximum size of a segment, in bytes */
+    private final long segmentSize;
+
+    /** Maximum number of segments mapped at once */
+    private final int maxMappedSegments;
+
+    /** Location of each article, by id */
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+    /** Number of the segment being appended to. Guarded by appendLock */
+    private int segmentNumber;
+
+    /** The segment being appended to, or null if there is none. Guarded by appendLock */
+    private Segment segment;
+
+    /** The channel of the segment being appended to, or null if not open yet. Guarded by appendLock */
+    private FileChannel channel;
+
+    /** Size of the segment being appended to. Guarded by appendLock */
+    private long segmentEnd;
+
+    /** Serializes appends */
+    private final Lock appendLock = new ReentrantLock();
+
+    /** The mapped segments, in the order they were mapped. Guarded by mapLock */
+    private final Queue<Segment> mapped = new ArrayDeque<>();
+
+    /** Serializes mappings */
+    private final Lock mapLock = new ReentrantLock();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+
+    /**
+     * Opens the store in the given folder, creating it if needed, and reads
+     * its segments
+     */
+    public SegmentArticleStore(Path home) throws IOException {
+        this(home, SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+    }
+
+
+    /**
+     * Opens a store whose segments have the given maximum size, and maps at
+     * most the given number of them
+     *
+     * Used for testing purposes.
+     */
+    SegmentArticleStore(Path home, long segmentSize, int maxMappedSegments) throws IOException {
+        this.home = home;
+        this.segmentSize = segmentSize;
+        this.maxMappedSegments = maxMappedSegments;
+        Files.createDirectories(home);
+        readSegments();
+    }
+
+
+    @Override
+    public Collection<String> ids() {
+        return new ArrayList<>(index.keySet());
+    }
+
+
+    /**
+     * Returns the position where the next record will be appended, which
+     * moves forward with every article added or removed
+     */
+    @Override
+    public long stamp() {
+        appendLock.lock();
+        try {
+            return ((long) segmentNumber << 40) + segmentEnd;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    @Override
+    public Article article(String id, ArticleCache cache) {
+        Location location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+
+        return new Article(id, location.segment.path, location.offset, location.length, location.bodyOffset,
+                location.datePosted, location.segment, cache);
+    }
+
+
+    @Override
+    public long size(String id) {
+        Location location = index.get(id);
+        return location != null ? location.length : -1;
+    }
+
+
+    @Override
+    public void create(String id, byte[] contents) throws IOException {
+        create(id, contents, System.currentTimeMillis());
+    }
+
+
+    /**
+     * Stores a new article, posted at the given time
+     *
+     * @throws FileAlreadyExistsException if there is already an article with
+     *         the given id
+     */
+    void create(String id, byte[] contents, long datePosted) throws IOException {
+        appendLock.lock();
+        try {
+            if (index.containsKey(id)) {
+                throw new FileAlreadyExistsException(id);
+            }
+
+            append(ARTICLE_WITH_BODY, id, contents, datePosted);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void replace(String id, byte[] contents) throws IOException {
+        appendLock.lock();
+        try {
+            append(ARTICLE_WITH_BODY, id, contents, System.currentTimeMillis());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    @Override
+    public void delete(String id) throws IOException {
+        appendLock.lock();
+        try {
+            if (index.containsKey(id)) {
+                append(REMOVAL, id, new byte[0], System.currentTimeMillis());
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+
+    /**
+     * Syncs the segment being appended to
+     *
+     * Full segments are synced when the next one is started, so that's all
+     * that may be missing.
+     */
+    @Override
+    public void sync(Collection<String> ids) throws IOException {
+        FileChannel channel;
+        appendLock.lock();
+        try {
+            channel = this.channel;
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException ex) {
+                // The segment was full, and synced when it was closed
+            }
+        }
+    }
+
+
+    /**
+     * Closes the segment being appended to and forgets the mappings
+     */
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        mapLock.lock();
+        try {
+            for (Segment segment : mapped) {
+                segment.mapping = null;
+            }
+            mapped.clear();
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of segments mapped
+     */
+    int mappedSegments() {
+        mapLock.lock();
+        try {
+            return mapped.size();
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+
+    /**
+     * Appends a record to the current segment, and updates the index. Must be
+     * called with appendLock held
+     */
+    private void append(byte type, String id, byte[] contents, long datePosted) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int prefix = RECORD_HEADER + idBytes.length + (type == ARTICLE_WITH_BODY ? 4 : 0);
+        int length = prefix + contents.length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length).put(type).putLong(datePosted).putShort((short) idBytes.length).put(idBytes);
+
+        // The offset of the body is recorded, so that it doesn't have to be
+        // found whenever the article is read
+        int bodyOffset = -1;
+        if (type == ARTICLE_WITH_BODY) {
+            bodyOffset = Article.bodyOffset(ByteBuffer.wrap(contents));
+            record.putInt(bodyOffset);
+        }
+        record.put(contents);
+        record.flip();
+
+        if (channel == null) {
+            openSegment();
+        }
+        if (segmentEnd > 0 && segmentEnd + length > segmentSize) {
+            nextSegment();
+        }
+
+        long position = segmentEnd;
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        segmentEnd += length;
+
+        // The article is only published once it was written
+        if (type == REMOVAL) {
+            index.remove(id);
+        } else {
+            index.put(id, new Location(segment, position + prefix, contents.length, bodyOffset, datePosted));
+        }
+    }
+
+
+    /**
+     * Opens the segment to append to, which is the last one, or the first one
+     * if there are none. Must be called with appendLock held
+     */
+    private void openSegment() throws IOException {
+        if (segment == null) {
+            segmentNumber = Math.max(segmentNumber, 1);
+            segment = new Segment(home.resolve(String.format("%08d.seg", segmentNumber)));
+        }
+
+        channel = FileChannel.open(segment.path, CREATE, WRITE);
+    }
+
+
+    /**
+     * Syncs and closes the current segment, which is full, and starts a new
+     * one. Must be called with appendLock held
+     */
+    private void nextSegment() throws IOException {
+        channel.force(false);
+        channel.close();
+
+        segmentNumber++;
+        segment = null;
+        segmentEnd = 0;
+        openSegment();
+    }
+
+
+    /**
+     * Returns a mapping of the given segment that includes the given
+     * position, or null if it shouldn't be mapped yet
+     */
+    private MappedByteBuffer map(Segment segment, long required) throws IOException {
+        mapLock.lock();
+        try {
+            MappedByteBuffer mapping = segment.mapping;
+            if (mapping != null && required <= mapping.capacity()) {
+                // Mapped by another thread meanwhile
+                return mapping;
+            }
+
+            try (FileChannel file = FileChannel.open(segment.path, READ)) {
+                long size = file.size();
+                if (size < required || size > Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                // A segment that is still growing is only mapped again once
+                // it grew enough, so that it's not mapped after every post
+                if (mapping != null && size - mapping.capacity() < REMAP_STEP) {
+                    return null;
+                }
+
+                mapping = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            if (segment.mapping == null) {
+                mapped.add(segment);
+            }
+            segment.mapping = mapping;
+
+            // The oldest mappings are forgotten. They are released once they
+            // are garbage collected: unmapping them explicitly would crash
+            // any reader still using them
+            while (mapped.size() > maxMappedSegments) {
+                mapped.remove().mapping = null;
+            }
+
+            return mapping;
+        } finally {
+            mapLock.unlock();
+        }
+    }
+
+
+    /**
+     * Reads the records of every segment, to build the index
+     */
+    private void readSegments() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(home)) {
+            segments = files.filter(path -> path.getFileName().toString().matches("\\d+\\.seg")).sorted().collect(toList());
+        }
+
+        for (Path path : segments) {
+            Segment segment = new Segment(path);
+            long size = Files.size(path);
+            long end = readSegment(segment, size);
+            if (end < size) {
+                logger.warn("Truncating segment {} from {} to {} bytes, after an incomplete record", path, size, end);
+                try (FileChannel channel = FileChannel.open(path, WRITE)) {
+                    channel.truncate(end);
+                }
+            }
+
+            this.segmentNumber = Integer.parseInt(path.getFileName().toString().replace(".seg", ""));
+            this.segment = segment;
+            this.segmentEnd = end;
+        }
+
+        logger.info("{} articles found in {} segments in {} ms", index.size(), segments.size(), System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Reads the records of the given segment, and returns where the last
+     * complete one ends
+     */
+    private long readSegment(Segment segment, long size) throws IOException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), 64 * 1024))) {
+            while (position + RECORD_HEADER <= size) {
+                int length = in.readInt();
+                byte type = in.readByte();
+                long datePosted = in.readLong();
+                int idLength = in.readUnsignedShort();
+                int prefix = RECORD_HEADER + idLength + (type == ARTICLE_WITH_BODY ? 4 : 0);
+                if ((type != ARTICLE && type != REMOVAL && type != ARTICLE_WITH_BODY) || idLength == 0
+                        || length < prefix || position + length > size) {
+                    break;
+                }
+
+                byte[] id = new byte[idLength];
+                in.readFully(id);
+                int bodyOffset = type == ARTICLE_WITH_BODY ? in.readInt() : -1;
+                int contentsLength = length - prefix;
+                if (type == REMOVAL) {
+                    index.remove(new String(id, StandardCharsets.UTF_8));
+                } else {
+                    index.put(new String(id, StandardCharsets.UTF_8),
+                            new Location(segment, position + prefix, contentsLength, bodyOffset, datePosted));
+                }
+
+                skip(in, contentsLength);
+                position += length;
+            }
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Skips the given number of bytes of the stream
+     */
+    private static void skip(DataInputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            n -= skipped;
+        }
+    }
+
+
+    /**
+     * A segment file, mapped when its articles are read
+     */
+    private class Segment implements Article.Mapping {
+
+        /** The segment file */
+        final Path path;
+
+        /** The mapping of the segment, or null if it's not mapped. Written under mapLock */
+        volatile MappedByteBuffer mapping;
+
+
+        Segment(Path path) {
+            this.path = path;
+        }
+
+
+        @Override
+        public ByteBuffer slice(long offset, int length) throws IOException {
+            MappedByteBuffer mapping = this.mapping;
+            if (mapping == null || offset + length > mapping.capacity()) {
+                mapping = map(this, offset + length);
+                if (mapping == null) {
+                    return null;
+                }
+            }
+
+            ByteBuffer slice = mapping.duplicate();
+            slice.limit((int) (offset + length));
+            slice.position((int) offset);
+            return slice.slice();
+        }
+    }
+
+
+    /**
+     * Where an article is stored
+     */
+    private static class Location {
+
+        /** The segment */
+        final Segment segment;
+
+        /** Offset of the article within the segment */
+        final long offset;
+
+        /** Size of the article, in bytes */
+        final int length;
+
+        /** Offset of the body within the article, or -1 if not known */
+        final int bodyOffset;
+
+        /** When the article was posted, in milliseconds */
+        final long datePosted;
+
+
+        Location(Segment segment, long offset, int length, int bodyOffset, long datePosted) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.bodyOffset = bodyOffset;
+            this.datePosted = datePosted;
+        }
+    }
+}
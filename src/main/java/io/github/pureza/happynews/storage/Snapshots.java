@@ -0,0 +1,100 @@
+package io.github.pureza.happynews.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary snapshots of the repositories, read at startup instead of the slower
+ * sources they were taken from
+ *
+ * A snapshot starts with a magic number, telling what it holds, and a stamp
+ * describing the source when the snapshot was taken, so that readers can tell
+ * whether the snapshot is still up to date. Snapshots are written to a
+ * temporary file, synced and renamed, so they are never seen half written.
+ */
+final class Snapshots {
+
+    /** Size of the buffers used to read and write snapshots */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    private Snapshots() {
+    }
+
+
+    /**
+     * Writes a snapshot
+     *
+     * Returns the size of the snapshot, in bytes.
+     */
+    static long write(Path file, int magic, long stamp, Contents contents) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        long size;
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp.toFile())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+                out.writeInt(magic);
+                out.writeLong(stamp);
+                contents.writeTo(out);
+                out.flush();
+                stream.getFD().sync();
+                size = stream.getChannel().position();
+            }
+
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+    /**
+     * Opens a snapshot, positioned at its stamp, or returns null if there is
+     * no snapshot with the given magic number
+     */
+    static DataInputStream open(Path file, int magic) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        try {
+            if (in.readInt() == magic) {
+                return in;
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+
+        in.close();
+        return null;
+    }
+
+
+    /**
+     * Returns a stamp for the given file, which changes whenever the file is
+     * rewritten (unless it keeps its size and is rewritten within the same
+     * millisecond)
+     */
+    static long stamp(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis() * 31 + Files.size(file);
+    }
+
+
+    /**
+     * Writes the contents of a snapshot
+     */
+    interface Contents {
+
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+}
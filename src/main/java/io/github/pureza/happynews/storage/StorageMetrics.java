@@ -0,0 +1,497 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timers of the disk work done by the articles and the
+ * repositories: reading article headers and bodies (or finding them in the
+ * cache), sending bodies from the files, reading posting dates from the files,
+ * storing posts and writing the groups
+ *
+ * There is a single instance, shared by everything in the JVM, because
+ * articles don't know their repository. It's published through JMX, as
+ * io.github.pureza.happynews:type=Storage, and the server logs a summary of
+ * what changed at regular intervals (see logSummary()).
+ *
+ * Recording doesn't allocate.
+ */
+public class StorageMetrics implements StorageMetricsMXBean {
+
+    /** JMX name */
+    static final String JMX_NAME = "io.github.pureza.happynews:type=Storage";
+
+    /** The instance */
+    private static final StorageMetrics instance = new StorageMetrics();
+
+    private final Timing headerReads = new Timing();
+    private final Counter headerCacheHits = new Counter();
+    private final Timing bodyReads = new Timing();
+    private final Counter bodyCacheHits = new Counter();
+    private final Timing bodyTransfers = new Timing();
+    private final Counter filesOpened = new Counter();
+    private final Counter bytesRead = new Counter();
+    private final Counter bytesTransferred = new Counter();
+    private final Counter datePostedCalls = new Counter();
+    private final Timing datePostedStats = new Timing();
+    private final Timing articleWrites = new Timing();
+    private final Counter articleBytesWritten = new Counter();
+    private final Timing homeFileCreates = new Timing();
+    private final Timing logSyncs = new Timing();
+    private final Timing groupWrites = new Timing();
+    private final Counter groupBytesWritten = new Counter();
+
+    /** When the last summary was made, as in System.nanoTime() */
+    private long lastSummary = System.nanoTime();
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(StorageMetrics.class);
+
+
+    StorageMetrics() {
+    }
+
+
+    /**
+     * Returns the instance
+     */
+    public static StorageMetrics get() {
+        return instance;
+    }
+
+
+    /**
+     * Publishes the metrics through JMX, if they aren't already
+     */
+    public synchronized void register() {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(JMX_NAME);
+            if (!mbeans.isRegistered(name)) {
+                mbeans.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            logger.warn("Unable to register the storage metrics", ex);
+        }
+    }
+
+
+    /**
+     * Withdraws the metrics from JMX, if they are published
+     */
+    public synchronized void unregister() {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(JMX_NAME);
+            if (mbeans.isRegistered(name)) {
+                mbeans.unregisterMBean(name);
+            }
+        } catch (JMException ex) {
+            logger.warn("Unable to unregister the storage metrics", ex);
+        }
+    }
+
+
+    /**
+     * Counts a header read from the cache
+     */
+    public void headerCacheHit() {
+        headerCacheHits.add(1);
+    }
+
+
+    /**
+     * Counts a header read from the file, which took the given time
+     */
+    public void headerRead(long nanos) {
+        headerReads.record(nanos);
+    }
+
+
+    /**
+     * Counts a body read from the cache
+     */
+    public void bodyCacheHit() {
+        bodyCacheHits.add(1);
+    }
+
+
+    /**
+     * Counts a body read from the file, which took the given time
+     */
+    public void bodyRead(long nanos) {
+        bodyReads.record(nanos);
+    }
+
+
+    /**
+     * Counts a body sent straight from the file, which took the given time
+     */
+    public void bodyTransferred(long nanos, long bytes) {
+        bodyTransfers.record(nanos);
+        bytesTransferred.add(bytes);
+    }
+
+
+    /**
+     * Counts an article file opened
+     */
+    public void fileOpened() {
+        filesOpened.add(1);
+    }
+
+
+    /**
+     * Counts bytes of an article read into the heap
+     */
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+
+    /**
+     * Returns a stream that counts the bytes read from the given article file
+     */
+    public InputStream counting(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.add(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesRead.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+
+    /**
+     * Counts a call to Article.getDatePosted() that knew the date
+     */
+    public void datePostedKnown() {
+        datePostedCalls.add(1);
+    }
+
+
+    /**
+     * Counts a call to Article.getDatePosted() that read the date of the
+     * file, which took the given time
+     */
+    public void datePostedStat(long nanos) {
+        datePostedCalls.add(1);
+        datePostedStats.record(nanos);
+    }
+
+
+    /**
+     * Counts an article stored, which took the given time
+     */
+    public void articleWritten(long nanos, long bytes) {
+        articleWrites.record(nanos);
+        articleBytesWritten.add(bytes);
+    }
+
+
+    /**
+     * Counts a file created in an editor's home, which took the given time
+     */
+    public void homeFileCreated(long nanos) {
+        homeFileCreates.record(nanos);
+    }
+
+
+    /**
+     * Counts an article appended to the log and synced, which took the given
+     * time
+     */
+    public void logSynced(long nanos) {
+        logSyncs.record(nanos);
+    }
+
+
+    /**
+     * Counts the groups written, which took the given time
+     */
+    public void groupsWritten(long nanos, long bytes) {
+        groupWrites.record(nanos);
+        groupBytesWritten.add(bytes);
+    }
+
+
+    @Override
+    public Timing getHeaderReads() {
+        return headerReads;
+    }
+
+
+    @Override
+    public long getHeaderCacheHits() {
+        return headerCacheHits.get();
+    }
+
+
+    @Override
+    public Timing getBodyReads() {
+        return bodyReads;
+    }
+
+
+    @Override
+    public long getBodyCacheHits() {
+        return bodyCacheHits.get();
+    }
+
+
+    @Override
+    public Timing getBodyTransfers() {
+        return bodyTransfers;
+    }
+
+
+    @Override
+    public long getFilesOpened() {
+        return filesOpened.get();
+    }
+
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+
+    @Override
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
+    }
+
+
+    @Override
+    public long getDatePostedCalls() {
+        return datePostedCalls.get();
+    }
+
+
+    @Override
+    public Timing getDatePostedStats() {
+        return datePostedStats;
+    }
+
+
+    @Override
+    public Timing getArticleWrites() {
+        return articleWrites;
+    }
+
+
+    @Override
+    public long getArticleBytesWritten() {
+        return articleBytesWritten.get();
+    }
+
+
+    @Override
+    public Timing getHomeFileCreates() {
+        return homeFileCreates;
+    }
+
+
+    @Override
+    public Timing getLogSyncs() {
+        return logSyncs;
+    }
+
+
+    @Override
+    public Timing getGroupWrites() {
+        return groupWrites;
+    }
+
+
+    @Override
+    public long getGroupBytesWritten() {
+        return groupBytesWritten.get();
+    }
+
+
+    /**
+     * Logs what changed since the last summary, unless nothing did
+     */
+    public void logSummary() {
+        String summary = summary();
+        if (summary != null) {
+            logger.info(summary);
+        }
+    }
+
+
+    /**
+     * Returns what changed since the last summary, or null if nothing did
+     */
+    synchronized String summary() {
+        long now = System.nanoTime();
+        long seconds = Math.max(1, (now - lastSummary) / 1000000000L);
+        lastSummary = now;
+
+        // Mark everything, even if nothing is logged, so that the next
+        // summary starts here
+        String headers = headerReads.mark() + " read + " + headerCacheHits.mark() + " cached";
+        String bodies = bodyReads.mark() + " read + " + bodyCacheHits.mark() + " cached, "
+                + bodyTransfers.mark() + " sent from the files";
+        long opened = filesOpened.mark();
+        long read = bytesRead.mark();
+        long transferred = bytesTransferred.mark();
+        String dates = datePostedStats.mark() + " from the files of " + datePostedCalls.mark();
+        String posts = articleWrites.mark() + " stored (" + kilobytes(articleBytesWritten.mark()) + "), "
+                + homeFileCreates.mark() + " home files, " + logSyncs.mark() + " logged";
+        String groups = groupWrites.mark() + " (" + kilobytes(groupBytesWritten.mark()) + ")";
+
+        if (headerReads.lastCount + headerCacheHits.last + bodyReads.lastCount + bodyCacheHits.last
+                + bodyTransfers.lastCount + opened + datePostedCalls.last + articleWrites.lastCount
+                + groupWrites.lastCount == 0) {
+            return null;
+        }
+
+        return String.format(Locale.ROOT,
+                "Storage in the last %d s: headers %s; bodies %s; %d files opened, %s read, %s sent; "
+                        + "posting dates %s; posts %s; groups written %s",
+                seconds, headers, bodies, opened, kilobytes(read), kilobytes(transferred), dates, posts, groups);
+    }
+
+
+    /**
+     * Formats a number of bytes in kilobytes
+     */
+    private static String kilobytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    }
+
+
+    /**
+     * A counter, that remembers its value at the last summary
+     */
+    private static class Counter {
+
+        /** The value */
+        private final AtomicLong value = new AtomicLong();
+
+        /** The value at the last summary */
+        private long marked;
+
+        /** How much the value changed between the last two summaries */
+        private long last;
+
+
+        void add(long n) {
+            value.addAndGet(n);
+        }
+
+
+        long get() {
+            return value.get();
+        }
+
+
+        /**
+         * Returns how much the value changed since the last call
+         */
+        long mark() {
+            long value = this.value.get();
+            last = value - marked;
+            marked = value;
+            return last;
+        }
+    }
+
+
+    /**
+     * A timer: how many times something was done, and how long it took
+     */
+    public static class Timing {
+
+        /** The time taken */
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /** Count at the last summary */
+        private long markedCount;
+
+        /** Total time at the last summary */
+        private long markedTotal;
+
+        /** How much the count changed between the last two summaries */
+        private long lastCount;
+
+
+        void record(long nanos) {
+            latency.record(nanos);
+        }
+
+
+        /** Number of times */
+        public long getCount() {
+            return latency.count();
+        }
+
+
+        /** Total time, in milliseconds */
+        public double getTotalMillis() {
+            return latency.total() / 1e6;
+        }
+
+
+        /** Average time, in milliseconds */
+        public double getMeanMillis() {
+            return latency.mean() / 1e6;
+        }
+
+
+        /** 99th percentile of the time, in milliseconds */
+        public double getP99Millis() {
+            return latency.percentile(0.99) / 1e6;
+        }
+
+
+        /** Largest time, in milliseconds */
+        public double getMaxMillis() {
+            return latency.max() / 1e6;
+        }
+
+
+        /**
+         * Returns how many times something was done since the last call, and
+         * how long it took on average
+         */
+        String mark() {
+            long count = latency.count();
+            long total = latency.total();
+            lastCount = count - markedCount;
+            long nanos = total - markedTotal;
+            markedCount = count;
+            markedTotal = total;
+            return lastCount == 0
+                    ? "0"
+                    : String.format(Locale.ROOT, "%d (%.2f ms avg)", lastCount, nanos / 1e6 / lastCount);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.pureza.happynews.storage;
+
+/**
+ * The storage I/O counters and timers, as seen through JMX
+ *
+ * See StorageMetrics.
+ */
+public interface StorageMetricsMXBean {
+
+    /** Headers read from the article files (or their mappings) */
+    StorageMetrics.Timing getHeaderReads();
+
+    /** Headers found in the article cache */
+    long getHeaderCacheHits();
+
+    /** Bodies read from the article files (or their mappings) */
+    StorageMetrics.Timing getBodyReads();
+
+    /** Bodies found in the article cache */
+    long getBodyCacheHits();
+
+    /** Bodies sent to the clients straight from the files (or their mappings) */
+    StorageMetrics.Timing getBodyTransfers();
+
+    /** Article files opened */
+    long getFilesOpened();
+
+    /** Bytes of the articles read into the heap */
+    long getBytesRead();
+
+    /** Bytes of the article bodies sent straight from the files */
+    long getBytesTransferred();
+
+    /** Calls to Article.getDatePosted() */
+    long getDatePostedCalls();
+
+    /** Calls to Article.getDatePosted() that read the date of the file */
+    StorageMetrics.Timing getDatePostedStats();
+
+    /** Articles posted and stored */
+    StorageMetrics.Timing getArticleWrites();
+
+    /** Bytes of the articles posted */
+    long getArticleBytesWritten();
+
+    /** Files created in the editors' homes for their posts */
+    StorageMetrics.Timing getHomeFileCreates();
+
+    /** Posted articles appended to the article log and synced */
+    StorageMetrics.Timing getLogSyncs();
+
+    /** Times the groups file (and its snapshot) was written */
+    StorageMetrics.Timing getGroupWrites();
+
+    /** Bytes of the groups files (and their snapshots) written */
+    long getGroupBytesWritten();
+}
@@ -1,8 +1,18 @@
 package io.github.pureza.happynews.user;
 
 import io.github.pureza.happynews.newsgroup.Newsgroup;
-
+import io.github.pureza.happynews.util.CountingOutputStream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Objects;
 
 /**
@@ -33,6 +43,21 @@ public abstract class User {
     /** Client socket */
     protected Socket clientSocket;
 
+    /** Client input stream, if it doesn't come from the socket itself */
+    protected InputStream clientInput;
+
+    /** Client output stream, if it doesn't go to the socket itself */
+    protected OutputStream clientOutput;
+
+    /** Reads the client input. Shared by all the commands of the connection */
+    protected BufferedReader reader;
+
+    /** Writes to the client. Shared by all the commands of the connection */
+    protected PrintStream writer;
+
+    /** Counts the bytes sent to the client, if they are counted */
+    protected CountingOutputStream sent;
+
 
     public String getUsername() {
         return username;
@@ -89,6 +114,130 @@ public abstract class User {
 
     public void setClientSocket(Socket s) {
         clientSocket = s;
+        clientInput = null;
+        clientOutput = null;
+        reader = null;
+        writer = null;
+        sent = null;
+    }
+
+
+    /**
+     * Sets the streams used to talk to the client
+     *
+     * Used when the socket streams can't be used directly, for instance
+     * because the socket is in non-blocking mode.
+     */
+    public void setClientStreams(InputStream in, OutputStream out) {
+        clientInput = in;
+        clientOutput = out;
+        reader = null;
+        writer = null;
+        sent = null;
+    }
+
+
+    /**
+     * Sets the reader and writer used to talk to the client
+     *
+     * Used by the connection handlers, so that the commands read and write
+     * through the same buffers they used to authenticate the user.
+     */
+    public void setClientIO(BufferedReader reader, PrintStream writer) {
+        this.reader = reader;
+        this.writer = writer;
+        this.sent = null;
+    }
+
+
+    /**
+     * Sets the reader and writer used to talk to the client, along with the
+     * stream below the writer that counts the bytes sent
+     */
+    public void setClientIO(BufferedReader reader, PrintStream writer, CountingOutputStream sent) {
+        setClientIO(reader, writer);
+        this.sent = sent;
+    }
+
+
+    /**
+     * Returns the stream used to read from the client
+     */
+    public InputStream getInputStream() throws IOException {
+        return clientInput != null ? clientInput : clientSocket.getInputStream();
+    }
+
+
+    /**
+     * Returns the stream used to write to the client
+     */
+    public OutputStream getOutputStream() throws IOException {
+        return clientOutput != null ? clientOutput : clientSocket.getOutputStream();
+    }
+
+
+    /**
+     * Returns a channel to write to the client
+     *
+     * This is the socket channel itself when the socket has one and is in
+     * blocking mode, so that files can be transferred to it directly.
+     * Otherwise, it wraps the output stream. Either way, it bypasses the
+     * writer, which must be flushed first, and the count of bytes sent.
+     */
+    public WritableByteChannel getOutputChannel() throws IOException {
+        if (clientOutput == null && clientSocket != null) {
+            SocketChannel channel = clientSocket.getChannel();
+            if (channel != null && channel.isBlocking()) {
+                return channel;
+            }
+        }
+
+        return Channels.newChannel(getOutputStream());
+    }
+
+
+    /**
+     * Returns the reader used by the commands to read from the client
+     */
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            reader = new BufferedReader(new InputStreamReader(getInputStream()));
+        }
+
+        return reader;
+    }
+
+
+    /**
+     * Returns the writer used by the commands to write to the client
+     */
+    public PrintStream getWriter() throws IOException {
+        if (writer == null) {
+            sent = new CountingOutputStream(getOutputStream());
+            writer = new PrintStream(sent, true);
+        }
+
+        return writer;
+    }
+
+
+    /**
+     * Returns the number of bytes sent to the client so far, through the
+     * writer or around it (see addBytesSent()), or 0 if they aren't counted
+     */
+    public long getBytesSent() {
+        return sent != null ? sent.count() : 0;
+    }
+
+
+    /**
+     * Counts bytes sent to the client without going through the writer, such
+     * as article bodies written to the output channel
+     */
+    public void addBytesSent(long bytes) {
+        if (sent != null) {
+            sent.add(bytes);
+        }
     }
 
 
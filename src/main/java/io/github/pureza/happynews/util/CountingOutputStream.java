@@ -0,0 +1,54 @@
+package io.github.pureza.happynews.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that counts the bytes written through it
+ *
+ * Bytes sent to the same destination by other means (for instance, files
+ * transferred straight to a socket channel) can be added to the count.
+ *
+ * Not thread safe.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+    /** Number of bytes written */
+    private long count;
+
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+
+    /**
+     * Adds bytes sent around the stream to the count
+     */
+    public void add(long bytes) {
+        count += bytes;
+    }
+
+
+    /**
+     * Returns the number of bytes written
+     */
+    public long count() {
+        return count;
+    }
+}
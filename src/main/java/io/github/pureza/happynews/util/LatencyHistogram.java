@@ -0,0 +1,189 @@
+package io.github.pureza.happynews.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in nanoseconds, with a fixed relative precision
+ *
+ * Values are counted in log-linear buckets, as in HdrHistogram: each power of
+ * two is split into SUB_BUCKETS buckets of the same width, so a percentile is
+ * at most ~3% above the real value, whatever its magnitude. Values below
+ * SUB_BUCKETS are counted exactly.
+ *
+ * Recording is thread safe and doesn't allocate, so it can be done on every
+ * request. Reading while others record gives a slightly inconsistent, but
+ * usable, picture.
+ */
+public class LatencyHistogram {
+
+    /** Bits of the sub-bucket index */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** Buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Number of buckets, enough for any non-negative long */
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** Number of values in each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** Number of values */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Sum of the values */
+    private final AtomicLong total = new AtomicLong();
+
+    /** Largest value */
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records a value. Negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+
+    /**
+     * Adds all the values of the given histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+
+    /**
+     * Returns a copy of this histogram and empties it
+     *
+     * Values recorded meanwhile end up either in the copy or in this
+     * histogram, although the count and the total may not agree with the
+     * buckets for a while.
+     */
+    public LatencyHistogram drain() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.getAndSet(i, 0);
+            if (n != 0) {
+                copy.counts.set(i, n);
+            }
+        }
+
+        copy.count.set(count.getAndSet(0));
+        copy.total.set(total.getAndSet(0));
+        copy.max.set(max.getAndSet(0));
+        return copy;
+    }
+
+
+    /**
+     * Returns the number of values
+     */
+    public long count() {
+        return count.get();
+    }
+
+
+    /**
+     * Returns the sum of the values
+     */
+    public long total() {
+        return total.get();
+    }
+
+
+    /**
+     * Returns the largest value, or 0 if there are none
+     */
+    public long max() {
+        return max.get();
+    }
+
+
+    /**
+     * Returns the average value, or 0 if there are none
+     */
+    public long mean() {
+        long count = this.count.get();
+        return count > 0 ? total.get() / count : 0;
+    }
+
+
+    /**
+     * Returns the value below which lie the given fraction (from 0 to 1) of
+     * the values, or 0 if there are none
+     *
+     * The value returned is the upper limit of its bucket, but never above
+     * the largest value.
+     */
+    public long percentile(double fraction) {
+        long count = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+
+    /**
+     * Returns the bucket of the given non-negative value
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // value is in [2^exponent, 2^(exponent + 1)), and its SUB_BUCKET_BITS
+        // bits after the highest one tell the sub-bucket
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+
+    /**
+     * Returns the largest value of the given bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
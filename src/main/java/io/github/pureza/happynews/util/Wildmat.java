@@ -0,0 +1,174 @@
+package io.github.pureza.happynews.util;
+
+/**
+ * Wildmat matching, as used by NNTP to select newsgroups (RFC 3977)
+ *
+ * A wildmat is a comma separated list of patterns, which may use * (any
+ * sequence of characters), ? (any character), [...] (any of the given
+ * characters or ranges) and \ (escapes the next character). A pattern starting
+ * with ! excludes the names it matches. The last pattern that matches a name
+ * decides whether the name is selected.
+ */
+public class Wildmat {
+
+    private Wildmat() {
+        // This class can't be instantiated
+    }
+
+
+    /**
+     * Checks if the given wildmat uses any wildcards or negations, as opposed
+     * to being a plain list of names
+     */
+    public static boolean isPattern(String wildmat) {
+        for (String pattern : wildmat.split(",")) {
+            if (pattern.startsWith("!")) {
+                return true;
+            }
+        }
+
+        return wildmat.indexOf('*') >= 0 || wildmat.indexOf('?') >= 0
+                || wildmat.indexOf('[') >= 0 || wildmat.indexOf('\\') >= 0;
+    }
+
+
+    /**
+     * Checks if the given name is selected by the wildmat
+     */
+    public static boolean matches(String wildmat, String name) {
+        boolean selected = false;
+        for (String pattern : wildmat.split(",")) {
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            }
+
+            if (matches(pattern, 0, name, 0)) {
+                selected = !negated;
+            }
+        }
+
+        return selected;
+    }
+
+
+    /**
+     * Checks if the pattern, from index p, matches the name, from index n
+     *
+     * Only the last star is backtracked to: when what follows it doesn't
+     * match, the star takes one more character and matching resumes after it.
+     * Earlier stars never need to take more, because the last one can take
+     * whatever they would have. This keeps the work linear in practice, instead
+     * of exponential in the number of stars.
+     */
+    private static boolean matches(String pattern, int p, String name, int n) {
+        // Position after the last star seen, and where it started matching
+        int starP = -1;
+        int starN = 0;
+
+        while (n < name.length() || p < pattern.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                // Collapse consecutive stars, and let them match nothing, for
+                // now
+                while (p < pattern.length() && pattern.charAt(p) == '*') {
+                    p++;
+                }
+                starP = p;
+                starN = n;
+                continue;
+            }
+
+            int next = n < name.length() ? step(pattern, p, name.charAt(n)) : -1;
+            if (next >= 0) {
+                p = next;
+                n++;
+            } else if (starP >= 0 && starN < name.length()) {
+                starN++;
+                p = starP;
+                n = starN;
+            } else {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Matches the character against the element of the pattern at index p,
+     * returning the index of the next element, or -1 if it doesn't match
+     */
+    private static int step(String pattern, int p, char ch) {
+        if (p == pattern.length()) {
+            return -1;
+        }
+
+        char c = pattern.charAt(p);
+        switch (c) {
+            case '?':
+                return p + 1;
+
+            case '[':
+                int end = classEnd(pattern, p);
+                if (end < 0) {
+                    // Not a class, just a bracket
+                    return ch == c ? p + 1 : -1;
+                }
+                return classMatches(pattern, p + 1, end, ch) ? end + 1 : -1;
+
+            case '\\':
+                if (p + 1 < pattern.length()) {
+                    p++;
+                    c = pattern.charAt(p);
+                }
+                // Fall through
+
+            default:
+                return ch == c ? p + 1 : -1;
+        }
+    }
+
+
+    /**
+     * Returns the index of the bracket that closes the class starting at the
+     * given index, or -1 if there is none
+     */
+    private static int classEnd(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            // A leading ] is part of the class
+            i++;
+        }
+
+        return pattern.indexOf(']', i);
+    }
+
+
+    /**
+     * Checks if the character belongs to the class between the given indexes
+     */
+    private static boolean classMatches(String pattern, int start, int end, char c) {
+        boolean negated = pattern.charAt(start) == '^';
+        if (negated) {
+            start++;
+        }
+
+        boolean found = false;
+        for (int i = start; i < end; i++) {
+            char low = pattern.charAt(i);
+            if (i + 2 < end && pattern.charAt(i + 1) == '-') {
+                char high = pattern.charAt(i + 2);
+                found |= c >= low && c <= high;
+                i += 2;
+            } else {
+                found |= c == low;
+            }
+        }
+
+        return found != negated;
+    }
+}
@@ -3,6 +3,8 @@ package io.github.pureza.happynews;
 import io.github.pureza.happynews.config.Config;
 import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.server.AccessLog;
+import io.github.pureza.happynews.server.CommandMetrics;
 import io.github.pureza.happynews.server.NNTPServer;
 import io.github.pureza.happynews.user.Admin;
 import io.github.pureza.happynews.user.Editor;
@@ -66,6 +68,12 @@ public abstract class AbstractTest {
             public Path usersFile() {
                 return baseDir.resolve("users.tsv");
             }
+
+            @Override
+            public boolean indexInBackground() {
+                // So that tests see the indexes right away
+                return false;
+            }
         };
 
         // Create users/
@@ -77,6 +85,8 @@ public abstract class AbstractTest {
 
         server = mock(NNTPServer.class);
         when (server.config()).thenReturn(config);
+        when (server.commandMetrics()).thenReturn(new CommandMetrics());
+        when (server.accessLog()).thenReturn(new AccessLog(0));
     }
 
 
@@ -0,0 +1,172 @@
+package io.github.pureza.happynews;
+
+import io.github.pureza.happynews.config.Config;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration that forwards to another one, except for the settings
+ * overridden by the test
+ *
+ * Usage: new TestConfig(config).withServerMode(ServerMode.NIO)
+ */
+public class TestConfig extends Config {
+
+    /** The configuration forwarded to */
+    private final Config config;
+
+    /** Overrides, or null to forward */
+    private ServerMode serverMode;
+    private Integer serverThreads;
+    private ArticleStorage articleStorage;
+    private Boolean indexInBackground;
+
+
+    public TestConfig(Config config) {
+        this.config = config;
+    }
+
+
+    public TestConfig withServerMode(ServerMode serverMode) {
+        this.serverMode = serverMode;
+        return this;
+    }
+
+
+    public TestConfig withServerThreads(int serverThreads) {
+        this.serverThreads = serverThreads;
+        return this;
+    }
+
+
+    public TestConfig withArticleStorage(ArticleStorage articleStorage) {
+        this.articleStorage = articleStorage;
+        return this;
+    }
+
+
+    public TestConfig withIndexInBackground(boolean indexInBackground) {
+        this.indexInBackground = indexInBackground;
+        return this;
+    }
+
+
+    @Override
+    public Path baseDir() {
+        return config.baseDir();
+    }
+
+
+    @Override
+    public Path usersHome() {
+        return config.usersHome();
+    }
+
+
+    @Override
+    public Path articlesHome() {
+        return config.articlesHome();
+    }
+
+
+    @Override
+    public Path groupsFile() {
+        return config.groupsFile();
+    }
+
+
+    @Override
+    public Path usersFile() {
+        return config.usersFile();
+    }
+
+
+    @Override
+    public Path groupsJournal() {
+        return config.groupsJournal();
+    }
+
+
+    @Override
+    public Path groupsSnapshot() {
+        return config.groupsSnapshot();
+    }
+
+
+    @Override
+    public Path articlesSnapshot() {
+        return config.articlesSnapshot();
+    }
+
+
+    @Override
+    public Path articleLog() {
+        return config.articleLog();
+    }
+
+
+    @Override
+    public ArticleStorage articleStorage() {
+        return articleStorage != null ? articleStorage : config.articleStorage();
+    }
+
+
+    @Override
+    public Path segmentsHome() {
+        return config.segmentsHome();
+    }
+
+
+    @Override
+    public Path overviewHome() {
+        return config.overviewHome();
+    }
+
+
+    @Override
+    public long articleCacheSize() {
+        return config.articleCacheSize();
+    }
+
+
+    @Override
+    public ServerMode serverMode() {
+        return serverMode != null ? serverMode : config.serverMode();
+    }
+
+
+    @Override
+    public int serverThreads() {
+        return serverThreads != null ? serverThreads : config.serverThreads();
+    }
+
+
+    @Override
+    public int startupThreads() {
+        return config.startupThreads();
+    }
+
+
+    @Override
+    public int startupOpenFiles() {
+        return config.startupOpenFiles();
+    }
+
+
+    @Override
+    public boolean indexInBackground() {
+        return indexInBackground != null ? indexInBackground : config.indexInBackground();
+    }
+
+
+    @Override
+    public int metricsLogInterval() {
+        return config.metricsLogInterval();
+    }
+
+
+    @Override
+    public int accessLogSampling() {
+        return config.accessLogSampling();
+    }
+}
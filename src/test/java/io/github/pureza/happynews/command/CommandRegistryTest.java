@@ -0,0 +1,82 @@
+package io.github.pureza.happynews.command;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.server.UnknownCommandException;
+import io.github.pureza.happynews.user.User;
+import io.github.pureza.happynews.util.Strings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CommandRegistryTest extends AbstractTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void everyVerbCreatesItsOwnCommandClass() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "");
+
+        for (String verb : CommandRegistry.verbs()) {
+            Command command = CommandRegistry.get(verb).create(user, verb, server);
+            assertThat(command.getClass().getSimpleName(), equalTo(Strings.toSentenceCase(verb) + "Command"));
+        }
+    }
+
+
+    @Test
+    public void verbsAreCaseInsensitive() {
+        assertThat(CommandRegistry.get("xover"), is(notNullValue()));
+        assertThat(CommandRegistry.get("XoVeR"), is(notNullValue()));
+    }
+
+
+    @Test
+    public void unknownVerbsAreNotRegistered() {
+        assertThat(CommandRegistry.get("BLAH"), is(nullValue()));
+        assertThat(CommandRegistry.get(""), is(nullValue()));
+    }
+
+
+    @Test(expected=UnknownCommandException.class)
+    public void parseFailsForUnknownCommands() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "");
+
+        Command.parse(user, "BLAH 1 2", server);
+    }
+
+
+    @Test
+    public void commandsShareTheConnectionReaderAndWriter() throws Exception {
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "first\nsecond\n");
+
+        Command first = Command.parse(user, "SLAVE", server);
+        Command second = Command.parse(user, "SLAVE", server);
+
+        // The first command must not swallow input meant for the second
+        assertThat(first.in.readLine(), equalTo("first"));
+        assertThat(second.in.readLine(), equalTo("second"));
+        assertThat(first.out, is(sameInstance(second.out)));
+
+        first.process();
+        second.process();
+        assertThat(out.get(), equalTo("202 slave status noted\n202 slave status noted\n"));
+    }
+}
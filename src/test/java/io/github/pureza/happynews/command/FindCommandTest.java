@@ -13,10 +13,13 @@ import java.io.IOException;
 import java.util.Date;
 import java.util.function.Supplier;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class FindCommandTest extends AbstractTest {
@@ -102,4 +105,35 @@ public class FindCommandTest extends AbstractTest {
 
         assertThat(out.get(), equalTo("232 List of matching articles follows\n<123@host>\n.\n"));
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void onlyChecksTheCandidatesFoundByTheIndex() throws IOException {
+        Editor editor = mockEditor("editor");
+        Article first = mockArticle("1@host", editor, "Hello, world", "happynews.users");
+        Article second = mockArticle("2@host", editor, "Hello, world", "happynews.users");
+        Newsgroup happyNewsUsers = new Newsgroup("happynews.users", new Date(), asList(first.getId(), second.getId()));
+
+        when(server.getGroup(happyNewsUsers.getName())).thenReturn(happyNewsUsers);
+        when(server.findCandidates(happyNewsUsers, "Article")).thenReturn(new int[] { 2 });
+        when(server.getArticle(first.getId())).thenReturn(first);
+        when(server.getArticle(second.getId())).thenReturn(second);
+
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new FindCommand(user, "FIND happynews.users Article", server).process();
+
+        assertThat(out.get(), equalTo("232 List of matching articles follows\n<2@host>\n.\n"));
+        verify(server, never()).getArticle(first.getId());
+    }
+
+
+    @Test
+    public void failsOnInvalidRegularExpressions() throws IOException {
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new FindCommand(user, "FIND happynews.users Art(icle", server).process();
+
+        assertThat(out.get(), equalTo("501 command syntax error\n"));
+    }
+}
@@ -13,10 +13,14 @@ import java.io.IOException;
 import java.util.Date;
 import java.util.function.Supplier;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class FindheaderCommandTest extends AbstractTest {
@@ -102,4 +106,31 @@ public class FindheaderCommandTest extends AbstractTest {
 
         assertThat(out.get(), equalTo("231 List of matching articles follows\n<123@host>\n.\n"));
     }
-}
\ No newline at end of file
+
+
+    @Test
+    public void usesTheIndexForIndexedFields() throws IOException {
+        Newsgroup happyNewsUsers = new Newsgroup("happynews.users", new Date(), asList("<1@host>", "<2@host>"));
+
+        when(server.getGroup(happyNewsUsers.getName())).thenReturn(happyNewsUsers);
+        when(server.isHeaderIndexed("subject")).thenReturn(true);
+        when(server.findByHeader(happyNewsUsers, "subject", "^Hello")).thenReturn(singletonList("<2@host>"));
+
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new FindheaderCommand(user, "FINDHEADER happynews.users subject ^Hello", server).process();
+
+        assertThat(out.get(), equalTo("231 List of matching articles follows\n<2@host>\n.\n"));
+        verify(server, never()).getArticle(anyString());
+    }
+
+
+    @Test
+    public void failsOnInvalidRegularExpressions() throws IOException {
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new FindheaderCommand(user, "FINDHEADER happynews.users subject Hel[lo", server).process();
+
+        assertThat(out.get(), equalTo("501 command syntax error\n"));
+    }
+}
@@ -10,6 +10,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
 import static io.github.pureza.happynews.Tests.date;
@@ -18,7 +20,10 @@ import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class NewnewsCommandTest extends AbstractTest {
@@ -118,4 +123,36 @@ public class NewnewsCommandTest extends AbstractTest {
 
         assertThat(out.get(), equalTo("230 list of new articles by message-id follows\n.\n"));
     }
+
+
+    @Test
+    public void usesThePostingDatesOfTheGroups() throws Exception {
+        Newsgroup group3 = new Newsgroup("group3");
+        group3.addArticle("<3@host>", date(2001, 12, 10, 8, 20).getTime());
+        group3.addArticle("<4@host>", date(2003, 12, 10, 8, 20).getTime());
+        when (server.getGroup("group3")).thenReturn(group3);
+
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new NewnewsCommand(user, "NEWNEWS group3 020101 123000", server).process();
+
+        assertThat(out.get(), equalTo("230 list of new articles by message-id follows\n<4@host>\n.\n"));
+        verify(server, never()).getArticle(anyString());
+    }
+
+
+    @Test
+    public void acceptsWildmats() throws Exception {
+        Map<String, Newsgroup> groups = new HashMap<>();
+        groups.put("group1", server.getGroup("group1"));
+        groups.put("group2", server.getGroup("group2"));
+        groups.put("other", new Newsgroup("other", new Date(), singletonList("<2@host>")));
+        when (server.groups()).thenReturn(groups);
+
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new NewnewsCommand(user, "NEWNEWS group*,!group1 010101 123000", server).process();
+
+        assertThat(out.get(), equalTo("230 list of new articles by message-id follows\n<1@host>\n.\n"));
+    }
 }
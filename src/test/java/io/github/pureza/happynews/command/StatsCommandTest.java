@@ -0,0 +1,74 @@
+package io.github.pureza.happynews.command;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.server.CommandMetrics;
+import io.github.pureza.happynews.user.Admin;
+import io.github.pureza.happynews.user.Editor;
+import io.github.pureza.happynews.user.Reader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+public class StatsCommandTest extends AbstractTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void failForReader() throws Exception {
+        Reader user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "");
+        new StatsCommand(user, "STATS", server).process();
+
+        assertThat(out.get(), containsString("502 permission denied"));
+    }
+
+
+    @Test
+    public void failForEditor() throws Exception {
+        Editor user = mockEditor("editor");
+        Supplier<String> out = mockInput(user, "");
+        new StatsCommand(user, "STATS", server).process();
+
+        assertThat(out.get(), containsString("502 permission denied"));
+    }
+
+
+    @Test
+    public void printsTheStatisticsOfEachVerbSeen() throws Exception {
+        Admin user = mockAdmin("admin");
+        Supplier<String> out = mockInput(user, "");
+
+        CommandMetrics metrics = new CommandMetrics();
+        metrics.get(new SlaveCommand(user, "SLAVE", server)).record(2000000, 23, false);
+        when (server.commandMetrics()).thenReturn(metrics);
+
+        new StatsCommand(user, "STATS", server).process();
+
+        assertThat(out.get(), startsWith("292 Command statistics for the last 1 seconds follow\n"
+                + "VERB            COUNT  ERRORS   PER_SEC        BYTES  MEAN_MS   P50_MS   P90_MS   P99_MS   MAX_MS\n"
+                + "SLAVE               1       0      1.00           23     2.00     2.00     2.00     2.00     2.00\n"));
+        assertThat(out.get(), endsWith("\n.\n"));
+
+        // Verbs not seen yet are left out
+        assertThat(out.get(), not(containsString("UNKNOWN")));
+    }
+}
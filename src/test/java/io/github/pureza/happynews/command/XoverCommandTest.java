@@ -4,6 +4,7 @@ import io.github.pureza.happynews.AbstractTest;
 import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.newsgroup.Overview;
 import io.github.pureza.happynews.user.Editor;
 import io.github.pureza.happynews.user.User;
 import org.junit.After;
@@ -21,8 +22,7 @@ import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class XoverCommandTest extends AbstractTest {
 
@@ -91,6 +91,23 @@ public class XoverCommandTest extends AbstractTest {
     }
 
 
+    @Test
+    public void printsTheOverviewWithoutReadingTheArticle() throws Exception {
+        Editor user = mockEditor("editor");
+        Supplier<String> out = mockInput(user, "");
+
+        Newsgroup group = new Newsgroup("group1", new Date(), asList("<2@host>", "<1@host>"));
+        user.setCurrentGroup(group);
+        ArticleHeader header = new ArticleHeader("Subject: Hello, world\nFrom: editor@example.org\nDate: today\nMessage-ID: <1@host>");
+        when (server.getOverview(group, 2)).thenReturn(Overview.of(header, 100, 1));
+
+        new XoverCommand(user, "XOVER 2", server).process();
+
+        assertThat(out.get(), equalTo("224 Overview information follows\n2\tHello, world\teditor@example.org\ttoday\t<1@host>\n.\n"));
+        verify(server, never()).getArticle("<1@host>");
+    }
+
+
     @Test
     public void failWhenIndexIsTooSmall() throws Exception {
         Editor user = mockEditor("editor");
@@ -0,0 +1,115 @@
+package io.github.pureza.happynews.newsgroup;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ArticleCacheTest {
+
+    @Test
+    public void returnsNullForArticlesNotCached() {
+        ArticleCache cache = new ArticleCache(1024 * 1024);
+
+        assertThat(cache.getHeader("<1@host>"), is(nullValue()));
+        assertThat(cache.getBody("<1@host>"), is(nullValue()));
+        assertThat(cache.misses(), equalTo(2L));
+        assertThat(cache.hits(), equalTo(0L));
+    }
+
+
+    @Test
+    public void returnsTheCachedHeaderAndBody() {
+        ArticleCache cache = new ArticleCache(1024 * 1024);
+        ArticleHeader header = new ArticleHeader("Subject: Hello");
+        byte[] body = "The body".getBytes();
+
+        cache.putHeader("<1@host>", header);
+        cache.putBody("<1@host>", body);
+
+        assertThat(cache.getHeader("<1@host>"), is(sameInstance(header)));
+        assertThat(cache.getBody("<1@host>"), is(sameInstance(body)));
+        assertThat(cache.hits(), equalTo(2L));
+        assertThat(cache.misses(), equalTo(0L));
+    }
+
+
+    @Test
+    public void evictsTheLeastRecentlyUsedArticles() {
+        ArticleCache cache = new ArticleCache(3000);
+        cache.putBody("<1@host>", new byte[1000]);
+        cache.putBody("<2@host>", new byte[1000]);
+
+        // Use the first one, so that the second is evicted instead
+        cache.getBody("<1@host>");
+        cache.putBody("<3@host>", new byte[1000]);
+
+        assertThat(cache.getBody("<1@host>"), is(notNullValue()));
+        assertThat(cache.getBody("<2@host>"), is(nullValue()));
+        assertThat(cache.getBody("<3@host>"), is(notNullValue()));
+        assertThat(cache.evictions(), equalTo(1L));
+        assertThat(cache.size() <= cache.maxSize(), is(true));
+    }
+
+
+    @Test
+    public void isBoundedByBytesNotEntries() {
+        ArticleCache cache = new ArticleCache(10000);
+        for (int i = 1; i <= 50; i++) {
+            cache.putBody("<" + i + "@host>", new byte[10]);
+        }
+        assertThat(cache.evictions(), equalTo(0L));
+
+        cache.putBody("<big@host>", new byte[5000]);
+        assertThat(cache.evictions() > 0, is(true));
+        assertThat(cache.size() <= 10000, is(true));
+    }
+
+
+    @Test
+    public void doesNotCacheArticlesBiggerThanTheCache() {
+        ArticleCache cache = new ArticleCache(1000);
+        cache.putBody("<1@host>", new byte[10]);
+        cache.putBody("<2@host>", new byte[2000]);
+
+        assertThat(cache.getBody("<1@host>"), is(notNullValue()));
+        assertThat(cache.getBody("<2@host>"), is(nullValue()));
+    }
+
+
+    @Test
+    public void doesNotCacheArticlesWhoseHeaderAndBodyAreBiggerThanTheCache() {
+        ArticleCache cache = new ArticleCache(1000);
+        ArticleHeader header = new ArticleHeader("Subject: " + new String(new char[150]).replace('\0', 'x'));
+        cache.putHeader("<1@host>", header);
+        cache.putBody("<1@host>", new byte[500]);
+
+        assertThat(cache.getHeader("<1@host>"), is(sameInstance(header)));
+        assertThat(cache.getBody("<1@host>"), is(nullValue()));
+        assertThat(cache.size() <= cache.maxSize(), is(true));
+    }
+
+
+    @Test
+    public void partsThatDontFitAreNotCharged() {
+        ArticleCache cache = new ArticleCache(1000);
+        cache.putHeader("<1@host>", new ArticleHeader("Subject: Hello"));
+        long size = cache.size();
+
+        cache.putBody("<1@host>", new byte[900]);
+        cache.putBody("<2@host>", new byte[2000]);
+
+        assertThat(cache.size(), equalTo(size));
+        assertThat(cache.evictions(), equalTo(0L));
+    }
+
+
+    @Test
+    public void aZeroSizeDisablesTheCache() {
+        ArticleCache cache = new ArticleCache(0);
+        cache.putHeader("<1@host>", new ArticleHeader("Subject: Hello"));
+
+        assertThat(cache.getHeader("<1@host>"), is(nullValue()));
+        assertThat(cache.size(), equalTo(0L));
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.pureza.happynews.newsgroup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ArticleListTest {
+
+    @Test
+    public void addReturnsTheArticleNumber() {
+        ArticleList list = new ArticleList(asList("<1@host>", "<2@host>"), false);
+        assertThat(list.add("<3@host>", 0), is(3));
+        assertThat(list.size(), is(3));
+        assertThat(list.get(2), is("<3@host>"));
+    }
+
+
+    @Test
+    public void articlesSpanSeveralChunks() {
+        ArticleList list = new ArticleList(emptyList(), true);
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 5000; i++) {
+            list.add("<" + i + "@host>", i);
+            expected.add("<" + i + "@host>");
+        }
+
+        assertThat(list.snapshot(), is(expected));
+        assertThat(list.get(4999), is("<5000@host>"));
+        assertThat(list.postedAfter(2999), is(expected.subList(2999, 5000)));
+    }
+
+
+    @Test
+    public void snapshotsAreNotAffectedByLaterAppends() {
+        ArticleList list = new ArticleList(asList("<1@host>", "<2@host>"), true);
+        List<String> snapshot = list.snapshot();
+        list.add("<3@host>", 0);
+
+        assertThat(snapshot, is(asList("<1@host>", "<2@host>")));
+        assertThat(snapshot.subList(1, 2), is(asList("<2@host>")));
+    }
+
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void snapshotsDontGoPastTheirEnd() {
+        ArticleList list = new ArticleList(asList("<1@host>", "<2@host>"), true);
+        List<String> snapshot = list.snapshot();
+        list.add("<3@host>", 0);
+
+        snapshot.get(2);
+    }
+
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getFailsPastTheEnd() {
+        new ArticleList(asList("<1@host>", "<2@host>"), true).get(2);
+    }
+
+
+    @Test
+    public void postedAfterIsNullUntilDated() {
+        ArticleList list = new ArticleList(asList("<1@host>", "<2@host>"), false);
+        assertThat(list.postedAfter(0), is(nullValue()));
+
+        list.datePostings(id -> id.equals("<1@host>") ? 10 : 20);
+        assertThat(list.postedAfter(10), is(asList("<2@host>")));
+    }
+
+
+    @Test
+    public void readersSeeEveryPublishedArticle() throws Exception {
+        ArticleList list = new ArticleList(emptyList(), true);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<String> error = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            started.countDown();
+            int seen = 0;
+            while (seen < 20000) {
+                List<String> snapshot = list.snapshot();
+                for (int i = 0; i < snapshot.size(); i++) {
+                    if (!snapshot.get(i).equals("<" + (i + 1) + "@host>")) {
+                        error.set("Unexpected article " + snapshot.get(i) + " at " + i);
+                        return;
+                    }
+                }
+                seen = snapshot.size();
+            }
+        });
+        reader.start();
+        started.await();
+
+        for (int i = 1; i <= 20000; i++) {
+            list.add("<" + i + "@host>", i);
+        }
+        reader.join();
+
+        assertThat(error.get(), is(nullValue()));
+    }
+}
@@ -2,15 +2,22 @@ package io.github.pureza.happynews.newsgroup;
 
 
 import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.storage.StorageMetrics;
 import io.github.pureza.happynews.user.Editor;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class ArticleTest extends AbstractTest {
@@ -144,4 +151,110 @@ public class ArticleTest extends AbstractTest {
 
         assertThat(article.findInHeader("subject", "Hell."), equalTo(true));
     }
+
+
+    @Test
+    public void headerAndBodyAreServedFromTheCache() throws IOException {
+        Editor editor = mockEditor("editor");
+        mockArticle("1@host", editor, "Hello, world", "group1");
+        ArticleCache cache = new ArticleCache(1024 * 1024);
+        Article article = new Article("<1@host>", config.articlesHome(), cache);
+
+        ArticleHeader header = article.getHeader();
+        String body = article.getBody();
+
+        // The file is no longer needed
+        Files.delete(config.articlesHome().resolve("1@host"));
+
+        assertThat(article.getHeader(), is(sameInstance(header)));
+        assertThat(article.getBody(), equalTo(body));
+        assertThat(body, equalTo("Article from editor"));
+        assertThat(cache.hits(), equalTo(2L));
+        assertThat(cache.misses(), equalTo(2L));
+    }
+
+
+    @Test
+    public void readingTheArticleIsCounted() throws IOException {
+        Editor editor = mockEditor("editor");
+        mockArticle("1@host", editor, "Hello, world", "group1");
+        Article article = new Article("<1@host>", config.articlesHome(), new ArticleCache(1024 * 1024));
+        StorageMetrics metrics = StorageMetrics.get();
+        long headerReads = metrics.getHeaderReads().getCount();
+        long headerCacheHits = metrics.getHeaderCacheHits();
+        long filesOpened = metrics.getFilesOpened();
+        long bytesRead = metrics.getBytesRead();
+        long datePostedStats = metrics.getDatePostedStats().getCount();
+
+        article.getHeader();
+        article.getHeader();
+        article.getDatePosted();
+
+        assertThat(metrics.getHeaderReads().getCount() - headerReads, equalTo(1L));
+        assertThat(metrics.getHeaderCacheHits() - headerCacheHits, equalTo(1L));
+        assertThat(metrics.getFilesOpened() - filesOpened, equalTo(1L));
+        assertThat(metrics.getBytesRead() - bytesRead, equalTo(article.size()));
+        assertThat(metrics.getDatePostedStats().getCount() - datePostedStats, equalTo(1L));
+    }
+
+
+    @Test
+    public void writeBodyCopiesTheBodyAsStored() throws IOException {
+        Files.write(config.articlesHome().resolve("1@host"), asList(
+                "Subject: Dots",
+                "Message-ID: <1@host>",
+                "",
+                "First line",
+                "..stuffed line",
+                "",
+                "Last line"));
+        Article article = new Article("<1@host>", config.articlesHome());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(article.hasBody(), is(true));
+        article.writeBody(Channels.newChannel(out));
+
+        assertThat(out.toString(), equalTo("First line\n..stuffed line\n\nLast line\n"));
+    }
+
+
+    @Test
+    public void writeBodyEndsTheBodyWithANewline() throws IOException {
+        Files.write(config.articlesHome().resolve("1@host"),
+                "Subject: No newline\n\nBody".getBytes());
+        Article article = new Article("<1@host>", config.articlesHome());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        article.writeBody(Channels.newChannel(out));
+
+        assertThat(out.toString(), equalTo("Body\n"));
+    }
+
+
+    @Test
+    public void writeBodyIsCounted() throws IOException {
+        Files.write(config.articlesHome().resolve("1@host"),
+                "Subject: Counted\n\nBody\n".getBytes());
+        Article article = new Article("<1@host>", config.articlesHome());
+        StorageMetrics metrics = StorageMetrics.get();
+        long transfers = metrics.getBodyTransfers().getCount();
+        long transferred = metrics.getBytesTransferred();
+
+        article.writeBody(Channels.newChannel(new ByteArrayOutputStream()));
+
+        assertThat(metrics.getBodyTransfers().getCount() - transfers, equalTo(1L));
+        assertThat(metrics.getBytesTransferred() - transferred, equalTo(5L));
+    }
+
+
+    @Test
+    public void writeBodyWritesNothingIfTheBodyIsEmpty() throws IOException {
+        Editor editor = mockEditor("editor");
+        Article article = mockArticleWithEmptyBody("2@host", editor, "Hello world", "happynews.users");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(article.hasBody(), is(false));
+        assertThat(article.writeBody(Channels.newChannel(out)), equalTo(0L));
+        assertThat(out.size(), equalTo(0));
+    }
 }
@@ -6,7 +6,10 @@ import java.util.Date;
 import java.util.NoSuchElementException;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class NewsgroupTest {
@@ -72,4 +75,41 @@ public class NewsgroupTest {
         Newsgroup group = new Newsgroup("group", new Date(), asList("<1@host.com>", "<2@host.com>"));
         assertThat(group.previousIndex(3), is(2));
     }
+
+
+    @Test
+    public void articlesPostedAfterAreUnknownUntilThePostingsAreDated() {
+        Newsgroup group = new Newsgroup("group", new Date(), asList("<1@host.com>", "<2@host.com>"));
+        assertThat(group.articlesPostedAfter(new Date(0)), is(nullValue()));
+
+        group.datePostings(id -> id.equals("<1@host.com>") ? 1000 : 2000);
+        assertThat(group.articlesPostedAfter(new Date(0)), is(asList("<1@host.com>", "<2@host.com>")));
+        assertThat(group.articlesPostedAfter(new Date(1000)), is(singletonList("<2@host.com>")));
+        assertThat(group.articlesPostedAfter(new Date(2000)), is(emptyList()));
+    }
+
+
+    @Test
+    public void articlesPostedAfterIncludesTheNewArticles() {
+        Newsgroup group = new Newsgroup("group");
+        for (int i = 1; i <= 100; i++) {
+            group.addArticle("<" + i + "@host.com>", i * 10);
+        }
+
+        assertThat(group.articlesPostedAfter(new Date(995)), is(asList("<100@host.com>")));
+        assertThat(group.articlesPostedAfter(new Date(980)).size(), is(2));
+        assertThat(group.articlesPostedAfter(new Date(0)).size(), is(100));
+    }
+
+
+    @Test
+    public void postingTimesNeverDecrease() {
+        Newsgroup group = new Newsgroup("group", new Date(), asList("<1@host.com>", "<2@host.com>"));
+        group.datePostings(id -> id.equals("<1@host.com>") ? 1000 : 500);
+        group.addArticle("<3@host.com>", 200);
+
+        // The second and third articles are not older than the first
+        assertThat(group.articlesPostedAfter(new Date(700)), is(asList("<1@host.com>", "<2@host.com>", "<3@host.com>")));
+        assertThat(group.articlesPostedAfter(new Date(1000)), is(emptyList()));
+    }
 }
@@ -0,0 +1,92 @@
+package io.github.pureza.happynews.newsgroup;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.user.Editor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OverviewTest extends AbstractTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void ofKeepsTheOverviewFields() {
+        ArticleHeader header = new ArticleHeader("From: <user@host.org>\nSubject: Olá, mundo\nDate: today\nMessage-ID: <1@host.org>\nReferences: <0@host.org>\nNewsgroups: group1");
+
+        Overview overview = Overview.of(header, 120, 3);
+
+        assertThat(overview.getSubject(), equalTo("Olá, mundo"));
+        assertThat(overview.getFrom(), equalTo("<user@host.org>"));
+        assertThat(overview.getDate(), equalTo("today"));
+        assertThat(overview.getMessageId(), equalTo("<1@host.org>"));
+        assertThat(overview.getReferences(), equalTo("<0@host.org>"));
+        assertThat(overview.getBytes(), equalTo(120));
+        assertThat(overview.getLines(), equalTo(3));
+    }
+
+
+    @Test
+    public void missingFieldsAreNull() {
+        Overview overview = Overview.of(new ArticleHeader("Subject: Hello"), 0, 0);
+
+        assertThat(overview.getSubject(), equalTo("Hello"));
+        assertThat(overview.getFrom(), nullValue());
+        assertThat(overview.getReferences(), nullValue());
+    }
+
+
+    @Test
+    public void ofHandlesLongFields() {
+        StringBuilder subject = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            subject.append("subject ");
+        }
+
+        Overview overview = Overview.of(new ArticleHeader("Subject: " + subject.toString().trim() + "\nFrom: <user@host.org>"), 0, 0);
+
+        assertThat(overview.getSubject(), equalTo(subject.toString().trim()));
+        assertThat(overview.getFrom(), equalTo("<user@host.org>"));
+    }
+
+
+    @Test
+    public void readReadsTheArticleFile() throws Exception {
+        Editor editor = mockEditor("editor");
+        Article article = mockArticle("1@host", editor, "Hello, world", "group1");
+
+        Overview overview = article.readOverview();
+
+        assertThat(overview.getSubject(), equalTo("Hello, world"));
+        assertThat(overview.getFrom(), equalTo("editor@example.org"));
+        assertThat(overview.getMessageId(), equalTo(article.getId()));
+        assertThat(overview.getBytes(), equalTo((int) Files.size(config.articlesHome().resolve("1@host"))));
+        assertThat(overview.getLines(), equalTo(1));
+    }
+
+
+    @Test
+    public void countLinesCountsTheLastLineEvenWithoutTerminator() {
+        assertThat(Overview.countLines(""), equalTo(0));
+        assertThat(Overview.countLines("one"), equalTo(1));
+        assertThat(Overview.countLines("one\n"), equalTo(1));
+        assertThat(Overview.countLines("one\ntwo"), equalTo(2));
+        assertThat(Overview.countLines("one\n\nthree\n"), equalTo(3));
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.pureza.happynews.server;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class AccessLogTest {
+
+    @Test
+    public void logsEveryCommandOrNone() {
+        AccessLog all = new AccessLog(1);
+        AccessLog none = new AccessLog(0);
+        for (int i = 0; i < 100; i++) {
+            assertThat(all.sampled(false), is(true));
+            assertThat(none.sampled(false), is(false));
+            assertThat(none.sampled(true), is(false));
+        }
+    }
+
+
+    @Test
+    public void logsASampleOfTheCommandsAndEveryFailure() {
+        AccessLog log = new AccessLog(10);
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (log.sampled(false)) {
+                sampled++;
+            }
+            assertThat(log.sampled(true), is(true));
+        }
+
+        assertThat(sampled > 500 && sampled < 1500, is(true));
+    }
+
+
+    @Test
+    public void linesHoldTheUserVerbTimeAndBytes() {
+        assertThat(AccessLog.line("reader", "GROUP", 1234567, 42, false), is("reader GROUP 1.234 ms 42 bytes"));
+        assertThat(AccessLog.line("editor", "POST", 20000000, 0, true), is("editor POST 20.000 ms 0 bytes FAILED"));
+        assertThat(AccessLog.line("reader", "DATE", 5999, 10, false), is("reader DATE 0.005 ms 10 bytes"));
+    }
+}
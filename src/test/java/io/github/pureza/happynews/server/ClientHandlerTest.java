@@ -11,8 +11,11 @@ import java.util.function.Supplier;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 public class ClientHandlerTest extends AbstractTest {
 
@@ -125,4 +128,84 @@ public class ClientHandlerTest extends AbstractTest {
 
         assertThat(out.get(), equalTo("480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n202 slave status noted\n"));
     }
+
+
+    @Test
+    public void handlerRecordsTheCommandsInTheMetrics() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "AUTHINFO USER reader\nAUTHINFO PASSWORD reader\nSLAVE\nSLAVE\nBLAH\nquit");
+
+        CommandMetrics metrics = new CommandMetrics();
+        when (server.commandMetrics()).thenReturn(metrics);
+        when (server.login(user.getUsername(), user.getPassword())).thenReturn(user);
+
+        ClientHandler handler = new ClientHandler(user.getClientSocket(), server);
+        handler.run();
+
+        CommandMetrics.Stats slave = metrics.all().get("SLAVE");
+        assertThat(slave.getCount(), equalTo(2L));
+        assertThat(slave.getErrors(), equalTo(0L));
+        assertThat(slave.getBytesSent(), equalTo((long) "202 slave status noted\n".length() * 2));
+
+        CommandMetrics.Stats unknown = metrics.all().get("UNKNOWN");
+        assertThat(unknown.getCount(), equalTo(1L));
+        assertThat(unknown.getErrors(), equalTo(1L));
+        assertThat(unknown.getBytesSent(), equalTo((long) "500 BLAH: Command not recognized\n".length()));
+    }
+
+
+    @Test
+    public void handlerWritesTheCommandsToTheAccessLog() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "AUTHINFO USER reader\nAUTHINFO PASSWORD reader\nSLAVE\nBLAH\nquit");
+
+        AccessLog accessLog = mock(AccessLog.class);
+        when (server.accessLog()).thenReturn(accessLog);
+        when (server.login(user.getUsername(), user.getPassword())).thenReturn(user);
+
+        ClientHandler handler = new ClientHandler(user.getClientSocket(), server);
+        handler.run();
+
+        verify(accessLog).log(eq(user), eq("SLAVE"), anyLong(), eq((long) "202 slave status noted\n".length()), eq(false));
+        verify(accessLog).log(eq(user), eq("UNKNOWN"), anyLong(), anyLong(), eq(true));
+    }
+
+
+    @Test
+    public void handlerAnswersPipelinedCommandsWithASingleWrite() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "AUTHINFO USER reader\nAUTHINFO PASSWORD reader\nSLAVE\nSLAVE\nSLAVE\nquit");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream socketOut = spy(new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        });
+        when(user.getClientSocket().getOutputStream()).thenReturn(socketOut);
+        when (server.login(user.getUsername(), user.getPassword())).thenReturn(user);
+
+        ClientHandler handler = new ClientHandler(user.getClientSocket(), server);
+        handler.run();
+
+        assertThat(out.toString(), equalTo("480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n" +
+                "202 slave status noted\n202 slave status noted\n202 slave status noted\n"));
+        verify(socketOut, times(1)).write(any(byte[].class), anyInt(), anyInt());
+    }
+
+
+    @Test
+    public void handlerQuitsWhenTheClientClosesTheConnection() throws Exception {
+        User user = mockReader("reader");
+        Supplier<String> out = mockInput(user, "AUTHINFO USER reader\nAUTHINFO PASSWORD reader\nSLAVE\n");
+
+        when (server.login(user.getUsername(), user.getPassword())).thenReturn(user);
+
+        ClientHandler handler = new ClientHandler(user.getClientSocket(), server);
+        handler.run();
+
+        assertThat(out.get(), equalTo("480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n202 slave status noted\n"));
+        verify(user.getClientSocket()).close();
+    }
 }
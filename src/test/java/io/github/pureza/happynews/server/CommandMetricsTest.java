@@ -0,0 +1,85 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.command.SlaveCommand;
+import io.github.pureza.happynews.command.XoverCommand;
+import io.github.pureza.happynews.user.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CommandMetricsTest extends AbstractTest {
+
+    private CommandMetrics metrics;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        metrics = new CommandMetrics();
+    }
+
+
+    @After
+    public void tearDown() {
+        metrics.unregister();
+        super.tearDown();
+    }
+
+
+    @Test
+    public void commandsAreRecordedByVerb() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "");
+
+        metrics.get(new SlaveCommand(user, "SLAVE", server)).record(1000000, 10, false);
+        metrics.get(new SlaveCommand(user, "SLAVE", server)).record(3000000, 20, true);
+        metrics.get(new XoverCommand(user, "XOVER", server)).record(5000000, 30, false);
+
+        CommandMetrics.Stats slave = metrics.all().get("SLAVE");
+        assertThat(slave.getCount(), equalTo(2L));
+        assertThat(slave.getErrors(), equalTo(1L));
+        assertThat(slave.getBytesSent(), equalTo(30L));
+        assertThat(slave.getMeanMillis(), equalTo(2.0));
+        assertThat(slave.getMaxMillis(), equalTo(3.0));
+        assertThat(metrics.all().get("XOVER").getCount(), equalTo(1L));
+    }
+
+
+    @Test
+    public void theStatisticsOfAVerbAreCreatedOnce() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "");
+
+        CommandMetrics.Stats first = metrics.get(new SlaveCommand(user, "SLAVE", server));
+        CommandMetrics.Stats second = metrics.get(new SlaveCommand(user, "SLAVE", server));
+
+        assertThat(first, is(sameInstance(second)));
+    }
+
+
+    @Test
+    public void registeredStatisticsArePublishedThroughJmx() throws Exception {
+        User user = mockReader("reader");
+        mockInput(user, "");
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+
+        metrics.get(new SlaveCommand(user, "SLAVE", server)).record(1000000, 10, false);
+        metrics.register();
+        metrics.get(new XoverCommand(user, "XOVER", server)).record(1000000, 10, false);
+
+        assertThat(mbeans.getAttribute(CommandMetrics.objectName("SLAVE"), "Count"), equalTo(1L));
+        assertThat(mbeans.getAttribute(CommandMetrics.objectName("XOVER"), "BytesSent"), equalTo(10L));
+
+        metrics.unregister();
+        assertThat(mbeans.isRegistered(CommandMetrics.objectName("SLAVE")), is(false));
+    }
+}
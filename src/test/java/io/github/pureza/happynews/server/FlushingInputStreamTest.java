@@ -0,0 +1,46 @@
+package io.github.pureza.happynews.server;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.mockito.Mockito.*;
+
+public class FlushingInputStreamTest {
+
+    @Test
+    public void doesNotFlushWhileThereIsInputAvailable() throws Exception {
+        Flushable output = mock(Flushable.class);
+        InputStream in = new FlushingInputStream(new ByteArrayInputStream("abc".getBytes()), output);
+
+        in.read();
+        in.read(new byte[2], 0, 2);
+
+        verify(output, never()).flush();
+    }
+
+
+    @Test
+    public void flushesBeforeBlocking() throws Exception {
+        Flushable output = mock(Flushable.class);
+        InputStream in = new FlushingInputStream(new ByteArrayInputStream("a".getBytes()), output);
+
+        in.read();
+        verify(output, never()).flush();
+
+        in.read(new byte[1], 0, 1);
+        verify(output).flush();
+    }
+
+
+    @Test(expected=IOException.class)
+    public void propagatesFlushErrors() throws Exception {
+        Flushable output = mock(Flushable.class);
+        doThrow(new IOException()).when(output).flush();
+
+        new FlushingInputStream(new ByteArrayInputStream(new byte[0]), output).read();
+    }
+}
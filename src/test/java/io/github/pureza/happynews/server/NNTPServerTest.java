@@ -1,6 +1,8 @@
 package io.github.pureza.happynews.server;
 
 import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.TestConfig;
+import io.github.pureza.happynews.config.Config;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
 import io.github.pureza.happynews.newsgroup.Newsgroup;
 import io.github.pureza.happynews.user.Editor;
@@ -10,12 +12,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static java.util.Collections.singletonList;
@@ -116,6 +121,48 @@ public class NNTPServerTest extends AbstractTest {
     }
 
 
+    @Test
+    public void postArticleAddsTheOverviewToTheNewsgroups() throws Exception {
+        server.createGroup("happynews.users");
+        server.createGroup("happynews.dev");
+
+        Editor user = mockEditor("user");
+
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users, happynews.dev");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+
+        Newsgroup happyNewsDev = server.getGroup("happynews.dev");
+        assertThat(server.getOverview(happyNewsDev, 1).getSubject(), equalTo("Hello, world"));
+        assertThat(server.getOverview(happyNewsDev, 1).getMessageId(), equalTo("<1@host.org>"));
+        assertThat(server.getOverview(happyNewsDev, 2), is(nullValue()));
+
+        // The overview survives restarts
+        NNTPServer restarted = new NNTPServer(mock(ServerSocket.class), config);
+        assertThat(restarted.getOverview(happyNewsDev, 1), equalTo(server.getOverview(happyNewsDev, 1)));
+    }
+
+
+    @Test
+    public void postArticleIndexesTheBody() throws Exception {
+        server.createGroup("happynews.users");
+
+        Editor user = mockEditor("user");
+
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+
+        Newsgroup happyNewsUsers = server.getGroup("happynews.users");
+        assertThat(server.findCandidates(happyNewsUsers, "perfect"), equalTo(new int[] { 1 }));
+        assertThat(server.findCandidates(happyNewsUsers, "imperfect"), equalTo(new int[0]));
+    }
+
+
     @Test
     public void postArticleIgnoresUnknownNewsgroups() throws Exception {
         Editor user = mockEditor("user");
@@ -149,4 +196,141 @@ public class NNTPServerTest extends AbstractTest {
         // < 1 second difference
         assertThat(Math.abs(date.getTime() - before.getTime()) < 1000, is(true));
     }
+
+
+    @Test
+    public void postedArticlesSurviveLosingTheGroupJournal() throws Exception {
+        server.createGroup("happynews.users");
+        server.checkpoint();
+
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+
+        // The group journal is not synced
+        Files.delete(config.groupsJournal());
+
+        NNTPServer restarted = new NNTPServer(mock(ServerSocket.class), config);
+        assertThat(restarted.getGroup("happynews.users").articles(), equalTo(singletonList("<1@host.org>")));
+        assertThat(restarted.getOverview(restarted.getGroup("happynews.users"), 1).getSubject(), equalTo("Hello, world"));
+    }
+
+
+    @Test
+    public void checkpointWritesTheGroupsAndEmptiesTheArticleLog() throws Exception {
+        server.createGroup("happynews.users");
+
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+
+        server.checkpoint();
+
+        assertThat(Files.exists(config.articleLog()), is(false));
+        assertThat(Files.exists(config.articleLog().resolveSibling("articles.log.old")), is(false));
+        assertThat(Files.exists(config.groupsJournal()), is(false));
+        NNTPServer restarted = new NNTPServer(mock(ServerSocket.class), config);
+        assertThat(restarted.getGroup("happynews.users").articles(), equalTo(singletonList("<1@host.org>")));
+    }
+
+
+    @Test
+    public void postingDatesSurviveAShutdown() throws Exception {
+        server.createGroup("happynews.users");
+
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+        long[] postingTimes = server.getGroup("happynews.users").postingTimes(1);
+
+        server.shutdown();
+
+        assertThat(Files.exists(config.groupsSnapshot()), is(true));
+        assertThat(Files.exists(config.articlesSnapshot()), is(true));
+        NNTPServer restarted = new NNTPServer(mock(ServerSocket.class), config);
+        assertThat(restarted.getGroup("happynews.users").postingTimes(1), equalTo(postingTimes));
+    }
+
+
+    @Test
+    public void serverAcceptsConnectionsBeforeTheIndexesAreBuilt() throws Exception {
+        server.createGroup("happynews.users");
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        server.postArticle(header, "A perfect body", user);
+        server.shutdown();
+
+        // The bodies aren't indexed until the test says so
+        CountDownLatch indexing = new CountDownLatch(1);
+        CountDownLatch indexed = new CountDownLatch(1);
+        ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        NNTPServer restarted = new NNTPServer(socket, new TestConfig(config).withIndexInBackground(true)) {
+            @Override
+            void indexBodies() {
+                try {
+                    indexing.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.indexBodies();
+                indexed.countDown();
+            }
+        };
+        restarted.setDaemon(true);
+        restarted.start();
+
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
+            assertThat(in.readLine(), equalTo("480 server ready - authentication required"));
+            Newsgroup group = restarted.getGroup("happynews.users");
+            assertThat(restarted.findCandidates(group, "perfect"), is(nullValue()));
+
+            indexing.countDown();
+            assertThat(indexed.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(restarted.findCandidates(group, "perfect"), equalTo(new int[] { 1 }));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+
+    @Test
+    public void shutdownDisconnectsTheClientsInThreadMode() throws Exception {
+        assertShutdownDisconnectsTheClients(Config.ServerMode.THREAD);
+    }
+
+
+    @Test
+    public void shutdownDisconnectsTheClientsInVirtualMode() throws Exception {
+        assertShutdownDisconnectsTheClients(Config.ServerMode.VIRTUAL);
+    }
+
+
+    private void assertShutdownDisconnectsTheClients(Config.ServerMode mode) throws Exception {
+        ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        NNTPServer threaded = new NNTPServer(socket, new TestConfig(config).withServerMode(mode));
+        threaded.setDaemon(true);
+        threaded.start();
+
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
+            client.setSoTimeout(10000);
+            assertThat(in.readLine(), equalTo("480 server ready - authentication required"));
+
+            threaded.shutdown();
+            assertThat(in.readLine(), is(nullValue()));
+        }
+    }
 }
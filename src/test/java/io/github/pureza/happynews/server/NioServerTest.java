@@ -0,0 +1,194 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.TestConfig;
+import io.github.pureza.happynews.config.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class NioServerTest extends AbstractTest {
+
+    private ServerSocketChannel serverChannel;
+
+    private NNTPServer nntpServer;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        // Create an empty file, so that it doesn't fail
+        Files.createFile(config.usersFile());
+
+        Config nioConfig = new TestConfig(config).withServerMode(Config.ServerMode.NIO).withServerThreads(2);
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        nntpServer = new NNTPServer(serverChannel.socket(), nioConfig);
+        nntpServer.addUser(mockReader("reader"));
+        nntpServer.addUser(mockEditor("editor"));
+        nntpServer.createGroup("happynews.users");
+        nntpServer.setDaemon(true);
+        nntpServer.start();
+    }
+
+
+    @After
+    public void tearDown() {
+        nntpServer.shutdown();
+        super.tearDown();
+    }
+
+
+    @Test
+    public void authenticatesAndExecutesCommands() throws Exception {
+        String output = converse("AUTHINFO USER reader\r\nAUTHINFO PASSWORD reader\r\nSLAVE\r\nquit\r\n");
+
+        assertThat(output, equalTo("480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n202 slave status noted\n"));
+    }
+
+
+    @Test
+    public void asksForAuthenticationUntilTheUserIdentifiesHimself() throws Exception {
+        String output = converse("SLAVE\r\nAUTHINFO USER reader\r\nAUTHINFO PASSWORD reader\r\nquit\r\n");
+
+        assertThat(output, equalTo("480 server ready - authentication required\n480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n"));
+    }
+
+
+    @Test
+    public void closesConnectionOnWrongPassword() throws Exception {
+        String output = converse("AUTHINFO USER reader\r\nAUTHINFO PASSWORD wrong-password\r\nSLAVE\r\n");
+
+        assertThat(output, equalTo("480 server ready - authentication required\n381 password please...\n482 Invalid login\n"));
+    }
+
+
+    @Test
+    public void reportsUnknownCommands() throws Exception {
+        String output = converse("AUTHINFO USER reader\r\nAUTHINFO PASSWORD reader\r\n\r\nBLAH\r\nquit\r\n");
+
+        assertThat(output, containsString("281 Authentication accepted\n500 BLAH: Command not recognized\n"));
+    }
+
+
+    @Test
+    public void commandsCanReadFurtherInput() throws Exception {
+        String output = converse("AUTHINFO USER editor\r\nAUTHINFO PASSWORD editor\r\n" +
+                "POST\r\nFrom: <editor@host.org>\r\nSubject: Hello\r\nNewsgroups: happynews.users\r\n\r\nThe body\r\n.\r\n" +
+                "GROUP happynews.users\r\nSTAT 1\r\nquit\r\n");
+
+        assertThat(output, containsString("240 article posted ok\n211 1 1 1 happynews.users group selected\n223 1 <1@host.org>"));
+    }
+
+
+    @Test
+    public void lastLineDoesNotNeedATerminator() throws Exception {
+        String output = converse("AUTHINFO USER reader\r\nAUTHINFO PASSWORD reader\r\nSLAVE");
+
+        assertThat(output, equalTo("480 server ready - authentication required\n381 password please...\n281 Authentication accepted\n202 slave status noted\n"));
+    }
+
+
+    @Test
+    public void shutdownDisconnectsTheClients() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverChannel.socket().getLocalPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("AUTHINFO USER editor\r\nAUTHINFO PASSWORD editor\r\n".getBytes());
+            assertThat(readUntil(socket.getInputStream(), "281 Authentication accepted\n"), containsString("281 Authentication accepted"));
+
+            nntpServer.shutdown();
+
+            assertThat(socket.getInputStream().read(), equalTo(-1));
+            assertThat(serverChannel.isOpen(), equalTo(false));
+        }
+    }
+
+
+    @Test
+    public void clientsThatDontReadTheResponsesAreNotReadFromEither() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverChannel.socket().getLocalPort())) {
+            socket.getOutputStream().write("AUTHINFO USER reader\r\nAUTHINFO PASSWORD reader\r\n".getBytes());
+
+            // Pipeline far more commands than the server buffers, without
+            // reading a single response
+            StringBuilder commands = new StringBuilder();
+            while (commands.length() < 64 * 1024) {
+                commands.append("SLAVE ").append(new String(new char[90]).replace('\0', 'x')).append("\r\n");
+            }
+            byte[] batch = commands.toString().getBytes();
+            AtomicLong written = new AtomicLong();
+            Thread flooder = new Thread(() -> {
+                try {
+                    while (written.get() < 64L * 1024 * 1024) {
+                        socket.getOutputStream().write(batch);
+                        written.addAndGet(batch.length);
+                    }
+                } catch (IOException ex) {
+                    // The socket was closed
+                }
+            });
+            flooder.setDaemon(true);
+            flooder.start();
+            flooder.join(3000);
+
+            // The server stopped reading, so the flooder is stuck writing
+            assertThat(flooder.isAlive(), equalTo(true));
+            assertThat(written.get() < 48L * 1024 * 1024, equalTo(true));
+        }
+    }
+
+
+    /**
+     * Reads from the given stream until the given text arrives, and returns
+     * everything read
+     */
+    private String readUntil(InputStream in, String text) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int b;
+        while (!output.toString().contains(text) && (b = in.read()) >= 0) {
+            output.write(b);
+        }
+
+        return output.toString();
+    }
+
+
+    /**
+     * Sends the given input and returns everything the server sends back until
+     * it closes the connection
+     */
+    private String converse(String input) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverChannel.socket().getLocalPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(input.getBytes());
+            socket.shutdownOutput();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                output.write(buffer, 0, n);
+            }
+
+            return output.toString();
+        }
+    }
+}
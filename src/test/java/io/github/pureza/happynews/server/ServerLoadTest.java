@@ -0,0 +1,257 @@
+package io.github.pureza.happynews.server;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.TestConfig;
+import io.github.pureza.happynews.config.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Opens many concurrent connections against each connection model and checks
+ * that all of them are served
+ *
+ * The number of connections and of commands per connection can be raised with
+ * the load.connections and load.commands system properties, to compare the
+ * latency and the number of threads of each model under heavier loads.
+ */
+public class ServerLoadTest extends AbstractTest {
+
+    /** Number of concurrent connections */
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 50);
+
+    /** Number of commands sent by each connection */
+    private static final int COMMANDS = Integer.getInteger("load.commands", 20);
+
+    /** The commands sent by the clients, in a loop, with the expected status codes */
+    private static final String[][] SCRIPT = {
+            { "GROUP happynews.load", "211" },
+            { "STAT 1", "223" },
+            { "HEAD 1", "221" },
+            { "NEXT", "223" },
+            { "BODY", "222" },
+            { "XOVER 1-2", "224" },
+            { "LIST", "215" },
+    };
+
+    private ServerSocketChannel serverChannel;
+
+    /** The logger */
+    private static final Logger logger = LoggerFactory.getLogger(ServerLoadTest.class);
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        // Create an empty file, so that it doesn't fail
+        Files.createFile(config.usersFile());
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CONNECTIONS);
+    }
+
+
+    @After
+    public void tearDown() {
+        try {
+            serverChannel.close();
+        } catch (IOException ex) {
+            // Do nothing
+        }
+
+        super.tearDown();
+    }
+
+
+    @Test
+    public void threadPerConnectionServesAllClients() throws Exception {
+        runLoad(Config.ServerMode.THREAD);
+    }
+
+
+    @Test
+    public void virtualThreadsServeAllClients() throws Exception {
+        runLoad(Config.ServerMode.VIRTUAL);
+    }
+
+
+    @Test
+    public void nioServesAllClients() throws Exception {
+        runLoad(Config.ServerMode.NIO);
+    }
+
+
+    /**
+     * Starts a server in the given mode and runs all connections against it at
+     * the same time
+     */
+    private void runLoad(Config.ServerMode mode) throws Exception {
+        NNTPServer nntpServer = new NNTPServer(serverChannel.socket(), new TestConfig(config).withServerMode(mode).withServerThreads(2));
+        nntpServer.addUser(mockEditor("editor"));
+        for (int i = 0; i < CONNECTIONS; i++) {
+            nntpServer.addUser(mockReader("reader" + i));
+        }
+
+        nntpServer.createGroup("happynews.load");
+        nntpServer.setDaemon(true);
+        nntpServer.start();
+
+        postArticles(2);
+
+        CountDownLatch ready = new CountDownLatch(CONNECTIONS);
+        CountDownLatch done = new CountDownLatch(CONNECTIONS);
+        long[][] latencies = new long[CONNECTIONS][];
+        List<Throwable> failures = new ArrayList<>();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            int client = i;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = connect("reader" + client)) {
+                    ready.countDown();
+                    ready.await();
+                    latencies[client] = runScript(socket);
+                } catch (Throwable ex) {
+                    synchronized (failures) {
+                        failures.add(ex);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "LoadClient-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // All clients are connected and idle, waiting for each other
+        ready.await(30, TimeUnit.SECONDS);
+        int serverThreads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore - CONNECTIONS;
+
+        done.await(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(failures.toString(), failures.isEmpty(), equalTo(true));
+        assertThat(done.getCount(), equalTo(0L));
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        assertThat(all.length, equalTo(CONNECTIONS * COMMANDS));
+
+        logger.info("{} mode: {} connections, {} commands in {} ms, ~{} server threads, p50 {} us, p99 {} us, max {} us",
+                mode.name().toLowerCase(), CONNECTIONS, all.length, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                serverThreads, percentile(all, 0.50), percentile(all, 0.99), all[all.length - 1] / 1000);
+    }
+
+
+    /**
+     * Posts some articles to the load test group
+     */
+    private void postArticles(int count) throws IOException {
+        try (Socket socket = connect("editor")) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            PrintStream out = new PrintStream(socket.getOutputStream(), true);
+            for (int i = 0; i < count; i++) {
+                out.print("POST\r\n");
+                assertThat(in.readLine(), equalTo("340 send article to be posted. End with <CR-LF>.<CR-LF>"));
+                out.print("From: <editor@host.org>\r\nSubject: Load " + i + "\r\nNewsgroups: happynews.load\r\n\r\nThe body\r\n.\r\n");
+                assertThat(in.readLine(), equalTo("240 article posted ok"));
+            }
+
+            out.print("quit\r\n");
+        }
+    }
+
+
+    /**
+     * Opens a connection and logs in as the given user
+     */
+    private Socket connect(String username) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverChannel.socket().getLocalPort());
+        socket.setSoTimeout(30000);
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintStream out = new PrintStream(socket.getOutputStream(), true);
+        out.print("AUTHINFO USER " + username + "\r\n");
+        assertThat(in.readLine(), equalTo("480 server ready - authentication required"));
+        assertThat(in.readLine(), equalTo("381 password please..."));
+        out.print("AUTHINFO PASSWORD " + username + "\r\n");
+        assertThat(in.readLine(), equalTo("281 Authentication accepted"));
+
+        return socket;
+    }
+
+
+    /**
+     * Sends the script's commands, checking the responses, and returns the
+     * latency of each one, in nanoseconds
+     */
+    private long[] runScript(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintStream out = new PrintStream(socket.getOutputStream(), true);
+
+        long[] latencies = new long[COMMANDS];
+        for (int i = 0; i < COMMANDS; i++) {
+            String[] step = SCRIPT[i % SCRIPT.length];
+
+            long start = System.nanoTime();
+            out.print(step[0] + "\r\n");
+            String status = in.readLine();
+            if (status == null || !status.startsWith(step[1])) {
+                throw new AssertionError(step[0] + ": unexpected response " + status);
+            }
+
+            if (isMultiLine(status)) {
+                String line;
+                while ((line = in.readLine()) != null && !line.equals(".")) {
+                    // Skip the response's body
+                }
+            }
+
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        out.print("quit\r\n");
+        return latencies;
+    }
+
+
+    /**
+     * Whether the response with the given status line is followed by a
+     * dot-terminated body
+     */
+    private boolean isMultiLine(String status) {
+        return status.startsWith("215") || status.startsWith("220") || status.startsWith("221")
+                || status.startsWith("222") || status.startsWith("224");
+    }
+
+
+    /**
+     * Returns the given percentile of the sorted latencies, in microseconds
+     */
+    private long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1000;
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ArticleLogTest extends AbstractTest {
+
+    private Path file;
+
+    private ArticleLog log;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        file = config.articleLog();
+        log = new ArticleLog(file);
+    }
+
+
+    @After
+    public void tearDown() {
+        try {
+            log.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        super.tearDown();
+    }
+
+
+    @Test
+    public void readReturnsTheAppendedRecords() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.append("<2@host>", "second".getBytes());
+
+        List<ArticleLog.Record> records = log.read();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(1).id, equalTo("<2@host>"));
+        assertThat(new String(records.get(1).article), equalTo("second"));
+    }
+
+
+    @Test
+    public void readStopsAtAnIncompleteRecord() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.append("<2@host>", "second".getBytes());
+        log.close();
+
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.setLength(out.length() - 1);
+        }
+
+        assertThat(log.read().size(), equalTo(1));
+    }
+
+
+    @Test
+    public void readStopsAtACorruptedRecord() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.append("<2@host>", "second".getBytes());
+        log.append("<3@host>", "third".getBytes());
+        log.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertThat(log.read().size(), equalTo(1));
+    }
+
+
+    @Test
+    public void appendingAfterACrashTruncatesTheIncompleteRecord() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.append("<2@host>", "second".getBytes());
+        log.close();
+
+        // A crash in the middle of the second append
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.setLength(out.length() - 3);
+        }
+
+        ArticleLog reopened = new ArticleLog(file);
+        reopened.sync(reopened.append("<3@host>", "third".getBytes()));
+        reopened.close();
+
+        List<ArticleLog.Record> records = new ArticleLog(file).read();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(0).id, equalTo("<1@host>"));
+        assertThat(records.get(1).id, equalTo("<3@host>"));
+        assertThat(new String(records.get(1).article), equalTo("third"));
+    }
+
+
+    @Test
+    public void rotatingAfterACrashTruncatesTheIncompleteRecords() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.rotate();
+        log.append("<2@host>", "second".getBytes());
+        log.append("<3@host>", "third".getBytes());
+        log.close();
+
+        // A crash in the middle of the checkpoint and one in the middle of
+        // an append
+        Path rotated = file.resolveSibling(file.getFileName() + ".old");
+        Files.write(rotated, new byte[] { 0, 0, 0, 42, 1 }, StandardOpenOption.APPEND);
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.setLength(out.length() - 1);
+        }
+
+        ArticleLog reopened = new ArticleLog(file);
+        reopened.rotate();
+
+        List<ArticleLog.Record> records = reopened.readRotated();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(0).id, equalTo("<1@host>"));
+        assertThat(records.get(1).id, equalTo("<2@host>"));
+    }
+
+
+    @Test
+    public void oneSyncCoversEveryRecordAppendedBeforeIt() throws IOException {
+        long first = log.append("<1@host>", "first".getBytes());
+        long second = log.append("<2@host>", "second".getBytes());
+
+        log.sync(second);
+        log.sync(first);
+        assertThat(log.syncs(), equalTo(1));
+
+        log.sync(log.append("<3@host>", "third".getBytes()));
+        assertThat(log.syncs(), equalTo(2));
+    }
+
+
+    @Test
+    public void sizeCountsTheRecordsOfTheCurrentLog() throws IOException {
+        assertThat(log.size(), equalTo(0L));
+        log.append("<1@host>", "first".getBytes());
+        assertThat(log.size(), equalTo(Files.size(file)));
+
+        log.rotate();
+        assertThat(log.size(), equalTo(0L));
+    }
+
+
+    @Test
+    public void rotatedRecordsAreReadFirst() throws IOException {
+        long position = log.append("<1@host>", "first".getBytes());
+        log.rotate();
+        log.append("<2@host>", "second".getBytes());
+
+        // Rotating syncs the log
+        log.sync(position);
+        assertThat(log.syncs(), equalTo(0));
+
+        assertThat(log.readRotated().size(), equalTo(1));
+        assertThat(log.read().get(0).id, equalTo("<1@host>"));
+        assertThat(log.read().get(1).id, equalTo("<2@host>"));
+
+        log.discardRotated();
+        assertThat(log.read().size(), equalTo(1));
+    }
+
+
+    @Test
+    public void rotateKeepsTheRecordsOfAFailedCheckpoint() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.rotate();
+        log.append("<2@host>", "second".getBytes());
+        log.rotate();
+
+        assertThat(Files.exists(file), is(false));
+        assertThat(log.readRotated().size(), equalTo(2));
+    }
+
+
+    @Test
+    public void cancelledArticlesAreLeftOut() throws IOException {
+        log.append("<1@host>", "first".getBytes());
+        log.rotate();
+        log.append("<2@host>", "second".getBytes());
+        log.cancel("<1@host>");
+
+        List<ArticleLog.Record> records = log.read();
+        assertThat(records.size(), equalTo(1));
+        assertThat(records.get(0).id, equalTo("<2@host>"));
+    }
+}
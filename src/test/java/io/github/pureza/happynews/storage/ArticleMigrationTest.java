@@ -0,0 +1,59 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ArticleMigrationTest extends AbstractTest {
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void migrateCopiesTheArticlesWithTheirPostingDates() throws IOException {
+        Files.write(config.articlesHome().resolve("2@host"), asList("Subject: Second", "", "Body 2"));
+        Files.write(config.articlesHome().resolve("10@host"), asList("Subject: Tenth", "", "Body 10"));
+        Files.setLastModifiedTime(config.articlesHome().resolve("10@host"), FileTime.fromMillis(5000));
+
+        try (FileArticleStore source = new FileArticleStore(config.articlesHome());
+             SegmentArticleStore target = new SegmentArticleStore(config.segmentsHome())) {
+            assertThat(ArticleMigration.migrate(source, target), equalTo(2));
+            assertThat(target.article("<10@host>", null).getBody(), equalTo("Body 10"));
+            assertThat(target.article("<10@host>", null).getDatePosted(), equalTo(new Date(5000)));
+        }
+    }
+
+
+    @Test
+    public void migrateSkipsTheArticlesThatWereAlreadyCopied() throws IOException {
+        Files.write(config.articlesHome().resolve("1@host"), asList("Subject: First", "", "Body 1"));
+
+        try (FileArticleStore source = new FileArticleStore(config.articlesHome());
+             SegmentArticleStore target = new SegmentArticleStore(config.segmentsHome())) {
+            ArticleMigration.migrate(source, target);
+
+            Files.write(config.articlesHome().resolve("2@host"), asList("Subject: Second", "", "Body 2"));
+            assertThat(ArticleMigration.migrate(source, target), equalTo(1));
+            assertThat(target.ids().size(), equalTo(2));
+        }
+    }
+}
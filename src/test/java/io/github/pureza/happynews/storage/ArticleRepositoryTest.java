@@ -1,8 +1,11 @@
 package io.github.pureza.happynews.storage;
 
 import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.TestConfig;
+import io.github.pureza.happynews.config.Config;
 import io.github.pureza.happynews.newsgroup.Article;
 import io.github.pureza.happynews.newsgroup.ArticleHeader;
+import io.github.pureza.happynews.newsgroup.Overview;
 import io.github.pureza.happynews.user.Editor;
 import org.junit.After;
 import org.junit.Before;
@@ -10,12 +13,19 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -177,6 +187,43 @@ public class ArticleRepositoryTest extends AbstractTest {
     }
 
 
+    @Test
+    public void aFailedPostLeavesNothingBehind() throws IOException {
+        Editor user = mockEditor("user");
+
+        // The log can't be written
+        Files.createDirectory(config.articleLog());
+
+        assertThat(repository.add(header(), "A perfect body", user), equalTo(false));
+        assertThat(Files.exists(user.getHome().resolve("1@host.org")), equalTo(false));
+        assertThat(Files.exists(config.articlesHome().resolve("1@host.org")), equalTo(false));
+        assertThat(repository.get("<1@host.org>"), is(nullValue()));
+    }
+
+
+    @Test
+    public void addIsCounted() throws IOException {
+        Editor user = mockEditor("user");
+
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Newsgroups", "happynews.users");
+        header.put("From", "<user@host.org>");
+        header.put("Subject", "Hello, world");
+        StorageMetrics metrics = StorageMetrics.get();
+        long writes = metrics.getArticleWrites().getCount();
+        long bytes = metrics.getArticleBytesWritten();
+        long homeFiles = metrics.getHomeFileCreates().getCount();
+        long syncs = metrics.getLogSyncs().getCount();
+
+        assertThat(repository.add(header, "A perfect body", user), equalTo(true));
+
+        assertThat(metrics.getArticleWrites().getCount() - writes, equalTo(1L));
+        assertThat(metrics.getArticleBytesWritten() - bytes, equalTo(repository.get("<1@host.org>").size()));
+        assertThat(metrics.getHomeFileCreates().getCount() - homeFiles, equalTo(1L));
+        assertThat(metrics.getLogSyncs().getCount() - syncs, equalTo(1L));
+    }
+
+
     @Test
     public void addAppendsArticleToArticlesMap() throws IOException {
         Editor user = mockEditor("user");
@@ -217,4 +264,311 @@ public class ArticleRepositoryTest extends AbstractTest {
                         "",
                         "A perfect body")));
     }
+
+
+    @Test
+    public void addStoresTheOverview() throws IOException {
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("From", "<user@host.org>");
+        header.put("Newsgroups", "happynews.users");
+        header.put("Subject", "Hello, world");
+        String body = "A perfect body\nIn two lines";
+
+        repository.add(header, body, user);
+
+        Overview overview = repository.getOverview("<1@host.org>");
+        assertThat(overview.getSubject(), equalTo("Hello, world"));
+        assertThat(overview.getFrom(), equalTo("<user@host.org>"));
+        assertThat(overview.getMessageId(), equalTo("<1@host.org>"));
+        assertThat(overview.getLines(), equalTo(2));
+        assertThat(overview.getBytes(), equalTo((int) Files.size(config.articlesHome().resolve("1@host.org"))));
+    }
+
+
+    @Test
+    public void overviewsAreReadFromTheArticleFilesAfterARestart() throws IOException {
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("From", "<user@host.org>");
+        header.put("Newsgroups", "happynews.users");
+        header.put("Subject", "Hello, world");
+        repository.add(header, "A perfect body", user);
+
+        ArticleRepository reloaded = new ArticleRepository(config);
+        assertThat(reloaded.getOverview("<1@host.org>"), equalTo(repository.getOverview("<1@host.org>")));
+    }
+
+
+    @Test
+    public void getOverviewReturnsNullForUnknownArticles() {
+        assertThat(repository.getOverview("<1@host.org>"), is(nullValue()));
+    }
+
+
+    @Test
+    public void articlesShareTheRepositoryCache() throws IOException {
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("From", "<user@host.org>");
+        header.put("Newsgroups", "happynews.users");
+        header.put("Subject", "Hello, world");
+        repository.add(header, "A perfect body", user);
+
+        repository.get("<1@host.org>").getBody();
+        repository.get("<1@host.org>").getBody();
+
+        assertThat(repository.cache().misses(), equalTo(1L));
+        assertThat(repository.cache().hits(), equalTo(1L));
+    }
+
+
+    @Test
+    public void addIndexesTheHeader() throws IOException {
+        Editor user = mockEditor("user");
+        ArticleHeader header = new ArticleHeader("");
+        header.put("From", "<user@host.org>");
+        header.put("Newsgroups", "happynews.users");
+        header.put("Subject", "Hello, world");
+        repository.add(header, "A perfect body", user);
+
+        assertThat(repository.isHeaderIndexed("Subject"), is(true));
+        assertThat(repository.findByHeader("Subject", "^Hello", asList("<1@host.org>")), equalTo(asList("<1@host.org>")));
+
+        // Existing articles are indexed at startup
+        ArticleRepository restarted = new ArticleRepository(config);
+        assertThat(restarted.findByHeader("subject", "world", asList("<1@host.org>")), equalTo(asList("<1@host.org>")));
+    }
+
+
+    @Test
+    public void articleNumbersContinueAfterARestart() throws IOException {
+        Files.write(config.articlesHome().resolve("7@host.org"), asList("Subject: Old", "", "Body"));
+        Editor user = mockEditor("user");
+
+        ArticleRepository repository = new ArticleRepository(config);
+        repository.add(header(), "A perfect body", user);
+
+        assertThat(repository.get("<8@host.org>"), is(notNullValue()));
+    }
+
+
+    @Test
+    public void addSkipsArticleNumbersThatAreTaken() throws IOException {
+        Editor user = mockEditor("user");
+
+        // Created behind the repository's back
+        Files.write(config.articlesHome().resolve("1@host.org"), asList("Subject: Old", "", "Body"));
+        ArticleHeader header = header();
+        repository.add(header, "A perfect body", user);
+
+        assertThat(header.get("Message-ID"), equalTo("<2@host.org>"));
+        assertThat(new String(Files.readAllBytes(config.articlesHome().resolve("1@host.org"))), equalTo("Subject: Old\n\nBody\n"));
+    }
+
+
+    @Test
+    public void concurrentPostsGetDistinctIds() throws Exception {
+        Editor user = mockEditor("user");
+        int threads = 8;
+        int posts = 25;
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> posters = new ArrayList<>();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < threads; i++) {
+            Thread poster = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < posts; j++) {
+                        ArticleHeader header = header();
+                        if (repository.add(header, "A perfect body", user)) {
+                            ids.add(header.get("Message-ID"));
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            poster.start();
+            posters.add(poster);
+        }
+
+        start.countDown();
+        for (Thread poster : posters) {
+            poster.join();
+        }
+
+        assertThat(ids.size(), equalTo(threads * posts));
+        for (String id : ids) {
+            assertThat(repository.get(id), is(notNullValue()));
+        }
+    }
+
+
+    @Test
+    public void lastArticleNumberIgnoresForeignIds() {
+        assertThat(ArticleRepository.lastArticleNumber(asList("<3@host>", "<12@host>", "<abc@host>", "<x>")), equalTo(12));
+        assertThat(ArticleRepository.lastArticleNumber(Collections.emptyList()), equalTo(0));
+    }
+
+
+    @Test
+    public void addLogsTheArticleWithItsNewsgroups() throws IOException {
+        Editor user = mockEditor("user");
+        ArticleHeader header = header();
+        header.put("Newsgroups", "happynews.users, happynews.dev");
+        repository.add(header, "A perfect body", user);
+
+        ArticleRepository restarted = new ArticleRepository(config);
+        assertThat(restarted.loggedPostings(), equalTo(Collections.singletonMap("<1@host.org>", asList("happynews.users", "happynews.dev"))));
+    }
+
+
+    @Test
+    public void articlesLostInACrashAreRestoredFromTheLog() throws IOException {
+        Editor user = mockEditor("user");
+        repository.add(header(), "A perfect body", user);
+        repository.add(header(), "Another body", user);
+        byte[] contents = Files.readAllBytes(config.articlesHome().resolve("1@host.org"));
+
+        // The files were never synced
+        Files.delete(config.articlesHome().resolve("1@host.org"));
+        Files.write(config.articlesHome().resolve("2@host.org"), new byte[0]);
+
+        ArticleRepository restarted = new ArticleRepository(config);
+        assertThat(Files.readAllBytes(config.articlesHome().resolve("1@host.org")), equalTo(contents));
+        assertThat(restarted.get("<1@host.org>").getBody(), equalTo("A perfect body"));
+        assertThat(restarted.get("<2@host.org>").getBody(), equalTo("Another body"));
+        assertThat(restarted.findByHeader("subject", "world", asList("<1@host.org>")), equalTo(asList("<1@host.org>")));
+    }
+
+
+    @Test
+    public void aCheckpointEmptiesTheLog() throws IOException {
+        Editor user = mockEditor("user");
+        repository.add(header(), "A perfect body", user);
+        repository.rotateLog();
+        repository.add(header(), "Another body", user);
+        assertThat(new ArticleRepository(config).loggedPostings().size(), equalTo(2));
+
+        repository.discardRotatedLog();
+        assertThat(new ArticleRepository(config).loggedPostings().keySet(), equalTo(Collections.singleton("<2@host.org>")));
+        assertThat(repository.logSize() > 0, is(true));
+    }
+
+
+    @Test
+    public void articlesCanBeStoredInSegments() throws IOException {
+        Config segments = new TestConfig(config).withArticleStorage(Config.ArticleStorage.SEGMENTS);
+        Editor user = mockEditor("user");
+        repository = new ArticleRepository(segments);
+        repository.add(header(), "A perfect body", user);
+
+        ArticleRepository restarted = new ArticleRepository(segments);
+        assertThat(restarted.get("<1@host.org>").getBody(), equalTo("A perfect body"));
+        assertThat(restarted.getOverview("<1@host.org>").getSubject(), equalTo("Hello, world"));
+        assertThat(restarted.findByHeader("subject", "world", asList("<1@host.org>")), equalTo(asList("<1@host.org>")));
+        assertThat(Files.exists(config.articlesHome().resolve("1@host.org")), is(false));
+    }
+
+
+    @Test
+    public void articlesLostFromTheSegmentsAreRestoredFromTheLog() throws IOException {
+        Config segments = new TestConfig(config).withArticleStorage(Config.ArticleStorage.SEGMENTS);
+        Editor user = mockEditor("user");
+        repository = new ArticleRepository(segments);
+        repository.add(header(), "A perfect body", user);
+
+        // The segment was never synced
+        Files.write(segments.segmentsHome().resolve("00000001.seg"), new byte[0]);
+
+        ArticleRepository restarted = new ArticleRepository(segments);
+        assertThat(restarted.get("<1@host.org>").getBody(), equalTo("A perfect body"));
+    }
+
+
+    @Test
+    public void loadArticlesIgnoresFilesWithInvalidIds() throws IOException {
+        Files.createFile(config.articlesHome().resolve("1@host"));
+        Files.createFile(config.articlesHome().resolve("garbage"));
+
+        assertThat(repository.loadArticles().keySet(), equalTo(Collections.singleton("<1@host>")));
+    }
+
+
+    @Test
+    public void anUpToDateSnapshotIsReadInsteadOfListingTheArticles() throws IOException {
+        Editor user = mockEditor("user");
+        repository.add(header(), "A perfect body", user);
+        repository.rotateLog();
+        repository.discardRotatedLog();
+        FileTime modified = FileTime.fromMillis(System.currentTimeMillis() - 10000);
+        Files.setLastModifiedTime(config.articlesHome(), modified);
+        assertThat(repository.writeSnapshot(), is(true));
+
+        // Not listed, so it goes unnoticed
+        Files.createFile(config.articlesHome().resolve("2@host.org"));
+        Files.setLastModifiedTime(config.articlesHome(), modified);
+
+        ArticleRepository restarted = new ArticleRepository(config);
+        assertThat(restarted.get("<1@host.org>").getBody(), equalTo("A perfect body"));
+        assertThat(restarted.get("<2@host.org>"), is(nullValue()));
+    }
+
+
+    @Test
+    public void articlesMissingFromAStaleSnapshotAreFoundInTheBackground() throws Exception {
+        Files.write(config.articlesHome().resolve("7@host.org"), asList("Subject: Old", "", "Body"));
+
+        ArticleRepository restarted = new ArticleRepository(config);
+        restarted.awaitScan();
+        assertThat(restarted.get("<7@host.org>"), is(notNullValue()));
+        assertThat(restarted.findByHeader("subject", "Old", asList("<7@host.org>")), equalTo(asList("<7@host.org>")));
+    }
+
+
+    @Test
+    public void articlesThatAreGoneAreForgottenInTheBackground() throws Exception {
+        Editor user = mockEditor("user");
+        repository.add(header(), "A perfect body", user);
+        repository.rotateLog();
+        repository.discardRotatedLog();
+        repository.writeSnapshot();
+        Files.delete(config.articlesHome().resolve("1@host.org"));
+
+        ArticleRepository restarted = new ArticleRepository(config);
+        restarted.awaitScan();
+        assertThat(restarted.get("<1@host.org>"), is(nullValue()));
+    }
+
+
+    @Test
+    public void headersCanBeIndexedInTheBackground() throws Exception {
+        Editor user = mockEditor("user");
+        repository.add(header(), "A perfect body", user);
+
+        Config background = new TestConfig(config).withIndexInBackground(true);
+
+        ArticleRepository restarted = new ArticleRepository(background);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!restarted.isHeaderIndexed("Subject") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(restarted.isHeaderIndexed("Subject"), is(true));
+        assertThat(restarted.findByHeader("subject", "world", asList("<1@host.org>")), equalTo(asList("<1@host.org>")));
+    }
+
+
+    /**
+     * Creates a valid header
+     */
+    private ArticleHeader header() {
+        ArticleHeader header = new ArticleHeader("");
+        header.put("From", "<user@host.org>");
+        header.put("Newsgroups", "happynews.users");
+        header.put("Subject", "Hello, world");
+        return header;
+    }
 }
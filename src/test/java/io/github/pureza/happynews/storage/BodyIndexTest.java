@@ -0,0 +1,148 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.newsgroup.Newsgroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BodyIndexTest extends AbstractTest {
+
+    private BodyIndex index;
+
+    private Newsgroup group;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        index = new BodyIndex();
+        group = new Newsgroup("happynews.users");
+        index.add(group, 1, "The quick brown fox");
+        index.add(group, 2, "jumps over the lazy dog");
+        index.add(group, 3, "The QUICK red fox\nsleeps");
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void candidatesContainAllTheTrigramsOfTheLiterals() {
+        assertThat(index.candidates(group, "quick"), equalTo(new int[] { 1, 3 }));
+        assertThat(index.candidates(group, "lazy"), equalTo(new int[] { 2 }));
+        assertThat(index.candidates(group, "fox.*sleeps"), equalTo(new int[] { 3 }));
+    }
+
+
+    @Test
+    public void candidatesIgnoreCase() {
+        assertThat(index.candidates(group, "(?i)QUICK"), is(nullValue()));
+        assertThat(index.candidates(group, "Quick"), equalTo(new int[] { 1, 3 }));
+    }
+
+
+    @Test
+    public void candidatesAreEmptyIfATrigramIsMissing() {
+        assertThat(index.candidates(group, "quick brown cat"), equalTo(new int[0]));
+        assertThat(index.candidates(group, "zebra"), equalTo(new int[0]));
+    }
+
+
+    @Test
+    public void candidatesAreNullIfTheIndexCantBeUsed() {
+        assertThat(index.candidates(group, "fox|dog"), is(nullValue()));
+        assertThat(index.candidates(group, ".*"), is(nullValue()));
+        assertThat(index.candidates(group, "ab"), is(nullValue()));
+        assertThat(index.candidates(new Newsgroup("happynews.dev"), "quick"), is(nullValue()));
+    }
+
+
+    @Test
+    public void articlesIndexedOutOfOrderAreKeptSorted() {
+        index.add(group, 5, "quick");
+        index.add(group, 4, "quick");
+
+        assertThat(index.candidates(group, "quick"), equalTo(new int[] { 1, 3, 4, 5 }));
+    }
+
+
+    @Test
+    public void buildIndexesAllTheArticles() {
+        Newsgroup dev = new Newsgroup("happynews.dev", new Date(), asList("<1@host>", "<2@host>", "<3@host>"));
+        Map<String, String> bodies = new HashMap<>();
+        bodies.put("<1@host>", "Hello, world");
+        bodies.put("<3@host>", "Goodbye, world");
+
+        BodyIndex index = new BodyIndex();
+        index.build(asList(dev, new Newsgroup("empty", new Date(), emptyList())), bodies::get);
+
+        assertThat(index.candidates(dev, "world"), equalTo(new int[] { 1, 3 }));
+        assertThat(index.candidates(dev, "Hello"), equalTo(new int[] { 1 }));
+        assertThat(index.terms(), equalTo(17L));
+    }
+
+
+    @Test
+    public void aParallelBuildAddsTheArticlesInOrder() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= BodyIndex.BUILD_BATCH + 100; i++) {
+            ids.add("<" + i + "@host>");
+        }
+        Newsgroup big = new Newsgroup("happynews.big", new Date(), ids);
+
+        BodyIndex index = new BodyIndex();
+        index.build(singletonList(big), id -> id.endsWith("0@host>") ? "needle" : "haystack", 4, 2);
+
+        int[] expected = ids.stream().filter(id -> id.endsWith("0@host>")).mapToInt(ArticleRepository::articleNumber).toArray();
+        assertThat(index.candidates(big, "needle"), equalTo(expected));
+        assertThat(index.candidates(big, "haystack").length, equalTo(ids.size() - expected.length));
+    }
+
+
+    @Test
+    public void requiredLiteralsSplitOnMetacharacters() {
+        assertThat(BodyIndex.requiredLiterals("foo.bar"), equalTo(asList("foo", "bar")));
+        assertThat(BodyIndex.requiredLiterals("^hello\\sworld$"), equalTo(asList("hello", "world")));
+        assertThat(BodyIndex.requiredLiterals("abc[xyz]def(ghi)jkl"), equalTo(asList("abc", "def", "jkl")));
+        assertThat(BodyIndex.requiredLiterals("a\\.b\\.c"), equalTo(singletonList("a.b.c")));
+        assertThat(BodyIndex.requiredLiterals("[)]abc"), equalTo(singletonList("abc")));
+    }
+
+
+    @Test
+    public void requiredLiteralsDropOptionalCharacters() {
+        assertThat(BodyIndex.requiredLiterals("colou?r"), equalTo(singletonList("colo")));
+        assertThat(BodyIndex.requiredLiterals("helloo*"), equalTo(singletonList("hello")));
+        assertThat(BodyIndex.requiredLiterals("hellox{0,2}world"), equalTo(asList("hello", "world")));
+        assertThat(BodyIndex.requiredLiterals("hello+world"), equalTo(asList("hello", "world")));
+        assertThat(BodyIndex.requiredLiterals("hello*?world"), equalTo(asList("hell", "world")));
+    }
+
+
+    @Test
+    public void requiredLiteralsGiveUpOnWhatTheyDontUnderstand() {
+        assertThat(BodyIndex.requiredLiterals("foo|bar"), is(nullValue()));
+        assertThat(BodyIndex.requiredLiterals("(?i)foo"), is(nullValue()));
+        assertThat(BodyIndex.requiredLiterals("\\Qfoo\\E"), is(nullValue()));
+        assertThat(BodyIndex.requiredLiterals("foo\\1"), is(nullValue()));
+        assertThat(BodyIndex.requiredLiterals("foo[bar"), is(nullValue()));
+    }
+}
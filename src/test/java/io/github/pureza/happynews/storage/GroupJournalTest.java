@@ -0,0 +1,127 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupJournalTest extends AbstractTest {
+
+    private Path file;
+
+    private GroupJournal journal;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        file = config.groupsJournal();
+        journal = new GroupJournal(file);
+    }
+
+
+    @After
+    public void tearDown() {
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        super.tearDown();
+    }
+
+
+    @Test
+    public void readReturnsTheAppendedRecords() throws IOException {
+        journal.append("G", "group1", "1000");
+        journal.append("A", "group1", "1", "<1@host>");
+
+        List<String[]> records = journal.read();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(1), equalTo(new String[] { "A", "group1", "1", "<1@host>" }));
+        assertThat(journal.records(), equalTo(2));
+    }
+
+
+    @Test
+    public void readIgnoresAPartialRecord() throws IOException {
+        journal.append("G", "group1", "1000");
+        journal.close();
+        Files.write(file, "A\tgroup1\t1\t<1@ho".getBytes(), APPEND);
+
+        assertThat(journal.read().size(), equalTo(1));
+    }
+
+
+    @Test
+    public void appendingAfterACrashTruncatesThePartialRecord() throws IOException {
+        journal.append("G", "group1", "1000");
+        journal.close();
+        Files.write(file, "A\tgroup1\t1\t<1@ho".getBytes(), APPEND);
+
+        GroupJournal reopened = new GroupJournal(file);
+        reopened.append("A", "group1", "1", "<2@host>");
+        reopened.close();
+
+        List<String[]> records = reopened.read();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(1), equalTo(new String[] { "A", "group1", "1", "<2@host>" }));
+    }
+
+
+    @Test
+    public void rotatingAfterACrashTruncatesThePartialRecords() throws IOException {
+        journal.append("G", "group1", "1000");
+        journal.rotate();
+        journal.append("A", "group1", "1", "<1@host>");
+        journal.close();
+        Path rotated = file.resolveSibling(file.getFileName() + ".old");
+        Files.write(rotated, "A\tgro".getBytes(), APPEND);
+        Files.write(file, "A\tgroup1\t2".getBytes(), APPEND);
+
+        GroupJournal reopened = new GroupJournal(file);
+        reopened.rotate();
+
+        List<String[]> records = reopened.read();
+        assertThat(records.size(), equalTo(2));
+        assertThat(records.get(1), equalTo(new String[] { "A", "group1", "1", "<1@host>" }));
+    }
+
+
+    @Test
+    public void rotatedRecordsAreReadFirst() throws IOException {
+        journal.append("A", "group1", "1", "<1@host>");
+        journal.rotate();
+        journal.append("A", "group1", "2", "<2@host>");
+
+        List<String[]> records = journal.read();
+        assertThat(records.get(0)[3], equalTo("<1@host>"));
+        assertThat(records.get(1)[3], equalTo("<2@host>"));
+        assertThat(journal.records(), equalTo(1));
+    }
+
+
+    @Test
+    public void rotateKeepsTheRecordsOfAFailedRotation() throws IOException {
+        journal.append("A", "group1", "1", "<1@host>");
+        journal.rotate();
+        journal.append("A", "group1", "2", "<2@host>");
+        journal.rotate();
+
+        assertThat(Files.exists(file), is(false));
+        assertThat(journal.read().size(), equalTo(2));
+
+        journal.discardRotated();
+        assertThat(journal.read().size(), equalTo(0));
+    }
+}
@@ -14,11 +14,14 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.security.acl.Group;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.pureza.happynews.Tests.date;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.joining;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -110,6 +113,50 @@ public class GroupRepositoryTest extends AbstractTest {
     }
 
 
+    @Test
+    public void addCreatesEachGroupOnceUnderContention() throws InterruptedException {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> adders = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread adder = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int g = 0; g < 100; g++) {
+                    if (repository.add("group" + g)) {
+                        created.incrementAndGet();
+                    }
+                }
+            });
+            adder.start();
+            adders.add(adder);
+        }
+
+        start.countDown();
+        for (Thread adder : adders) {
+            adder.join();
+        }
+
+        assertThat(created.get(), equalTo(100));
+        assertThat(repository.groups().size(), equalTo(100));
+    }
+
+
+    @Test
+    public void groupsReturnsASnapshot() {
+        repository.add("group1");
+        Map<String, Newsgroup> snapshot = repository.groups();
+        repository.add("group2");
+
+        assertThat(snapshot.keySet(), equalTo(Collections.singleton("group1")));
+        assertThat(repository.groups().size(), equalTo(2));
+    }
+
+
     @Test
     public void writeGroupsWritesEmptyFileWhenThereAreNoGroups() {
         repository.writeGroups();
@@ -127,4 +174,167 @@ public class GroupRepositoryTest extends AbstractTest {
         repository.writeGroups();
         assertThat(new HashSet<>(repository.loadGroups()), is(new HashSet<>(groups)));
     }
+
+
+    @Test
+    public void writeGroupsIsCounted() throws IOException {
+        Newsgroup group = new Newsgroup("group1", new Date(), asList("<1@host.com>", "<2@example.org>"));
+        GroupRepository repository = new GroupRepository(config, singletonList(group));
+        StorageMetrics metrics = StorageMetrics.get();
+        long writes = metrics.getGroupWrites().getCount();
+        long bytes = metrics.getGroupBytesWritten();
+
+        assertThat(repository.writeGroups(), is(true));
+
+        assertThat(metrics.getGroupWrites().getCount() - writes, equalTo(1L));
+        assertThat(metrics.getGroupBytesWritten() - bytes,
+                equalTo(Files.size(config.groupsFile()) + Files.size(config.groupsSnapshot())));
+    }
+
+
+    @Test
+    public void changesSurviveARestartBeforeTheGroupsAreWritten() {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        Newsgroup group1 = repository.get("group1");
+        assertThat(repository.addArticle(group1, "<1@host.com>"), equalTo(1));
+        assertThat(repository.addArticle(group1, "<2@host.com>"), equalTo(2));
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").articles(), equalTo(asList("<1@host.com>", "<2@host.com>")));
+        assertThat(restarted.get("group1").getDateCreated(), equalTo(group1.getDateCreated()));
+        assertThat(Files.exists(config.groupsFile()), is(false));
+    }
+
+
+    @Test
+    public void writeGroupsEmptiesTheJournal() throws IOException {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        repository.addArticle(repository.get("group1"), "<1@host.com>");
+        repository.writeGroups();
+
+        assertThat(Files.exists(config.groupsJournal()), is(false));
+        repository.addArticle(repository.get("group1"), "<2@host.com>");
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").articles(), equalTo(asList("<1@host.com>", "<2@host.com>")));
+    }
+
+
+    @Test
+    public void replaySkipsArticlesThatAreAlreadyInTheGroupsFile() throws IOException {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        repository.addArticle(repository.get("group1"), "<1@host.com>");
+        byte[] journal = Files.readAllBytes(config.groupsJournal());
+        repository.writeGroups();
+
+        // As if the server stopped right after writing the groups file
+        Files.write(config.groupsJournal().resolveSibling(config.groupsJournal().getFileName() + ".old"), journal);
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").articles(), equalTo(singletonList("<1@host.com>")));
+    }
+
+
+    @Test
+    public void replayOrdersTheArticlesByNumber() throws IOException {
+        Files.write(config.groupsJournal(), asList(
+                "G\tgroup1\t1000",
+                "A\tgroup1\t2\t<2@host.com>",
+                "A\tgroup1\t1\t<1@host.com>",
+                "A\tunknown\t1\t<3@host.com>",
+                "invalid"));
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").articles(), equalTo(asList("<1@host.com>", "<2@host.com>")));
+        assertThat(restarted.get("group1").getDateCreated(), equalTo(new Date(1000)));
+        assertThat(restarted.get("unknown"), is(nullValue()));
+    }
+
+
+    @Test
+    public void replayStopsAtAMissingRecord() throws IOException {
+        Files.write(config.groupsJournal(), asList(
+                "G\tgroup1\t1000",
+                "A\tgroup1\t1\t<1@host.com>",
+                "A\tgroup1\t3\t<3@host.com>",
+                "A\tgroup1\t4\t<4@host.com>"));
+
+        // Article 4 isn't renumbered as 2
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").articles(), equalTo(singletonList("<1@host.com>")));
+
+        // The articles after the gap come back from the article log
+        Map<String, List<String>> postings = new LinkedHashMap<>();
+        postings.put("<2@host.com>", singletonList("group1"));
+        postings.put("<3@host.com>", singletonList("group1"));
+        postings.put("<4@host.com>", singletonList("group1"));
+        restarted.recover(postings);
+        assertThat(restarted.get("group1").articles(),
+                equalTo(asList("<1@host.com>", "<2@host.com>", "<3@host.com>", "<4@host.com>")));
+    }
+
+
+    @Test
+    public void compactIfNeededWritesNothingUntilTheJournalIsLargeEnough() {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        repository.compactIfNeeded();
+        assertThat(Files.exists(config.groupsFile()), is(false));
+
+        Newsgroup group1 = repository.get("group1");
+        for (int i = 1; i < GroupRepository.COMPACTION_THRESHOLD; i++) {
+            repository.addArticle(group1, "<" + i + "@host.com>");
+        }
+        repository.compactIfNeeded();
+
+        assertThat(Files.exists(config.groupsFile()), is(true));
+        assertThat(Files.exists(config.groupsJournal()), is(false));
+        assertThat(repository.loadGroups().get(0).getLastArticleNum(), equalTo(GroupRepository.COMPACTION_THRESHOLD - 1));
+    }
+
+
+    @Test
+    public void writeGroupsWritesASnapshotWithThePostingDates() {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        Newsgroup group1 = repository.get("group1");
+        repository.addArticle(group1, "<1@host.com>");
+        repository.addArticle(group1, "<2@host.com>");
+        repository.writeGroups();
+        assertThat(Files.exists(config.groupsSnapshot()), is(true));
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1"), equalTo(group1));
+        assertThat(restarted.get("group1").isDated(), is(true));
+        assertThat(restarted.get("group1").postingTimes(2), equalTo(group1.postingTimes(2)));
+    }
+
+
+    @Test
+    public void theGroupsFileIsReadIfItChangedSinceTheSnapshot() throws IOException {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        repository.writeGroups();
+
+        Files.write(config.groupsFile(), asList("group2\t1000\t<1@host.com>"));
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.groups().keySet(), equalTo(Collections.singleton("group2")));
+        assertThat(restarted.get("group2").isDated(), is(false));
+    }
+
+
+    @Test
+    public void journaledPostingDatesSurviveARestart() {
+        repository = new GroupRepository(config);
+        repository.add("group1");
+        Newsgroup group1 = repository.get("group1");
+        repository.addArticle(group1, "<1@host.com>");
+
+        GroupRepository restarted = new GroupRepository(config);
+        assertThat(restarted.get("group1").postingTimes(1), equalTo(group1.postingTimes(1)));
+    }
 }
@@ -0,0 +1,119 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.newsgroup.ArticleHeader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HeaderIndexTest extends AbstractTest {
+
+    private HeaderIndex index;
+
+    private final List<String> all = asList("<1@host>", "<2@host>", "<3@host>");
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        index = new HeaderIndex();
+        index.add("<1@host>", header("Hello, world", "<john@example.org>"));
+        index.add("<2@host>", header("Hello", "<jane@example.org>"));
+        index.add("<3@host>", header("Re: Hello, world", "<john@example.org>"));
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void indexesTheMostSearchedFields() {
+        assertThat(index.isIndexed("Subject"), is(true));
+        assertThat(index.isIndexed("from"), is(true));
+        assertThat(index.isIndexed("Message-ID"), is(true));
+        assertThat(index.isIndexed("Date"), is(false));
+        assertThat(index.size("subject"), equalTo(3));
+        assertThat(index.size("references"), equalTo(0));
+    }
+
+
+    @Test
+    public void findsExactValues() {
+        assertThat(index.find("subject", "^Hello$", all), equalTo(singletonList("<2@host>")));
+        assertThat(index.find("subject", "^Goodbye$", all), equalTo(emptyList()));
+    }
+
+
+    @Test
+    public void findsPrefixes() {
+        assertThat(index.find("subject", "^Hello", all), equalTo(asList("<2@host>", "<1@host>")));
+        assertThat(index.find("subject", "^Hello\\,", all), equalTo(singletonList("<1@host>")));
+    }
+
+
+    @Test
+    public void findsRegularExpressions() {
+        assertThat(index.find("subject", "world", all), equalTo(asList("<1@host>", "<3@host>")));
+        assertThat(index.find("from", "j.*n@", all), equalTo(asList("<1@host>", "<3@host>")));
+        assertThat(index.find("subject", "^Re:", all), equalTo(singletonList("<3@host>")));
+    }
+
+
+    @Test
+    public void onlyFindsTheGivenArticles() {
+        assertThat(index.find("subject", "^Hello", asList("<1@host>", "<3@host>")), equalTo(singletonList("<1@host>")));
+        assertThat(index.find("subject", "world", singletonList("<3@host>")), equalTo(singletonList("<3@host>")));
+    }
+
+
+    @Test
+    public void anchorsMatchEveryLineOfFoldedValues() {
+        index.add("<4@host>", new ArticleHeader("Subject: First line\n Second line"));
+
+        List<String> ids = asList("<1@host>", "<4@host>");
+        assertThat(index.find("subject", "^ Second", ids), equalTo(singletonList("<4@host>")));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnFieldsThatAreNotIndexed() {
+        index.find("date", "^Mon", all);
+    }
+
+
+    @Test
+    public void parsesAnchoredLiterals() {
+        assertThat(HeaderIndex.Query.parse("^abc").literal, equalTo("abc"));
+        assertThat(HeaderIndex.Query.parse("^abc").exact, is(false));
+        assertThat(HeaderIndex.Query.parse("^abc$").exact, is(true));
+        assertThat(HeaderIndex.Query.parse("^a\\.b\\$").literal, equalTo("a.b$"));
+        assertThat(HeaderIndex.Query.parse("abc"), is(nullValue()));
+        assertThat(HeaderIndex.Query.parse("^a.c"), is(nullValue()));
+        assertThat(HeaderIndex.Query.parse("^a\\sc"), is(nullValue()));
+    }
+
+
+    /**
+     * Creates a header with the given subject and sender
+     */
+    private ArticleHeader header(String subject, String from) {
+        ArticleHeader header = new ArticleHeader("");
+        header.put("Subject", subject);
+        header.put("From", from);
+        header.put("Newsgroups", "happynews.users");
+        return header;
+    }
+}
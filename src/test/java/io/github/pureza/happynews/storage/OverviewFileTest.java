@@ -0,0 +1,89 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.newsgroup.ArticleHeader;
+import io.github.pureza.happynews.newsgroup.Overview;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class OverviewFileTest extends AbstractTest {
+
+    private OverviewFile file;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Files.createDirectories(config.overviewHome());
+    }
+
+
+    @After
+    public void tearDown() {
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } catch (Exception ex) {
+            throw new AssertionError(ex);
+        }
+
+        super.tearDown();
+    }
+
+
+    @Test
+    public void postsDontMapTheFilesAgainEveryTime() throws Exception {
+        file = OverviewFile.open(config.overviewHome(), "group1");
+
+        // Read every article right after it's posted, until the data file
+        // grew by a few steps
+        int num = 0;
+        long size = 0;
+        while (size < 3 * OverviewFile.REMAP_STEP) {
+            num++;
+            file.append(num, overview(num));
+            size += 4 + overview(num).getRecordSize();
+            assertThat(file.get(num), equalTo(overview(num)));
+            assertThat(file.contains(num), is(true));
+        }
+
+        assertThat(file.remaps() <= 4, is(true));
+        assertThat(file.get(1), equalTo(overview(1)));
+    }
+
+
+    @Test
+    public void recordsAreReadAcrossTheWindowsOfTheDataFile() throws Exception {
+        file = OverviewFile.open(config.overviewHome(), "group1", 1024);
+        for (int i = 1; i <= 500; i++) {
+            file.append(i, overview(i));
+        }
+
+        for (int i = 1; i <= 500; i++) {
+            assertThat(file.get(i), equalTo(overview(i)));
+        }
+
+        file.close();
+        file = OverviewFile.open(config.overviewHome(), "group1", 1024);
+        for (int i = 500; i >= 1; i--) {
+            assertThat(file.get(i), equalTo(overview(i)));
+        }
+    }
+
+
+    /**
+     * Creates the overview of the article with the given number
+     */
+    private Overview overview(int n) {
+        ArticleHeader header = new ArticleHeader("Subject: Article " + n + "\nFrom: <user@host>\nDate: today\nMessage-ID: <" + n + "@host>");
+        return Overview.of(header, 100 + n, n);
+    }
+}
@@ -0,0 +1,186 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.newsgroup.ArticleHeader;
+import io.github.pureza.happynews.newsgroup.Newsgroup;
+import io.github.pureza.happynews.newsgroup.Overview;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class OverviewRepositoryTest extends AbstractTest {
+
+    private OverviewRepository repository;
+
+    private Newsgroup group;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        repository = new OverviewRepository(config);
+        group = mockNewsgroup("group1", "<1@host>", "<2@host>", "<3@host>");
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void constructorCreatesTheOverviewFolder() {
+        assertThat(Files.isDirectory(config.overviewHome()), equalTo(true));
+    }
+
+
+    @Test
+    public void getReturnsNullForArticlesWithoutOverview() {
+        assertThat(repository.get(group, 1), is(nullValue()));
+        assertThat(repository.get(group, 0), is(nullValue()));
+    }
+
+
+    @Test
+    public void getReturnsTheOverviewsAdded() {
+        repository.add(group, 1, overview(1));
+        repository.add(group, 2, overview(2));
+
+        assertThat(repository.get(group, 1), equalTo(overview(1)));
+        assertThat(repository.get(group, 2), equalTo(overview(2)));
+        assertThat(repository.get(group, 3), is(nullValue()));
+    }
+
+
+    @Test
+    public void overviewsMayBeAddedOutOfOrder() {
+        repository.add(group, 3, overview(3));
+        assertThat(repository.get(group, 3), equalTo(overview(3)));
+
+        repository.add(group, 1, overview(1));
+        assertThat(repository.get(group, 1), equalTo(overview(1)));
+        assertThat(repository.get(group, 2), is(nullValue()));
+        assertThat(repository.get(group, 3), equalTo(overview(3)));
+    }
+
+
+    @Test
+    public void overviewsArePersisted() {
+        repository.add(group, 1, overview(1));
+        repository.add(group, 2, overview(2));
+
+        OverviewRepository reopened = new OverviewRepository(config);
+        assertThat(reopened.get(group, 1), equalTo(overview(1)));
+        assertThat(reopened.get(group, 2), equalTo(overview(2)));
+    }
+
+
+    @Test
+    public void recoverRebuildsMissingEntries() {
+        repository.add(group, 2, overview(2));
+
+        Map<String, Overview> overviews = new HashMap<>();
+        overviews.put("<1@host>", overview(1));
+        overviews.put("<3@host>", overview(3));
+        repository.recover(singletonList(group), overviews::get);
+
+        assertThat(repository.get(group, 1), equalTo(overview(1)));
+        assertThat(repository.get(group, 2), equalTo(overview(2)));
+        assertThat(repository.get(group, 3), equalTo(overview(3)));
+    }
+
+
+    @Test
+    public void recoverRebuildsADeletedIndexFromTheData() throws Exception {
+        repository.add(group, 1, overview(1));
+        repository.add(group, 2, overview(2));
+        repository.add(group, 3, overview(3));
+        Files.delete(config.overviewHome().resolve("group1.idx"));
+
+        OverviewRepository reopened = new OverviewRepository(config);
+        reopened.recover(singletonList(group), id -> { throw new AssertionError("Must not read " + id); });
+
+        assertThat(reopened.get(group, 1), equalTo(overview(1)));
+        assertThat(reopened.get(group, 2), equalTo(overview(2)));
+        assertThat(reopened.get(group, 3), equalTo(overview(3)));
+    }
+
+
+    @Test
+    public void truncatedFilesAreRepaired() throws Exception {
+        repository.add(group, 1, overview(1));
+        repository.add(group, 2, overview(2));
+
+        // Chop the last byte of both files, as if we crashed while writing
+        truncate(config.overviewHome().resolve("group1.dat"), 1);
+        truncate(config.overviewHome().resolve("group1.idx"), 1);
+
+        OverviewRepository reopened = new OverviewRepository(config);
+        assertThat(reopened.get(group, 1), equalTo(overview(1)));
+        assertThat(reopened.get(group, 2), is(nullValue()));
+
+        reopened.recover(singletonList(group), id -> id.equals("<2@host>") ? overview(2) : null);
+        assertThat(reopened.get(group, 2), equalTo(overview(2)));
+
+        reopened.add(group, 3, overview(3));
+        assertThat(new OverviewRepository(config).get(group, 3), equalTo(overview(3)));
+    }
+
+
+    @Test
+    public void groupsHaveIndependentFiles() {
+        Newsgroup other = mockNewsgroup("group2", "<4@host>");
+        repository.add(group, 1, overview(1));
+        repository.add(other, 1, overview(4));
+
+        assertThat(repository.get(group, 1), equalTo(overview(1)));
+        assertThat(repository.get(other, 1), equalTo(overview(4)));
+    }
+
+
+    @Test
+    public void readsSeeArticlesAddedAfterTheFilesWereMapped() {
+        for (int i = 1; i <= 100; i++) {
+            repository.add(group, i, overview(i));
+            for (int j = 1; j <= i; j += 10) {
+                assertThat(repository.get(group, j), equalTo(overview(j)));
+            }
+        }
+
+        assertThat(asList(repository.get(group, 99), repository.get(group, 100)), equalTo(asList(overview(99), overview(100))));
+    }
+
+
+    /**
+     * Creates the overview of the article with the given number
+     */
+    private Overview overview(int n) {
+        ArticleHeader header = new ArticleHeader("Subject: Article " + n + "\nFrom: <user@host>\nDate: today\nMessage-ID: <" + n + "@host>");
+        return Overview.of(header, 100 + n, n);
+    }
+
+
+    /**
+     * Removes the given number of bytes from the end of a file
+     */
+    private void truncate(Path path, int bytes) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - bytes);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class ParallelScanTest extends AbstractTest {
+
+    private List<Integer> items;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+    }
+
+
+    @After
+    public void tearDown() {
+        super.tearDown();
+    }
+
+
+    @Test
+    public void forEachAppliesTheActionToEveryItem() {
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        try (ParallelScan scan = new ParallelScan("Test", items.size(), 4, 4)) {
+            scan.forEach(items, seen::add);
+            assertThat(scan.done(), equalTo((long) items.size()));
+        }
+
+        assertThat(seen.size(), equalTo(items.size()));
+    }
+
+
+    @Test
+    public void forEachRunsAtMostOpenFilesActionsAtOnce() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (ParallelScan scan = new ParallelScan("Test", items.size(), 8, 2)) {
+            scan.forEach(items, item -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.yield();
+                running.decrementAndGet();
+            });
+        }
+
+        assertThat(maxRunning.get() <= 2, is(true));
+    }
+
+
+    @Test
+    public void forEachCanBeCalledForSeveralBatches() {
+        AtomicInteger count = new AtomicInteger();
+        try (ParallelScan scan = new ParallelScan("Test", items.size() * 2, 2, 2)) {
+            scan.forEach(items, item -> count.incrementAndGet());
+            scan.forEach(items, item -> count.incrementAndGet());
+            assertThat(scan.done(), equalTo((long) items.size() * 2));
+        }
+
+        assertThat(count.get(), equalTo(items.size() * 2));
+    }
+}
@@ -0,0 +1,223 @@
+package io.github.pureza.happynews.storage;
+
+import io.github.pureza.happynews.AbstractTest;
+import io.github.pureza.happynews.newsgroup.Article;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SegmentArticleStoreTest extends AbstractTest {
+
+    private Path home;
+
+    private SegmentArticleStore store;
+
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        home = config.segmentsHome();
+        store = new SegmentArticleStore(home);
+    }
+
+
+    @After
+    public void tearDown() {
+        try {
+            store.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        super.tearDown();
+    }
+
+
+    @Test
+    public void storedArticlesCanBeRead() throws IOException {
+        store.create("<1@host>", article("First", "The first body"), 1000);
+        store.create("<2@host>", article("Second", "The second body"), 2000);
+
+        Article article = store.article("<2@host>", null);
+        assertThat(article.getHeader().get("Subject"), equalTo("Second"));
+        assertThat(article.getBody(), equalTo("The second body"));
+        assertThat(article.getDatePosted(), equalTo(new Date(2000)));
+        assertThat(article.readOverview().getBytes(), equalTo(article("Second", "The second body").length));
+        assertThat(store.size("<1@host>"), equalTo((long) article("First", "The first body").length));
+    }
+
+
+    @Test
+    public void writeBodySendsOnlyTheBodyOfTheArticle() throws IOException {
+        store.create("<1@host>", article("First", "The first body"), 1000);
+        store.create("<2@host>", article("Second", "The second body"), 2000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.article("<1@host>", null).writeBody(Channels.newChannel(out));
+        assertThat(out.toString(), equalTo("The first body\n"));
+    }
+
+
+    @Test
+    public void unknownArticlesAreNotStored() {
+        assertThat(store.article("<1@host>", null), is(nullValue()));
+        assertThat(store.size("<1@host>"), equalTo(-1L));
+    }
+
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void createFailsIfTheArticleExists() throws IOException {
+        store.create("<1@host>", article("First", "The first body"));
+        store.create("<1@host>", article("Again", "Another body"));
+    }
+
+
+    @Test
+    public void articlesAreFoundAfterReopening() throws IOException {
+        store.create("<1@host>", article("First", "The first body"), 1000);
+        store.create("<2@host>", article("Second", "The second body"), 2000);
+        store.replace("<1@host>", article("Replaced", "The new body"));
+        store.create("<3@host>", article("Third", "The third body"), 3000);
+        store.delete("<3@host>");
+        store.close();
+
+        SegmentArticleStore reopened = new SegmentArticleStore(home);
+        assertThat(new HashSet<>(reopened.ids()), equalTo(new HashSet<>(asList("<1@host>", "<2@host>"))));
+        assertThat(reopened.article("<1@host>", null).getBody(), equalTo("The new body"));
+        assertThat(reopened.article("<2@host>", null).getDatePosted(), equalTo(new Date(2000)));
+        reopened.close();
+    }
+
+
+    @Test
+    public void aNewSegmentIsStartedWhenTheCurrentOneIsFull() throws IOException {
+        store.close();
+        store = new SegmentArticleStore(home, 100, SegmentArticleStore.MAX_MAPPED_SEGMENTS);
+        for (int i = 1; i <= 3; i++) {
+            store.create("<" + i + "@host>", article("Article " + i, "Body " + i));
+        }
+        store.close();
+
+        assertThat(Files.list(home).count(), equalTo(3L));
+        store = new SegmentArticleStore(home, 100, SegmentArticleStore.MAX_MAPPED_SEGMENTS);
+        assertThat(store.article("<3@host>", null).getBody(), equalTo("Body 3"));
+    }
+
+
+    @Test
+    public void anIncompleteRecordIsTruncated() throws IOException {
+        store.create("<1@host>", article("First", "The first body"));
+        store.create("<2@host>", article("Second", "The second body"));
+        store.close();
+
+        Path segment = home.resolve("00000001.seg");
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        store = new SegmentArticleStore(home);
+        assertThat(store.ids(), equalTo(Collections.singletonList("<1@host>")));
+
+        // Appends continue after the last complete record
+        store.create("<2@host>", article("Second", "The second body"));
+        store.close();
+        store = new SegmentArticleStore(home);
+        assertThat(store.article("<2@host>", null).getBody(), equalTo("The second body"));
+    }
+
+
+    @Test
+    public void articlesAreReadFromTheMappedSegment() throws IOException {
+        store.create("<1@host>", article("First", "The first body"));
+        assertThat(store.mappedSegments(), equalTo(0));
+
+        assertThat(store.article("<1@host>", null).getBody(), equalTo("The first body"));
+        assertThat(store.mappedSegments(), equalTo(1));
+
+        // Not mapped yet, so read from the file
+        store.create("<2@host>", article("Second", "The second body"));
+        assertThat(store.article("<2@host>", null).getHeader().get("Subject"), equalTo("Second"));
+        assertThat(store.article("<2@host>", null).getBody(), equalTo("The second body"));
+    }
+
+
+    @Test
+    public void mappedArticlesAreReadLikeArticleFiles() throws IOException {
+        byte[] contents = "Subject: Lines\r\n\r\nFirst\r\n\r\nThird\r\n".getBytes();
+        Files.write(config.articlesHome().resolve("1@host"), contents);
+        store.create("<1@host>", contents);
+
+        Article file = new FileArticleStore(config.articlesHome()).article("<1@host>", null);
+        Article mapped = store.article("<1@host>", null);
+        assertThat(mapped.getBody(), equalTo(file.getBody()));
+        assertThat(mapped.getHeader().toString(), equalTo(file.getHeader().toString()));
+        assertThat(mapped.readOverview(), equalTo(file.readOverview()));
+
+        ByteArrayOutputStream fromFile = new ByteArrayOutputStream();
+        ByteArrayOutputStream fromMapping = new ByteArrayOutputStream();
+        file.writeBody(Channels.newChannel(fromFile));
+        mapped.writeBody(Channels.newChannel(fromMapping));
+        assertThat(fromMapping.toString(), equalTo(fromFile.toString()));
+    }
+
+
+    @Test
+    public void onlySomeSegmentsAreMappedAtOnce() throws IOException {
+        store.close();
+        store = new SegmentArticleStore(home, 100, 2);
+        for (int i = 1; i <= 4; i++) {
+            store.create("<" + i + "@host>", article("Article " + i, "Body " + i));
+        }
+
+        for (int i = 1; i <= 4; i++) {
+            assertThat(store.article("<" + i + "@host>", null).getBody(), equalTo("Body " + i));
+        }
+        assertThat(store.mappedSegments(), equalTo(2));
+
+        // Forgotten mappings are mapped again
+        assertThat(store.article("<1@host>", null).getBody(), equalTo("Body 1"));
+        assertThat(store.mappedSegments(), equalTo(2));
+    }
+
+
+    @Test
+    public void recordsWithoutTheBodyOffsetCanBeRead() throws IOException {
+        store.close();
+
+        // A record as written before the body offset was recorded
+        byte[] id = "<1@host>".getBytes();
+        byte[] contents = article("Old", "An old body");
+        ByteBuffer record = ByteBuffer.allocate(15 + id.length + contents.length);
+        record.putInt(record.capacity()).put((byte) 0).putLong(1000).putShort((short) id.length).put(id).put(contents);
+        Files.write(home.resolve("00000001.seg"), record.array());
+
+        store = new SegmentArticleStore(home);
+        assertThat(store.article("<1@host>", null).getBody(), equalTo("An old body"));
+        assertThat(store.article("<1@host>", null).getHeader().get("Subject"), equalTo("Old"));
+    }
+
+
+    /**
+     * Returns the contents of an article with the given subject and body
+     */
+    private static byte[] article(String subject, String body) {
+        return ("Subject: " + subject + "\nNewsgroups: happynews.users\n\n" + body).getBytes();
+    }
+}
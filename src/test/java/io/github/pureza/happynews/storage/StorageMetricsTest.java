@@ -0,0 +1,77 @@
+package io.github.pureza.happynews.storage;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class StorageMetricsTest {
+
+    @Test
+    public void recordsCountsAndTimes() {
+        StorageMetrics metrics = new StorageMetrics();
+
+        metrics.headerRead(2000000);
+        metrics.headerRead(4000000);
+        metrics.headerCacheHit();
+        metrics.groupsWritten(1000000, 512);
+
+        assertThat(metrics.getHeaderReads().getCount(), is(2L));
+        assertThat(metrics.getHeaderReads().getTotalMillis() >= 5.9, is(true));
+        assertThat(metrics.getHeaderReads().getMaxMillis() >= 3.9, is(true));
+        assertThat(metrics.getHeaderCacheHits(), is(1L));
+        assertThat(metrics.getGroupWrites().getCount(), is(1L));
+        assertThat(metrics.getGroupBytesWritten(), is(512L));
+    }
+
+
+    @Test
+    public void countsTheBytesReadFromAStream() throws IOException {
+        StorageMetrics metrics = new StorageMetrics();
+        InputStream in = metrics.counting(new ByteArrayInputStream("hello world".getBytes()));
+
+        in.read();
+        in.read(new byte[4]);
+        while (in.read() >= 0);
+
+        assertThat(metrics.getBytesRead(), is(11L));
+    }
+
+
+    @Test
+    public void summarizesWhatChangedSinceTheLastSummary() {
+        StorageMetrics metrics = new StorageMetrics();
+        assertThat(metrics.summary(), is(nullValue()));
+
+        metrics.bodyRead(1000000);
+        metrics.bodyCacheHit();
+        metrics.bodyCacheHit();
+        String summary = metrics.summary();
+        assertThat(summary, containsString("bodies 1 (1.00 ms avg) read + 2 cached"));
+
+        // Nothing changed since
+        assertThat(metrics.summary(), is(nullValue()));
+    }
+
+
+    @Test
+    public void registeredMetricsArePublishedThroughJmx() throws Exception {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(StorageMetrics.JMX_NAME);
+
+        StorageMetrics.get().register();
+        assertThat(mbeans.isRegistered(name), is(true));
+
+        StorageMetrics.get().unregister();
+        assertThat(mbeans.isRegistered(name), is(false));
+    }
+}
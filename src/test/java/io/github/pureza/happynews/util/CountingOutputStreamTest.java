@@ -0,0 +1,35 @@
+package io.github.pureza.happynews.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class CountingOutputStreamTest {
+
+    @Test
+    public void countsTheBytesWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountingOutputStream counting = new CountingOutputStream(out);
+
+        counting.write('a');
+        counting.write("hello world".getBytes(), 6, 5);
+
+        assertThat(out.toString(), is("aworld"));
+        assertThat(counting.count(), is(6L));
+    }
+
+
+    @Test
+    public void bytesSentAroundTheStreamCanBeAdded() throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(new ByteArrayOutputStream());
+
+        counting.write(new byte[3]);
+        counting.add(100);
+
+        assertThat(counting.count(), is(103L));
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.pureza.happynews.util;
+
+import org.junit.Test;
+
+import static io.github.pureza.happynews.util.LatencyHistogram.bucket;
+import static io.github.pureza.happynews.util.LatencyHistogram.highestValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreCountedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.count(), is(10L));
+        assertThat(histogram.total(), is(55L));
+        assertThat(histogram.mean(), is(5L));
+        assertThat(histogram.max(), is(10L));
+        assertThat(histogram.percentile(0.5), is(5L));
+        assertThat(histogram.percentile(0.9), is(9L));
+        assertThat(histogram.percentile(1), is(10L));
+    }
+
+
+    @Test
+    public void percentilesOfLargeValuesAreWithinThePrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        long median = histogram.percentile(0.5);
+        assertThat(median >= 50000000L && median <= 51600000L, is(true));
+        long p99 = histogram.percentile(0.99);
+        assertThat(p99 >= 99000000L && p99 <= 102100000L, is(true));
+        assertThat(histogram.percentile(1), is(100000000L));
+    }
+
+
+    @Test
+    public void everyValueIsWithinItsBucket() {
+        for (long value : new long[] { 0, 31, 32, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE }) {
+            int bucket = bucket(value);
+            assertThat(highestValue(bucket) >= value, is(true));
+            if (bucket > 0) {
+                assertThat(highestValue(bucket - 1) < value, is(true));
+            }
+        }
+    }
+
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.count(), is(1L));
+        assertThat(histogram.max(), is(0L));
+        assertThat(histogram.percentile(0.5), is(0L));
+    }
+
+
+    @Test
+    public void anEmptyHistogramReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.mean(), is(0L));
+        assertThat(histogram.percentile(0.99), is(0L));
+    }
+
+
+    @Test
+    public void drainReturnsTheValuesAndEmptiesTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+
+        LatencyHistogram drained = histogram.drain();
+
+        assertThat(drained.count(), is(2L));
+        assertThat(drained.max(), is(20L));
+        assertThat(drained.percentile(1), is(20L));
+        assertThat(histogram.count(), is(0L));
+        assertThat(histogram.percentile(1), is(0L));
+    }
+
+
+    @Test
+    public void addMergesTheValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(30);
+
+        histogram.add(other);
+
+        assertThat(histogram.count(), is(2L));
+        assertThat(histogram.total(), is(40L));
+        assertThat(histogram.max(), is(30L));
+        assertThat(histogram.percentile(0.5), is(10L));
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.pureza.happynews.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class WildmatTest {
+
+    @Test
+    public void plainNamesMatchThemselves() {
+        assertThat(Wildmat.matches("comp.lang.java", "comp.lang.java"), is(true));
+        assertThat(Wildmat.matches("comp.lang.java", "comp.lang.javascript"), is(false));
+        assertThat(Wildmat.matches("alt.tv,comp.lang.java", "comp.lang.java"), is(true));
+    }
+
+
+    @Test
+    public void starMatchesAnySequence() {
+        assertThat(Wildmat.matches("comp.*", "comp.lang.java"), is(true));
+        assertThat(Wildmat.matches("comp.*", "comp."), is(true));
+        assertThat(Wildmat.matches("*.java", "comp.lang.java"), is(true));
+        assertThat(Wildmat.matches("comp.*.java", "comp.java"), is(false));
+        assertThat(Wildmat.matches("*", "anything"), is(true));
+    }
+
+
+    @Test(timeout = 1000)
+    public void manyStarsDontTakeExponentialTime() {
+        String name = new String(new char[100]).replace('\0', 'a');
+        assertThat(Wildmat.matches("*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*b", name), is(false));
+        assertThat(Wildmat.matches("*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a", name), is(true));
+        assertThat(Wildmat.matches("a*?*a*[ab]*a", name), is(true));
+    }
+
+
+    @Test
+    public void questionMarkMatchesOneCharacter() {
+        assertThat(Wildmat.matches("alt.tv?", "alt.tv1"), is(true));
+        assertThat(Wildmat.matches("alt.tv?", "alt.tv"), is(false));
+    }
+
+
+    @Test
+    public void bracketsMatchClasses() {
+        assertThat(Wildmat.matches("alt.tv[0-9]", "alt.tv7"), is(true));
+        assertThat(Wildmat.matches("alt.tv[0-9]", "alt.tvx"), is(false));
+        assertThat(Wildmat.matches("alt.tv[^0-9]", "alt.tvx"), is(true));
+        assertThat(Wildmat.matches("alt.[tr]v", "alt.rv"), is(true));
+    }
+
+
+    @Test
+    public void theLastMatchingPatternWins() {
+        assertThat(Wildmat.matches("comp.*,!comp.lang.*", "comp.lang.java"), is(false));
+        assertThat(Wildmat.matches("comp.*,!comp.lang.*", "comp.os.linux"), is(true));
+        assertThat(Wildmat.matches("comp.*,!comp.lang.*,comp.lang.java", "comp.lang.java"), is(true));
+        assertThat(Wildmat.matches("!comp.*", "alt.tv"), is(false));
+    }
+
+
+    @Test
+    public void isPatternDetectsWildcardsAndNegations() {
+        assertThat(Wildmat.isPattern("comp.lang.java,alt.tv"), is(false));
+        assertThat(Wildmat.isPattern("comp.*"), is(true));
+        assertThat(Wildmat.isPattern("alt.tv?"), is(true));
+        assertThat(Wildmat.isPattern("alt.tv,!alt.tv.friends"), is(true));
+    }
+}